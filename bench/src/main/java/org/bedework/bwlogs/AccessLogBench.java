@@ -0,0 +1,57 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** The access log parser with one Timestamps for all lines as
+ * AccessLogs uses it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccessLogBench {
+  private final Timestamps timestamps = new Timestamps();
+
+  @Setup
+  public void setup() {
+    // Junk lines report errors
+    Output.set(new DiscardOutput());
+  }
+
+  @Benchmark
+  public AccessLogEntry parseFeeder() {
+    return AccessLogEntry.fromString(LogLines.accessFeeder, timestamps);
+  }
+
+  @Benchmark
+  public AccessLogEntry parseIpv6() {
+    return AccessLogEntry.fromString(LogLines.accessIpv6, timestamps);
+  }
+
+  @Benchmark
+  public AccessLogEntry parseWebcache() {
+    return AccessLogEntry.fromString(LogLines.accessWebcache,
+                                     timestamps);
+  }
+
+  @Benchmark
+  public AccessLogEntry parseJunk() {
+    return AccessLogEntry.fromString(LogLines.accessJunk, timestamps);
+  }
+}
@@ -0,0 +1,28 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks - all or those matching the JMH command line -
+ * always with the gc profiler so the bytes allocated per op
+ * (gc.alloc.rate.norm) are shown alongside ns/op.
+ *
+ * <pre>
+ *   java -jar target/benchmarks.jar [ServerLogBench] [-f 2]...
+ * </pre>
+ */
+public class BenchMain {
+  public static void main(final String[] args) throws Exception {
+    final var cmdLine = new CommandLineOptions(args);
+
+    new Runner(new OptionsBuilder()
+                       .parent(cmdLine)
+                       .addProfiler(GCProfiler.class)
+                       .build()).run();
+  }
+}
@@ -0,0 +1,21 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Throws away the output - e.g. the error messages for junk lines -
+ * so the benchmarks measure the parsing.
+ */
+public class DiscardOutput implements OutputSink {
+  @Override
+  public void println(final CharSequence line) {
+  }
+
+  @Override
+  public void flush() {
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,107 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Exact counts for each ip as AccessPeriod keeps them - an IpCounts
+ * on the parsed address against a HashMap on the string as logged.
+ * Times are per address counted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IpCountBench {
+  private static final int numIps = 4096;
+
+  // Distinct addresses - a day of a busy server has many thousands
+  private static final int distinct = 2000;
+
+  private final String[] ips = new String[numIps];
+  private final long[] his = new long[numIps];
+  private final long[] los = new long[numIps];
+
+  private final IpAddress address = new IpAddress();
+
+  private IpCounts ipCounts;
+  private Map<String, Integer> mapCounts;
+
+  @Setup
+  public void setup() {
+    final var random = new Random(20200220);
+
+    for (int i = 0; i < numIps; i++) {
+      // Skewed - a few addresses make most requests
+      final int n = (int)(distinct * Math.pow(random.nextDouble(), 3));
+
+      if ((n % 10) == 0) {
+        ips[i] = "2001:db8::" + Integer.toHexString(n);
+      } else {
+        ips[i] = "10.0." + (n / 250) + "." + (n % 250);
+      }
+
+      address.parse(ips[i]);
+      his[i] = address.hi;
+      los[i] = address.lo;
+    }
+
+    // Counting into tables which already have the addresses
+    ipCounts = new IpCounts();
+    mapCounts = new HashMap<>();
+    ipCounts();
+    hashMap();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(numIps)
+  public IpCounts ipCounts() {
+    for (final var ip: ips) {
+      if (address.parse(ip)) {
+        ipCounts.add(address.hi, address.lo, 1);
+      }
+    }
+
+    return ipCounts;
+  }
+
+  /** Only the table - the addresses are already parsed
+   */
+  @Benchmark
+  @OperationsPerInvocation(numIps)
+  public IpCounts ipCountsParsed() {
+    for (int i = 0; i < numIps; i++) {
+      ipCounts.add(his[i], los[i], 1);
+    }
+
+    return ipCounts;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(numIps)
+  public Map<String, Integer> hashMap() {
+    for (final var ip: ips) {
+      mapCounts.merge(ip, 1, Integer::sum);
+    }
+
+    return mapCounts;
+  }
+}
@@ -0,0 +1,114 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Lines for the benchmarks - taken from real logs with the names
+ * changed.
+ */
+public class LogLines {
+  private static final String task =
+          "2020-01-14 10:00:00,536 INFO  " +
+                  "[org.bedework.webcommon.search.RenderSearchResultAction] " +
+                  "(default task-36) ";
+
+  private static final String session =
+          "S00071abcdefghijklmnopqrstuvwxyz";
+
+  private static final String url =
+          "http://calendar.yale.edu/pubcaldav/public/cals/MainCal/" +
+                  "?b=de&id=60501";
+
+  // ---------------------------- server.log ------------------------
+
+  public static final String request =
+          task + "REQUEST:" + session + ":unknown:charset=UTF-8:" +
+                  "10.0.250.197:" + url +
+                  " - Referer:http://calendar.yale.edu/cal/main/x.rdo" +
+                  " - X-Forwarded-For:10.0.13.30";
+
+  public static final String requestNoForward =
+          task + "REQUEST:" + session + ":unknown:charset=UTF-8:" +
+                  "10.0.250.197:" + url +
+                  " - Referer:NONE - X-Forwarded-For:NONE";
+
+  public static final String requestIpv6 =
+          task + "REQUEST:" + session + ":unknown:charset=UTF-8:" +
+                  "2001:db8::1f:" + url +
+                  " - Referer:NONE - X-Forwarded-For:2001:db8::6";
+
+  public static final String requestOut =
+          "2020-01-14 10:00:01,360 INFO  " +
+                  "[org.bedework.webcommon.BwCallbackImpl] " +
+                  "(default task-36) REQUEST-OUT:" + session +
+                  ":bwclientcb:charset=UTF-8:10.0.250.197:" + url +
+                  " - Referer:NONE - X-Forwarded-For:10.0.13.30";
+
+  public static final String sessionStart =
+          "2020-01-14 10:00:00,942 INFO  " +
+                  "[org.bedework.webcommon.BwSessionListener] " +
+                  "(default task-26) SESSION-START:" + session +
+                  ":?:347:14051:1052M:2000M";
+
+  public static final String debug =
+          "2020-01-14 10:00:00,015 DEBUG " +
+                  "[org.bedework.calcore.hibernate.Foo] " +
+                  "(default task-15) Begin transaction for x";
+
+  // Starts like a line but the timestamp is bad
+  public static final String junk =
+          "2020-01-14 10:xx:00,015 DEBUG garbage";
+
+  // ---------------------------- access log ------------------------
+
+  private static final String feederPath =
+          "/feeder/main/listEvents.do?calPath=/public/cals/MainCal" +
+                  "&skinName=list-json&setappvar=objName(bwObject)" +
+                  "&setappvar=summaryMode(details)" +
+                  "&fexpr=%28catuid%3D%272962aca4-289343b8-0128-" +
+                  "98411c36-0000001e%27%29&days=30";
+
+  private static final String accessTail =
+          " HTTP/1.1\" 200 1234 \"-\" \"Mozilla/5.0 (X11)\"";
+
+  public static final String accessFeeder =
+          "10.0.18.47 - - [[20/Feb/2020:22:00:00 +0000] \"GET " +
+                  feederPath + accessTail;
+
+  public static final String accessIpv6 =
+          "2001:db8::f - - [[20/Feb/2020:22:00:00 +0000] \"GET " +
+                  "/feeder/main/listEvents.do?calPath=/public/cals/MainCal" +
+                  "&format=text/calendar&setappvar=summaryMode(details)" +
+                  "&days=7" + accessTail;
+
+  public static final String accessWebcache =
+          "10.0.17.52 - - [[20/Feb/2020:22:00:02 +0000] \"GET " +
+                  "/webcache/v1.0/jsonDays/7/list-json/no--filter/" +
+                  "bwObject.json" + accessTail;
+
+  public static final String accessJunk =
+          "10.0.17.52 - - \"GET / HTTP/1.1\" 200";
+
+  // ---------------------------- urls ------------------------------
+
+  public static final String feederUrl = feederPath;
+
+  public static final String feederUnmatchedUrl =
+          "/feeder/main/listEvents.do?calPath=/public/cals/Other" +
+                  "&skinName=unknown&days=3";
+
+  public static final String webcacheUrl =
+          "/webcache/v1.0/jsonDays/7/list-json/no--filter/bwObject.json";
+
+  public static final String webcacheUnmatchedUrl =
+          "/webcache/v1.0/icsDays/7/list-ics/no--filter.ics";
+
+  public static final String catUids =
+          "(catuid='2962ac9d-4b307640-014b-32408a42-000054fa')&" +
+                  "(catuid!='2962ac9d-2a425309-012a-43b52f6f-00000304'&" +
+                  "catuid!='2962aca4-289343b8-0128-9420e1a5-00000007')";
+
+  public static final String notCatUids =
+          "(catuid='2962ac9d-4b307640-014b-32408a42-000054fa')&" +
+                  "(summary='concert')";
+}
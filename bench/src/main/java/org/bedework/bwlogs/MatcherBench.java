@@ -0,0 +1,63 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Classifying feeder and webcache urls with the default patterns -
+ * the work AccessLogs does for a path not in its ClassifyCache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatcherBench {
+  private final AccessPatterns patterns = AccessPatterns.defaults();
+  private final UrlParts urlParts = new UrlParts();
+
+  @Benchmark
+  public int matchFeeder() {
+    return patterns.matchFeeder(urlParts.parse(LogLines.feederUrl));
+  }
+
+  @Benchmark
+  public int matchFeederUnmatched() {
+    return patterns.matchFeeder(
+            urlParts.parse(LogLines.feederUnmatchedUrl));
+  }
+
+  @Benchmark
+  public int matchWebcache() {
+    return patterns.matchWebcache(
+            urlParts.parse(LogLines.webcacheUrl).getSegments());
+  }
+
+  @Benchmark
+  public int matchWebcacheUnmatched() {
+    return patterns.matchWebcache(
+            urlParts.parse(LogLines.webcacheUnmatchedUrl).getSegments());
+  }
+
+  @Benchmark
+  public boolean onlyCatUids() {
+    return AccessPatterns.onlyCatUids(LogLines.catUids);
+  }
+
+  @Benchmark
+  public boolean notOnlyCatUids() {
+    return AccessPatterns.onlyCatUids(LogLines.notCatUids);
+  }
+}
@@ -0,0 +1,88 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** The server.log parsers as LogReader uses them - the header is
+ * parsed into a reused LogEntry then the REQUEST, REQUEST-OUT or
+ * SESSION-START parsed from it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServerLogBench {
+  private final Symbols symbols = new Symbols();
+  private final LogEntry header = new LogEntry(symbols);
+
+  @Setup
+  public void setup() {
+    // Junk lines report errors
+    Output.set(new DiscardOutput());
+  }
+
+  @Benchmark
+  public Integer parseHeaderDebug() {
+    return header.parseHeader(LogLines.debug, null);
+  }
+
+  @Benchmark
+  public Integer parseHeaderJunk() {
+    return header.parseHeader(LogLines.junk, null);
+  }
+
+  @Benchmark
+  public ReqInOutLogEntry parseRequest() {
+    return request(LogLines.request, true);
+  }
+
+  @Benchmark
+  public ReqInOutLogEntry parseRequestNoForward() {
+    return request(LogLines.requestNoForward, true);
+  }
+
+  @Benchmark
+  public ReqInOutLogEntry parseRequestIpv6() {
+    return request(LogLines.requestIpv6, true);
+  }
+
+  @Benchmark
+  public ReqInOutLogEntry parseRequestOut() {
+    return request(LogLines.requestOut, false);
+  }
+
+  @Benchmark
+  public SessionInfo parseSessionStart() {
+    header.parseHeader(LogLines.sessionStart, null);
+
+    final var si = new SessionInfo();
+    si.parse(header);
+
+    return si;
+  }
+
+  private ReqInOutLogEntry request(final String line,
+                                   final boolean in) {
+    header.parseHeader(line, null);
+
+    final var rs = new ReqInOutLogEntry();
+    rs.parse(header, in);
+
+    return rs;
+  }
+}
@@ -9,26 +9,53 @@ package org.bedework.bwlogs;
 public class AccessDay extends AccessPeriod {
   private final static int hourSecs = 60 * 60;
 
+  // Distinct count precision - 4K and 1.6% for hours, 16K and 0.8% for days
+  final static int hourPrecision = 12;
+  final static int dayPrecision = 14;
+
   private final AccessPeriod[] hours = new AccessPeriod[24];
 
   public AccessDay() {
-    super(hourSecs * 24);
+    this(true);
+  }
+
+  /**
+   * @param exactIps true to count requests for each ip
+   */
+  public AccessDay(final boolean exactIps) {
+    super(hourSecs * 24, exactIps, dayPrecision);
 
     for (int i = 0; i <= 23; i++) {
-      hours[i] = new AccessPeriod(hourSecs);
+      hours[i] = new AccessPeriod(hourSecs, exactIps, hourPrecision);
     }
   }
 
   public void addIp(final String ip,
                     final int hour) {
-    hours[hour].addIp(ip);
-    addIp(ip);
+    // Parse once for the hour and the day
+    final var addr = parseIp(ip);
+
+    hours[hour].addIp(addr, ip);
+    addIp(addr, ip);
   }
 
   public AccessPeriod getHour(final int hr) {
     return hours[hr];
   }
 
+  /** Add the counts from another day - e.g. the same day from a
+   * different part of the log.
+   *
+   * @param ad day to add
+   */
+  public void add(final AccessDay ad) {
+    super.add(ad);
+
+    for (int i = 0; i <= 23; i++) {
+      hours[i].add(ad.hours[i]);
+    }
+  }
+
   /** Update from the given access log entry. These should appear in
    * increasing time order.
    *
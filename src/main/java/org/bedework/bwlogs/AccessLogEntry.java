@@ -5,9 +5,6 @@ package org.bedework.bwlogs;
 
 import org.bedework.base.ToString;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * User: mike Date: 1/14/20 Time: 22:20
  */
@@ -17,9 +14,9 @@ public class AccessLogEntry {
 
   public String ip;
 
-  public Long millis; // time converted to milliseconds
+  public long millis; // milliseconds since the epoch
   public int hourOfDay;
-  public String normDate; // yyyymmdd
+  public String normDate; // yyyy/mm/dd
   // date time
   public String dt;
 
@@ -30,9 +27,19 @@ public class AccessLogEntry {
   public String userAgent;
 
   public static AccessLogEntry fromString(final String req) {
+    return fromString(req, new Timestamps());
+  }
+
+  /**
+   * @param req log entry
+   * @param timestamps converter kept for all lines of the log
+   * @return parsed entry or null for bad record
+   */
+  public static AccessLogEntry fromString(final String req,
+                                          final Timestamps timestamps) {
     final AccessLogEntry ale = new AccessLogEntry();
 
-    if (ale.parse(req) == null) {
+    if (ale.parse(req, timestamps) == null) {
       return null;
     }
 
@@ -41,9 +48,11 @@ public class AccessLogEntry {
 
   /**
    * @param req log entry
+   * @param timestamps converter kept for all lines of the log
    * @return position we reached or null for bad record
    */
-  public Integer parse(final String req) {
+  public Integer parse(final String req,
+                       final Timestamps timestamps) {
     this.req = req;
 
     ip = req.substring(0, req.indexOf(" "));
@@ -56,12 +65,15 @@ public class AccessLogEntry {
     var end = req.indexOf(" ", curPos);
     dt = req.substring(curPos + 2, end);
 
-    millis = millis();
-    if (millis == null) {
+    millis = timestamps.accessMillis(req, curPos + 2);
+    if (millis == Timestamps.invalid) {
       error("Unable to get millis for %s", req);
       return null;
     }
 
+    hourOfDay = timestamps.getHourOfDay();
+    normDate = timestamps.getNormDate();
+
     curPos = end + 1;
     if (!passQuote()) {
       return null;
@@ -141,41 +153,6 @@ public class AccessLogEntry {
     return res;
   }
 
-  private static final Map<String, String> toMonth = new HashMap<>();
-  static {
-    toMonth.put("Jan", "01");
-    toMonth.put("Feb", "02");
-    toMonth.put("Mar", "03");
-    toMonth.put("Apr", "04");
-    toMonth.put("May", "05");
-    toMonth.put("Jun", "06");
-    toMonth.put("Jul", "07");
-    toMonth.put("Aug", "08");
-    toMonth.put("Sep", "09");
-    toMonth.put("Oct", "10");
-    toMonth.put("Nov", "11");
-    toMonth.put("Dec", "12");
-  }
-
-  public Long millis() {
-    try {
-      // 20/Feb/2020:00:23:19
-      // 0123456789012345678901234
-
-      hourOfDay = Integer.parseInt(dt.substring(12, 14));
-      final long mins = Integer.parseInt(dt.substring(15, 17));
-      final long secs = Integer.parseInt(dt.substring(19, 20));
-
-      normDate = dt.substring(7, 11) + "/" +
-              toMonth.get(dt.substring(3, 6)) + "/" +
-              dt.substring(0, 2);
-
-      return ((((hourOfDay * 60L) + mins) * 60) + secs) * 1000;
-    } catch (final Throwable ignored) {
-      return null;
-    }
-  }
-
   public boolean is404() {
     return isStatus("404");
   }
@@ -213,12 +190,12 @@ public class AccessLogEntry {
 
   protected void error(final String format,
                        final Object... args) {
-    System.out.println(String.format(format, args));
+    Output.fmt(format, args);
   }
 
   protected void out(final String format,
                      final Object... args) {
-    System.out.println(String.format(format, args));
+    Output.fmt(format, args);
   }
 
   protected void toStringSegment(final ToString ts) {
@@ -3,30 +3,33 @@
 */
 package org.bedework.bwlogs;
 
-import org.apache.http.NameValuePair;
-import org.apache.http.client.utils.URLEncodedUtils;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.LineNumberReader;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /** Used to check access logs for useful info.
  *
  * User: mike Date: 3/12/19 Time: 13:40
  */
 public class AccessLogs {
+  // Don't split the log into chunks smaller than this
+  private static final long minChunkSize = 16 * 1024 * 1024;
+
+  private final boolean parallel;
+  private final boolean exactIps;
+  private final AccessPatterns patterns;
+
   int numLegacy;
   int numWebcache;
 
@@ -35,52 +38,109 @@ public class AccessLogs {
   int feederUnknown;
   int webCacheUnknown;
 
-  public static AccessTracker accessTracker = new AccessTracker();
+  final int[] feedMatched;
+  final int[] webcacheMatched;
 
-  public boolean analyze(final String logPathName) {
-    try {
-      final LineNumberReader lnr = getLnr(logPathName);
+  final AccessTracker accessTracker;
 
-      while (true) {
-        final String s = lnr.readLine();
+  private final Timestamps timestamps = new Timestamps();
 
-        if (s == null) {
-          break;
-        }
+  // Null for text output
+  private final RecordWriter records = Output.newRecordWriter();
 
-        final AccessLogEntry ale;
-        try {
-          ale = AccessLogEntry.fromString(s);
-        } catch (final Throwable t) {
-          out("Unable to parse line at %s\n%s",
-              lnr.getLineNumber(), s);
-          return false;
-        }
+  // Records for json and csv output
 
-        if (ale == null) {
-          continue;
-        }
+  static final RecordType accessTotalsRecord =
+          RecordType.of("accessTotals", "req404", "req500",
+                        "feederLegacy", "feederUnknown", "webcache",
+                        "webcacheUnknown");
 
-        accessTracker.updateFrom(ale);
+  // kind is feeder or webcache
+  static final RecordType classifiedRecord =
+          RecordType.of("classified", "kind", "name", "requests");
 
-        if (ale.is404()) {
-          req404++;
-          continue;
-        }
+  static final RecordType classifyCacheRecord =
+          RecordType.of("classifyCache", "kind", "hits", "misses",
+                        "evictions");
 
-        if (ale.is500()) {
-          req500++;
-          continue;
-        }
+  static final RecordType unmatchedRecord =
+          RecordType.of("unmatched", "kind", "path");
 
-        if (ale.legacyFeeder()) {
-          doLegacyFeeder(ale);
-          continue;
-        }
+  static final RecordType dayRecord =
+          RecordType.of("day", "day", "requests", "perMinute",
+                        "distinctIps", "distinctNetworks");
+
+  static final RecordType hourRecord =
+          RecordType.of("hour", "day", "hour", "requests", "perMinute",
+                        "distinctIps", "distinctNetworks");
+
+  static final RecordType dayIpRecord =
+          RecordType.of("dayIp", "day", "ip", "requests");
+
+  static final RecordType dayNetworkRecord =
+          RecordType.of("dayNetwork", "day", "network", "requests");
+
+  private final UrlParts urlParts = new UrlParts();
+
+  // Raw path -> pattern index
+  private final ClassifyCache feederCache = new ClassifyCache();
+  private final ClassifyCache webcacheCache = new ClassifyCache();
+
+  /* When processing a chunk of the log in parallel we save the output
+     and any failure until the chunks are merged in order.
+   */
+  private List<String> deferredOut;
+  private long linesRead;
+  private long failedLine;
+  private String failedText;
+
+  public AccessLogs() {
+    this(false, true);
+  }
+
+  /**
+   * @param parallel true to split the log into chunks processed in
+   *                 parallel
+   * @param exactIps true to count requests for each ip and network.
+   *                 Otherwise only the number of distinct ips and
+   *                 networks is estimated.
+   */
+  public AccessLogs(final boolean parallel,
+                    final boolean exactIps) {
+    this(parallel, exactIps, AccessPatterns.defaults());
+  }
+
+  /**
+   * @param parallel true to split the log into chunks processed in
+   *                 parallel
+   * @param exactIps true to count requests for each ip and network.
+   * @param patterns to classify feeder and webcache requests
+   */
+  public AccessLogs(final boolean parallel,
+                    final boolean exactIps,
+                    final AccessPatterns patterns) {
+    this.parallel = parallel;
+    this.exactIps = exactIps;
+    this.patterns = patterns;
+    accessTracker = new AccessTracker(exactIps);
+    feedMatched = new int[patterns.getFeederNames().size()];
+    webcacheMatched = new int[patterns.getWebcacheNames().size()];
+  }
 
-        if (ale.webCache()) {
-          doWebCache(ale);
-          continue;
+  public boolean analyze(final String logPathName) {
+    try {
+      // Compressed logs can't be split so are processed sequentially
+      if (parallel &&
+              (LineReader.compression(getLogPath(logPathName)) ==
+                       LineReader.Compression.none)) {
+        if (!analyzeParallel(logPathName)) {
+          return false;
+        }
+      } else {
+        try (final LineReader lines = getLines(logPathName)) {
+          if (!analyze(lines)) {
+            return false;
+          }
         }
       }
 
@@ -93,40 +153,219 @@ public class AccessLogs {
     }
   }
 
-  private LineNumberReader getLnr(final String logPathName) {
-    try {
-      final Path logPath = Paths.get(logPathName);
+  /**
+   * @param lines to process
+   * @return false if a line could not be parsed
+   * @throws IOException on read error
+   */
+  private boolean analyze(final LineReader lines) throws IOException {
+    while (true) {
+      final LogLine line = lines.next();
+
+      if (line == null) {
+        break;
+      }
+
+      final String s = line.toString();
+
+      final AccessLogEntry ale;
+      try {
+        ale = AccessLogEntry.fromString(s, timestamps);
+      } catch (final Throwable t) {
+        if (deferredOut != null) {
+          failedLine = lines.getLineNumber();
+          failedText = s;
+        } else {
+          out("Unable to parse line at %s\n%s",
+              lines.getLineNumber(), s);
+        }
+        return false;
+      }
 
-      final File logFile = logPath.toFile();
+      if (ale == null) {
+        continue;
+      }
+
+      accessTracker.updateFrom(ale);
 
-      return new LineNumberReader(new FileReader(logFile));
-    } catch (final FileNotFoundException fnfe) {
+      if (ale.is404()) {
+        req404++;
+        continue;
+      }
+
+      if (ale.is500()) {
+        req500++;
+        continue;
+      }
+
+      if (ale.legacyFeeder()) {
+        doLegacyFeeder(ale);
+        continue;
+      }
+
+      if (ale.webCache()) {
+        doWebCache(ale);
+        continue;
+      }
+    }
+
+    linesRead = lines.getLineNumber();
+    return true;
+  }
+
+  /* Split the log at line boundaries and process each chunk with its
+     own AccessLogs object in a fork-join task. The results are merged
+     in file order so the output is the same as for a sequential run.
+   */
+  private boolean analyzeParallel(final String logPathName)
+          throws Throwable {
+    final Path logPath = getLogPath(logPathName);
+    final long size = Files.size(logPath);
+    final int parts = (int)Math.max(1, Math.min(
+            ForkJoinPool.getCommonPoolParallelism() * 4L,
+            size / minChunkSize));
+
+    final long[] bounds = MappedLineReader.split(logPath, parts);
+    final List<ChunkTask> tasks = new ArrayList<>();
+
+    for (int i = 0; i < bounds.length - 1; i++) {
+      final var task = new ChunkTask(logPath, bounds[i], bounds[i + 1],
+                                     this);
+      tasks.add(task);
+      ForkJoinPool.commonPool().execute(task);
+    }
+
+    long lineBase = 0;
+
+    for (final ChunkTask task: tasks) {
+      final AccessLogs chunk = task.join();
+
+      for (final String ln: chunk.deferredOut) {
+        Output.record(ln);
+      }
+
+      if (chunk.failedText != null) {
+        out("Unable to parse line at %s\n%s",
+            lineBase + chunk.failedLine, chunk.failedText);
+        return false;
+      }
+
+      add(chunk);
+      lineBase += chunk.linesRead;
+    }
+
+    return true;
+  }
+
+  private static class ChunkTask extends RecursiveTask<AccessLogs> {
+    // Tasks are never serialized
+    private static final long serialVersionUID = 1L;
+
+    private final transient Path logPath;
+    private final long start;
+    private final long end;
+    private final transient AccessLogs parent;
+
+    ChunkTask(final Path logPath,
+              final long start,
+              final long end,
+              final AccessLogs parent) {
+      this.logPath = logPath;
+      this.start = start;
+      this.end = end;
+      this.parent = parent;
+    }
+
+    @Override
+    protected AccessLogs compute() {
+      final var chunk = new AccessLogs(false, parent.exactIps,
+                                       parent.patterns);
+      chunk.deferredOut = new ArrayList<>();
+
+      try (final var lines = new MappedLineReader(
+              logPath, start, end,
+              MappedLineReader.defaultWindowSize)) {
+        chunk.analyze(lines);
+      } catch (final IOException ioe) {
+        throw new RuntimeException(ioe);
+      }
+
+      return chunk;
+    }
+  }
+
+  /** Add the counts from another AccessLogs object - usually one
+   * that processed a different part of the log.
+   *
+   * @param al to add
+   */
+  public void add(final AccessLogs al) {
+    numLegacy += al.numLegacy;
+    numWebcache += al.numWebcache;
+    req404 += al.req404;
+    req500 += al.req500;
+    feederUnknown += al.feederUnknown;
+    webCacheUnknown += al.webCacheUnknown;
+
+    for (int i = 0; i < feedMatched.length; i++) {
+      feedMatched[i] += al.feedMatched[i];
+    }
+
+    for (int i = 0; i < webcacheMatched.length; i++) {
+      webcacheMatched[i] += al.webcacheMatched[i];
+    }
+
+    accessTracker.add(al.accessTracker);
+    feederCache.add(al.feederCache);
+    webcacheCache.add(al.webcacheCache);
+  }
+
+  private LineReader getLines(final String logPathName)
+          throws IOException {
+    return LineReader.open(getLogPath(logPathName));
+  }
+
+  private Path getLogPath(final String logPathName) {
+    final Path logPath = Paths.get(logPathName);
+
+    if (!Files.exists(logPath)) {
       final var msg = "No such file: " + logPathName;
       out(msg);
       throw new RuntimeException(msg);
     }
+
+    return logPath;
   }
 
   private void results() {
+    if (records != null) {
+      recordResults();
+      return;
+    }
+
     out("Requests getting a 404: %d", req404);
     out("Requests getting a 500: %d", req500);
 
     out("Total feeder legacy requests: %d", numLegacy);
-    int pattern = 1;
-    for (final FeedMatcher m: feedMatchers) {
-      out("Total feeder pattern%d requests: %d", pattern, m.matched);
-      pattern++;
+    final var feederNames = patterns.getFeederNames();
+    for (int i = 0; i < feedMatched.length; i++) {
+      out("Total feeder %s requests: %d", feederNames.get(i),
+          feedMatched[i]);
     }
     out("Total unknown feeder requests: %d", feederUnknown);
+    out("Feeder classification cache: %s", feederCache.statistics());
 
     out();
 
     out("Total webcache requests: %d", numWebcache);
-    for (final WebcacheMatcher m: webcacheMatchers) {
-      out("Total webcache pattern%d requests: %d", pattern, m.matched);
-      pattern++;
+    final var webcacheNames = patterns.getWebcacheNames();
+    for (int i = 0; i < webcacheMatched.length; i++) {
+      out("Total webcache %s requests: %d", webcacheNames.get(i),
+          webcacheMatched[i]);
     }
     out("Total unknown webcache requests: %d", webCacheUnknown);
+    out("Webcache classification cache: %s",
+        webcacheCache.statistics());
 
     for (final String day: accessTracker.getSortedKeys()) {
       final AccessDay dayVal = accessTracker.getDay(day);
@@ -139,6 +378,31 @@ public class AccessLogs {
 
   private void out1day(final String day,
                        final AccessDay dayVal) {
+    if (dayVal.hasExactIps()) {
+      outIpCounts(day, dayVal);
+    } else {
+      out("Requests for %s: %d", day, dayVal.totalRequests());
+    }
+
+    out("Avg requests per minute for each hour:");
+    for (int i = 0; i <= 23; i++) {
+      out("%2s: %.2f", i, dayVal.getHour(i).perSecond() * 60);
+    }
+
+    out("Avg requests per minute for day: %.2f", dayVal.perSecond() * 60);
+
+    out("Estimated distinct ips and /16 networks for each hour:");
+    for (int i = 0; i <= 23; i++) {
+      final var hr = dayVal.getHour(i);
+      out("%2s: %8d %8d", i, hr.getDistinctIps(), hr.getDistinctIp2s());
+    }
+
+    out("Estimated distinct ips and /16 networks for day: %d %d",
+        dayVal.getDistinctIps(), dayVal.getDistinctIp2s());
+  }
+
+  private void outIpCounts(final String day,
+                           final AccessDay dayVal) {
     out("Ip counts for %s", day);
     out();
 
@@ -172,50 +436,130 @@ public class AccessLogs {
 
     out();
     out("Total: %s", total);
-
-    out("Avg requests per minute for each hour:");
-    for (int i = 0; i <= 23; i++) {
-      out("%2s: %.2f", i, dayVal.getHour(i).perSecond() * 60);
-    }
-
-    out("Avg requests per minute for day: %.2f", dayVal.perSecond() * 60);
   }
 
   private void outFmt(final String format,
                       final Object... args) {
-    System.out.println(String.format(format, args));
+    out(format, args);
   }
 
-  private void doLegacyFeeder(final AccessLogEntry ale) {
-    numLegacy++;
+  /* The figures above as records - one for each count rather than
+     lines of text.
+   */
+  private void recordResults() {
+    records.start(accessTotalsRecord)
+           .value(req404)
+           .value(req500)
+           .value(numLegacy)
+           .value(feederUnknown)
+           .value(numWebcache)
+           .value(webCacheUnknown);
+    outRecord();
+
+    recordClassified("feeder", patterns.getFeederNames(), feedMatched);
+    recordClassified("webcache", patterns.getWebcacheNames(),
+                     webcacheMatched);
+
+    recordCache("feeder", feederCache);
+    recordCache("webcache", webcacheCache);
 
-    final URI uri;
-    try {
-      uri = new URI(ale.path);
-    } catch (final URISyntaxException e) {
-      throw new RuntimeException(e);
+    for (final String day: accessTracker.getSortedKeys()) {
+      final AccessDay dayVal = accessTracker.getDay(day);
+
+      records.start(dayRecord)
+             .value(day)
+             .value(dayVal.totalRequests())
+             .value(dayVal.perSecond() * 60)
+             .value(dayVal.getDistinctIps())
+             .value(dayVal.getDistinctIp2s());
+      outRecord();
+
+      for (int i = 0; i <= 23; i++) {
+        final var hr = dayVal.getHour(i);
+
+        records.start(hourRecord)
+               .value(day)
+               .value(i)
+               .value(hr.totalRequests())
+               .value(hr.perSecond() * 60)
+               .value(hr.getDistinctIps())
+               .value(hr.getDistinctIp2s());
+        outRecord();
+      }
+
+      if (!dayVal.hasExactIps()) {
+        continue;
+      }
+
+      for (final var ent: dayVal.getSortedIpCounts()) {
+        records.start(dayIpRecord)
+               .value(day)
+               .value(ent.getKey())
+               .value(ent.getValue());
+        outRecord();
+      }
+
+      for (final var ent: dayVal.getSortedIp2Counts()) {
+        records.start(dayNetworkRecord)
+               .value(day)
+               .value(ent.getKey())
+               .value(ent.getValue());
+        outRecord();
+      }
     }
+  }
 
-    final List<NameValuePair> params =
-            URLEncodedUtils.parse(uri, "UTF-8");
+  private void recordClassified(final String kind,
+                                final List<String> names,
+                                final int[] counts) {
+    for (int i = 0; i < counts.length; i++) {
+      records.start(classifiedRecord)
+             .value(kind)
+             .value(names.get(i))
+             .value(counts[i]);
+      outRecord();
+    }
+  }
 
-    final Map<String, List<String>> paramsMap = new HashMap<>();
+  private void recordCache(final String kind,
+                           final ClassifyCache cache) {
+    records.start(classifyCacheRecord)
+           .value(kind)
+           .value(cache.getHits())
+           .value(cache.getMisses())
+           .value(cache.getEvictions());
+    outRecord();
+  }
 
-    for (final NameValuePair param : params) {
-      paramsMap.computeIfAbsent(param.getName(),
-                                k -> new ArrayList<>())
-               .add(param.getValue());
+  private void outUnmatched(final String kind,
+                            final String path) {
+    if (records == null) {
+      out("Not matched %s", path);
+      return;
     }
 
-    for (final FeedMatcher m: feedMatchers) {
-      if (m.match(ale.path, params, paramsMap)) {
-        m.matched++;
-        return;
-      }
+    records.start(unmatchedRecord)
+           .value(kind)
+           .value(path);
+    outRecord();
+  }
+
+  private void doLegacyFeeder(final AccessLogEntry ale) {
+    numLegacy++;
+
+    int i = feederCache.get(ale.path);
+    if (i == ClassifyCache.notCached) {
+      i = patterns.matchFeeder(urlParts.parse(ale.path));
+      feederCache.put(ale.path, i);
+    }
+
+    if (i >= 0) {
+      feedMatched[i]++;
+      return;
     }
 
     feederUnknown++;
-    out("Not matched %s", ale.path);
+    outUnmatched("feeder", ale.path);
   }
 
   private void doWebCache(final AccessLogEntry ale) {
@@ -232,24 +576,40 @@ public class AccessLogs {
         /bwObject.json
      */
 
-    final URI uri;
-    try {
-      uri = new URI(ale.path);
-    } catch (final URISyntaxException e) {
-      throw new RuntimeException(e);
+    int i = webcacheCache.get(ale.path);
+    if (i == ClassifyCache.notCached) {
+      i = classifyWebcache(ale.path);
+      webcacheCache.put(ale.path, i);
     }
 
-    final List<String> ruri = fixPath(uri.getPath());
+    if (i >= 0) {
+      webcacheMatched[i]++;
+      return;
+    }
+
+    webCacheUnknown++;
+    outUnmatched("webcache", ale.path);
+  }
+
+  private int classifyWebcache(final String path) {
+    final var req = urlParts.parse(path);
+    final List<String> segments;
 
-    for (final WebcacheMatcher m: webcacheMatchers) {
-      if (m.match(ale.path, ruri)) {
-        m.matched++;
-        return;
+    if (req.isPlainPath()) {
+      segments = req.getSegments();
+    } else {
+      // Needs decoding and normalising
+      final URI uri;
+      try {
+        uri = new URI(path);
+      } catch (final URISyntaxException e) {
+        throw new RuntimeException(e);
       }
+
+      segments = fixPath(uri.getPath());
     }
 
-    webCacheUnknown++;
-    out("Not matched %s", ale.path);
+    return patterns.matchWebcache(segments);
   }
 
   private List<String> fixPath(final String path) {
@@ -311,604 +671,38 @@ public class AccessLogs {
     return al;
   }
 
-  /* Pattern 1 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-         calPath=/public/cals/MainCal
-         skinName=list-json
-         setappvar=objName(bwObject)
-         setappvar=summaryMode(details)
-         fexpr=%28catuid%3D%272962aca4-289343b8-0128-98411c36-0000001e%27%29
-         days=30
-   */
-  private static class FeedPattern1 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 6, paramsMap, 5)) {
-        return false;
-      }
-
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "skinName", 1) ||
-              !checkParam(paramsMap, "setappvar", 2) ||
-              !checkParam(paramsMap, "fexpr", 1) ||
-              !checkParam(paramsMap, "days", 1)) {
-        return false;
-      }
-
-      if (!checkParVal(paramsMap.get("skinName").get(0),
-                       "list-json")) {
-        return false;
-      }
-
-      return onlyCatUids(paramsMap.get("fexpr").get(0));
-    }
-  }
-
-  /* Pattern 2 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-         calPath=/public/cals/MainCal
-         skinName=list-rss | list-json
-         setappvar=summaryMode(details)
-         days=1
-   */
-  private static class FeedPattern2 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 4, paramsMap, 4)) {
-        return false;
-      }
-
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "skinName", 1) ||
-              !checkParam(paramsMap, "setappvar", 1) ||
-              !checkParam(paramsMap, "days", 1)) {
-        return false;
-      }
-
-      return checkParVal(paramsMap.get("skinName").get(0),
-                         "list-rss", "list-json", "default");
-    }
-  }
-
-  /* Pattern 3 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-        calPath=/public/cals/MainCal
-        skinName=list-rss
-        setappvar=summaryMode(details)
-        fexpr=%28catuid%3D%27ff808181-1fd7389e-011f-d7389f4b-00000018%27%29
-        days=20
-   */
-  private static class FeedPattern3 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 5, paramsMap, 5)) {
-        return false;
-      }
-
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "skinName", 1) ||
-              !checkParam(paramsMap, "setappvar", 1) ||
-              !checkParam(paramsMap, "fexpr", 1) ||
-              !checkParam(paramsMap, "days", 1)) {
-        return false;
-      }
-
-      if (!checkParVal(paramsMap.get("skinName").get(0),
-                       "list-rss", "list-json", "default")) {
-        return false;
-      }
-
-      return onlyCatUids(paramsMap.get("fexpr").get(0));
-    }
-  }
-
-  /* Pattern 4 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-        calPath=%2Fpublic%2Fcals%2FMainCal
-        skinName=list-rss
-   */
-  private static class FeedPattern4 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 2, paramsMap, 2)) {
-        return false;
-      }
-
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "skinName", 1)) {
-        return false;
-      }
-
-      return checkParVal(paramsMap.get("skinName").get(0),
-                         "list-rss");
-    }
-  }
-
-  /* Pattern 5 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-        calPath=%2Fpublic%2Fcals%2FMainCal
-        skinName=list-json
-        setappvar=summaryMode(details)
-        setappvar=objName(bwObject)
-        days=1
-   */
-  private static class FeedPattern5 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 5, paramsMap, 4)) {
-        return false;
-      }
-
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "skinName", 1) ||
-              !checkParam(paramsMap, "setappvar", 2) ||
-              !checkParam(paramsMap, "days", 1)) {
-        return false;
-      }
-
-      return checkParVal(paramsMap.get("skinName").get(0),
-                         "list-json");
-    }
-  }
-
-  /* Pattern 6 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-        calPath=/public/cals/MainCal
-        format=text/calendar
-        setappvar=summaryMode(details)
-        fexpr=%28catuid%3D%272962ac9d-4b262989-014b-26e8a64a-00007157%27%29
-        days=7
-   */
-  private static class FeedPattern6 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 5, paramsMap, 5)) {
-        return false;
-      }
-
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "format", 1) ||
-              !checkParam(paramsMap, "setappvar", 1) ||
-              !checkParam(paramsMap, "fexpr", 1) ||
-              !checkParam(paramsMap, "days", 1)) {
-        return false;
-      }
-
-      return onlyCatUids(paramsMap.get("fexpr").get(0));
-    }
-  }
-
-  /* Pattern 7 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-        calPath=/public/cals/MainCal
-        format=text/calendar
-        setappvar=summaryMode(details)
-        days=7
-   */
-  private static class FeedPattern7 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 4, paramsMap, 4)) {
-        return false;
-      }
-
-      return checkParam(paramsMap, "calPath", 1) &&
-              checkParam(paramsMap, "format", 1) &&
-              checkParam(paramsMap, "setappvar", 1) &&
-              checkParam(paramsMap, "days", 1);
-    }
-  }
-
-  /* Pattern 8 is of this form:
-    /feeder/widget/categories.do
-       Request params:
-        skinName=widget-json-cats
-        setappvar=objName(catsObj)
-        calPath=/public/cals/MainCal
-   */
-  private static class FeedPattern8 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/widget/categories.do",
-                 params, 3, paramsMap, 3)) {
-        return false;
-      }
-
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "setappvar", 1) ||
-              !checkParam(paramsMap, "skinName", 1)) {
-        return false;
-      }
-
-      return checkParVal(paramsMap.get("skinName").get(0),
-                       "widget-json-cats");
-    }
-  }
-
-  /* Pattern 9 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-        calPath=/public/cals/MainCal
-        skinName=list-rss
-        setappvar=summaryMode(details)
-        fexpr=%28catuid%3D%272962aca4-289343b8-0128-942028ce-00000005%27%7ccatuid%3D%27ff808181-1fd73b03-011f-d73b0642-00000001%27%7ccatuid%3D%27ff808181-1fd7389e-011f-d7389ed0-00000002%27%7ccatuid%3D%272962aca4-289343b8-0128-9423162b-0000000b%27%7ccatuid%3D%272962aca4-289343b8-0128-9424f694-0000000e%27%7ccatuid%3D%272962ac9d-29fa2ae9-0129-ff73a976-0000047c%27%7ccatuid%3D%272962aca4-289343b8-0128-9420505d-00000006%27%7ccatuid%3D%27ff808181-1fd73b03-011f-d73b065c-00000002%27%29
-        start=2019-03-04
-        end=2020-03-04
-   */
-  private static class FeedPattern9 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 6, paramsMap, 6)) {
-        return false;
-      }
-
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "skinName", 1) ||
-              !checkParam(paramsMap, "setappvar", 1) ||
-              !checkParam(paramsMap, "fexpr", 1) ||
-              !checkParam(paramsMap, "start", 1) ||
-              !checkParam(paramsMap, "end", 1)) {
-        return false;
-      }
-
-      if (!checkParVal(paramsMap.get("skinName").get(0),
-                       "list-rss")) {
-        return false;
-      }
-
-      return onlyCatUids(paramsMap.get("fexpr").get(0));
-    }
-  }
-
-  /* Pattern 10 is of this form:
-    /feeder/main/listEvents.do
-       Request params:
-        calPath=/public/cals/MainCal
-        skinName=list-rss
-        setappvar=summaryMode(details)
-        start=2019-03-04
-        end=2020-03-04
-   */
-  private static class FeedPattern10 extends FeedMatcher {
-    boolean match(final String urlStr,
-                  final List<NameValuePair> params,
-                  final Map<String, List<String>> paramsMap) {
-      if (!check(urlStr, "/feeder/main/listEvents.do",
-                 params, 5, paramsMap, 5)) {
-        return false;
-      }
-
-      //noinspection SimplifiableIfStatement
-      if (!checkParam(paramsMap, "calPath", 1) ||
-              !checkParam(paramsMap, "skinName", 1) ||
-              !checkParam(paramsMap, "setappvar", 1) ||
-              !checkParam(paramsMap, "start", 1) ||
-              !checkParam(paramsMap, "end", 1)) {
-        return false;
-      }
-
-      return checkParVal(paramsMap.get("skinName").get(0),
-                       "list-rss");
-    }
-  }
-
-  private final static FeedMatcher[] feedMatchers = {
-          new FeedPattern1(),
-          new FeedPattern2(),
-          new FeedPattern3(),
-          new FeedPattern4(),
-          new FeedPattern5(),
-          new FeedPattern6(),
-          new FeedPattern7(),
-          new FeedPattern8(),
-          new FeedPattern9(),
-          new FeedPattern10(),
-          };
-
-  abstract static class FeedMatcher {
-    int matched;
-
-    abstract boolean match(String urlStr,
-                           List<NameValuePair> params,
-                           Map<String, List<String>> paramsMap);
-
-    boolean check(final String urlStr,
-                  final String expectedUrlStr,
-                  final List<NameValuePair> params,
-                  final int paramsSize,
-                  final Map<String, List<String>> paramsMap,
-                  final int mapSize) {
-      if (!urlStr.startsWith(expectedUrlStr)) {
-        return false;
-      }
-
-      //noinspection SimplifiableIfStatement
-      if (params.size() != paramsSize) {
-        return false;
-      }
-
-      return paramsMap.size() == mapSize;
-    }
-
-    boolean checkParVal(final String val,
-                        final String... vals) {
-      if (val == null) {
-        return false;
-      }
-
-      for (final String possible : vals) {
-        if (val.equals(possible)) {
-          return true;
-        }
-      }
-
-      return false;
-    }
-
-    boolean checkParam(final Map<String, List<String>> paramsMap,
-                       final String name,
-                       final int num) {
-      final List<String> vals = paramsMap.get(name);
-
-      return (vals != null) && (vals.size() == num);
-    }
-  }
-
-  private static class WebcachePattern1 extends WebcacheMatcher {
-    boolean match(final String urlStr,
-                  final List<String> ruri) {
-      if (ruri.size() != 7) {
-        return false;
-      }
-
-      if (!"webcache".equals(ruri.get(0))) {
-        return false;
-      }
-
-      if (!"v1.0".equals(ruri.get(1))) {
-        return false;
-      }
-
-      if (!"jsonDays".equals(ruri.get(2)) &&
-              !"rssDays".equals(ruri.get(2))) {
-        return false;
-      }
-
-      if (!isInt(ruri.get(3))) {
-        return false;
-      }
-
-      if (!"list-rss".equals(ruri.get(4)) &&
-              !"list-json".equals(ruri.get(4))) {
-        return false;
-      }
-
-      final String fexpr = ruri.get(5);
-
-      if (!"no--filter".equals(fexpr) &&
-              !onlyCatUids(fexpr)) {
-        return false;
-      }
-
-      return "bwObject.json".equals(ruri.get(6)) ||
-              "no--object.json".equals(ruri.get(6));
-    }
-  }
-
-  private static class WebcachePattern2 extends WebcacheMatcher {
-    boolean match(final String urlStr,
-                  final List<String> ruri) {
-      if (ruri.size() != 6) {
-        return false;
-      }
-
-      if (!"webcache".equals(ruri.get(0))) {
-        return false;
-      }
-
-      if (!"v1.0".equals(ruri.get(1))) {
-        return false;
-      }
-
-      if (!"jsonDays".equals(ruri.get(2)) &&
-              !"rssDays".equals(ruri.get(2)) &&
-              !"xmlDays".equals(ruri.get(2))) {
-        return false;
-      }
-
-      if (!isInt(ruri.get(3))) {
-        return false;
-      }
-
-      if (!"list-rss".equals(ruri.get(4)) &&
-              !"list-json".equals(ruri.get(4)) &&
-              !"list-xml".equals(ruri.get(4))) {
-        return false;
-      }
-
-      final String fexpr = ruri.get(5);
-
-      return "no--filter.rss".equals(fexpr) ||
-              "no--filter.xml".equals(fexpr) ||
-              onlyCatUids(fexpr);
+  private void out(final String format, final Object... args) {
+    if (deferredOut != null) {
+      outLine(String.format(format, args));
+      return;
     }
-  }
-
-  private static class WebcachePattern3 extends WebcacheMatcher {
-    boolean match(final String urlStr,
-                  final List<String> ruri) {
-      if (ruri.size() != 5) {
-        return false;
-      }
 
-      if (!"webcache".equals(ruri.get(0))) {
-        return false;
-      }
-
-      if (!"v1.0".equals(ruri.get(1))) {
-        return false;
-      }
-
-      if (!"icsDays".equals(ruri.get(2))) {
-        return false;
-      }
-
-      if (!isInt(ruri.get(3))) {
-        return false;
-      }
-
-      final String fexpr = ruri.get(4);
-
-      return "no--filter.ics".equals(fexpr) ||
-              onlyCatUids(fexpr);
-    }
+    Output.fmt(format, args);
   }
 
-  private static class WebcachePattern4 extends WebcacheMatcher {
-    boolean match(final String urlStr,
-                  final List<String> ruri) {
-      if (ruri.size() != 5) {
-        return false;
-      }
-
-      if (!"webcache".equals(ruri.get(0))) {
-        return false;
-      }
-
-      if (!"v1.0".equals(ruri.get(1))) {
-        return false;
-      }
-
-      if (!"categories".equals(ruri.get(2))) {
-        return false;
-      }
-
-      if (!"widget-json-cats".equals(ruri.get(3))) {
-        return false;
-      }
-
-      return "catsObj.json".equals(ruri.get(4));
-    }
+  private void out() {
+    outLine("");
   }
 
-  private static class WebcachePattern5 extends WebcacheMatcher {
-    boolean match(final String urlStr,
-                  final List<String> ruri) {
-      if (ruri.size() != 9) {
-        return false;
-      }
-
-      if (!"webcache".equals(ruri.get(0))) {
-        return false;
-      }
-
-      if (!"v1.0".equals(ruri.get(1))) {
-        return false;
-      }
-
-      if (!"jsonDays".equals(ruri.get(2))) {
-        return false;
-      }
-
-      if (!isInt(ruri.get(3))) {
-        return false;
-      }
-
-      if (!"list-json".equals(ruri.get(4))) {
-        return false;
-      }
-
-      final String fexpr = ruri.get(5);
-
-      if (!"no--filter".equals(fexpr) &&
-              !onlyCatUids(fexpr)) {
-        return false;
-      }
-
-      if (!isInt(ruri.get(6))) {
-        return false;
-      }
-
-      if (!isInt(ruri.get(7))) {
-        return false;
-      }
-
-      return isInt(ruri.get(8));
+  private void outLine(final String ln) {
+    if (deferredOut != null) {
+      deferredOut.add(Output.encode(ln).toString());
+      return;
     }
-  }
-
-  private final static WebcacheMatcher[] webcacheMatchers = {
-          new WebcachePattern1(),
-          new WebcachePattern2(),
-          new WebcachePattern3(),
-          new WebcachePattern4(),
-  };
-
-  static abstract class WebcacheMatcher {
-    int matched;
 
-    abstract boolean match(String urlStr,
-                           List<String> ruri);
-
-    boolean isInt(final String s) {
-      try {
-        Integer.valueOf(s);
-        return true;
-      } catch (final Throwable ignored) {
-        return false;
-      }
-    }
+    Output.line(ln);
   }
 
-  static boolean onlyCatUids(final String fexpr) {
-      /*
-    fexpr=(catuid='2962ac9d-4b307640-014b-32408a42-000054fa')&
-    (catuid!='2962ac9d-2a425309-012a-43b52f6f-00000304'&catuid!='2962aca4-289343b8-0128-9420e1a5-00000007'&catuid!='2962aca4-289343b8-0128-9420505d-00000006')
+  /* Output the record built in records
    */
-    final String frep = fexpr.replace("(", "").
-            replace(")", "").
-                                     replace("!=", "=");
-
-    final String[] segs = frep.split("&");
+  private void outRecord() {
+    final var rec = records.end();
 
-    for (final String seg : segs) {
-      if (!seg.startsWith("catuid=")) {
-        return false;
-      }
+    if (deferredOut != null) {
+      deferredOut.add(rec.toString());
+      return;
     }
 
-    return true;
-  }
-
-  private void out(final String format, final Object... args) {
-    System.out.println(String.format(format, args));
-  }
-
-  private void out() {
-    System.out.println();
+    Output.record(rec);
   }
 }
\ No newline at end of file
@@ -0,0 +1,627 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The patterns used by the access action to classify feeder and
+ * webcache requests. They are described in a simple text format -
+ * see defaultPatterns - and compiled into lookup structures so a
+ * request is classified with a lookup or two whatever the number of
+ * patterns:
+ * <ul>
+ *   <li>feeder patterns are found by path then by the signature of
+ *   the request parameters - a hash of the names which is the same
+ *   whatever their order. Only the patterns with that signature,
+ *   usually one, have their names and values checked.</li>
+ *   <li>webcache patterns are a tree on the path segments.</li>
+ * </ul>
+ *
+ * <p>A request is counted against the first pattern it matches.
+ */
+public class AccessPatterns {
+  public static final String defaultPatterns = """
+      # Patterns used by the access action to classify feeder and
+      # webcache requests. A request is counted against the first
+      # pattern it matches.
+      #
+      # feeder <name>
+      #   path <path - without any query or ;jsessionid>
+      #   param <name>[=<values>]  - once for each time name appears
+      #
+      # webcache <name>
+      #   segments <values> ...    - one for each segment of the path
+      #
+      # <values> is one or more of these separated by |
+      #   a literal value
+      #   {int}      an integer
+      #   {catuids}  a filter expression only on category uids
+      #   *          anything
+
+      feeder pattern1
+        path /feeder/main/listEvents.do
+        param calPath
+        param skinName=list-json
+        param setappvar
+        param setappvar
+        param fexpr={catuids}
+        param days
+
+      feeder pattern2
+        path /feeder/main/listEvents.do
+        param calPath
+        param skinName=list-rss|list-json|default
+        param setappvar
+        param days
+
+      feeder pattern3
+        path /feeder/main/listEvents.do
+        param calPath
+        param skinName=list-rss|list-json|default
+        param setappvar
+        param fexpr={catuids}
+        param days
+
+      feeder pattern4
+        path /feeder/main/listEvents.do
+        param calPath
+        param skinName=list-rss
+
+      feeder pattern5
+        path /feeder/main/listEvents.do
+        param calPath
+        param skinName=list-json
+        param setappvar
+        param setappvar
+        param days
+
+      feeder pattern6
+        path /feeder/main/listEvents.do
+        param calPath
+        param format
+        param setappvar
+        param fexpr={catuids}
+        param days
+
+      feeder pattern7
+        path /feeder/main/listEvents.do
+        param calPath
+        param format
+        param setappvar
+        param days
+
+      feeder pattern8
+        path /feeder/widget/categories.do
+        param skinName=widget-json-cats
+        param setappvar
+        param calPath
+
+      feeder pattern9
+        path /feeder/main/listEvents.do
+        param calPath
+        param skinName=list-rss
+        param setappvar
+        param fexpr={catuids}
+        param start
+        param end
+
+      feeder pattern10
+        path /feeder/main/listEvents.do
+        param calPath
+        param skinName=list-rss
+        param setappvar
+        param start
+        param end
+
+      webcache pattern11
+        segments webcache v1.0 jsonDays|rssDays {int} list-rss|list-json no--filter|{catuids} bwObject.json|no--object.json
+
+      webcache pattern12
+        segments webcache v1.0 jsonDays|rssDays|xmlDays {int} list-rss|list-json|list-xml no--filter.rss|no--filter.xml|{catuids}
+
+      webcache pattern13
+        segments webcache v1.0 icsDays {int} no--filter.ics|{catuids}
+
+      webcache pattern14
+        segments webcache v1.0 categories widget-json-cats catsObj.json
+
+      # Not enabled
+      # webcache pattern15
+      #   segments webcache v1.0 jsonDays {int} list-json no--filter|{catuids} {int} {int} {int}
+      """;
+
+  private static AccessPatterns defaults;
+
+  private final List<String> feederNames = new ArrayList<>();
+  private final List<String> webcacheNames = new ArrayList<>();
+
+  // path -> parameter signature -> patterns in order
+  private final Map<String, Map<Long, List<FeedPattern>>> feeders =
+          new HashMap<>();
+
+  private final SegmentNode webcache = new SegmentNode();
+
+  /**
+   * @return the compiled default patterns
+   */
+  public static synchronized AccessPatterns defaults() {
+    if (defaults == null) {
+      defaults = parse("default patterns",
+                       Arrays.asList(defaultPatterns.split("\n")));
+    }
+
+    return defaults;
+  }
+
+  /**
+   * @param path of a file in the format of defaultPatterns
+   * @return compiled patterns
+   * @throws IOException on read error
+   */
+  public static AccessPatterns load(final Path path) throws IOException {
+    return parse(path.toString(), Files.readAllLines(path));
+  }
+
+  /**
+   * @param source for error messages
+   * @param lines of patterns
+   * @return compiled patterns
+   * @throws IllegalArgumentException for a bad pattern
+   */
+  public static AccessPatterns parse(final String source,
+                                     final List<String> lines) {
+    final var ap = new AccessPatterns();
+
+    // The pattern being built
+    String kind = null;
+    String name = null;
+    String path = null;
+    Map<String, Integer> counts = null;
+    Map<String, ValueRule> rules = null;
+    List<ValueRule> segments = null;
+
+    int lineNum = 0;
+
+    for (final var rawLine: lines) {
+      lineNum++;
+      final var where = source + " line " + lineNum;
+
+      final var line = rawLine.strip();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+
+      final var words = line.split("\\s+");
+
+      switch (words[0]) {
+        case "feeder", "webcache" -> {
+          ap.add(where, kind, name, path, counts, rules, segments);
+
+          if (words.length != 2) {
+            throw new IllegalArgumentException(
+                    where + ": expected " + words[0] + " <name>");
+          }
+
+          kind = words[0];
+          name = words[1];
+          path = null;
+          counts = new TreeMap<>();
+          rules = new HashMap<>();
+          segments = null;
+        }
+
+        case "path" -> {
+          expect(where, kind, "feeder", words, 2);
+          path = words[1];
+        }
+
+        case "param" -> {
+          expect(where, kind, "feeder", words, 2);
+
+          final var eqPos = words[1].indexOf('=');
+          final String pname;
+
+          if (eqPos < 0) {
+            pname = words[1];
+          } else {
+            pname = words[1].substring(0, eqPos);
+
+            final var rule = ValueRule.parse(words[1].substring(eqPos + 1));
+            final var prev = rules.put(pname, rule);
+
+            if ((prev != null) && !prev.equals(rule)) {
+              throw new IllegalArgumentException(
+                      where + ": different values for " + pname);
+            }
+          }
+
+          counts.merge(pname, 1, Integer::sum);
+        }
+
+        case "segments" -> {
+          if (kind == null) {
+            throw new IllegalArgumentException(
+                    where + ": segments outside a pattern");
+          }
+          expect(where, kind, "webcache", words, words.length);
+
+          segments = new ArrayList<>();
+          for (int i = 1; i < words.length; i++) {
+            segments.add(ValueRule.parse(words[i]));
+          }
+        }
+
+        default -> throw new IllegalArgumentException(
+                where + ": unknown keyword " + words[0]);
+      }
+    }
+
+    ap.add(source, kind, name, path, counts, rules, segments);
+
+    return ap;
+  }
+
+  public List<String> getFeederNames() {
+    return Collections.unmodifiableList(feederNames);
+  }
+
+  public List<String> getWebcacheNames() {
+    return Collections.unmodifiableList(webcacheNames);
+  }
+
+  /**
+   * @param req the request url split up
+   * @return index of first matching feeder pattern or -1
+   */
+  public int matchFeeder(final UrlParts req) {
+    final var bySignature = feeders.get(req.getPath(true));
+    if (bySignature == null) {
+      return -1;
+    }
+
+    long sig = 0;
+    for (int i = 0; i < req.getParamCount(); i++) {
+      sig += req.nameHash(i);
+    }
+
+    final var candidates = bySignature.get(sig);
+    if (candidates == null) {
+      return -1;
+    }
+
+    for (final var fp: candidates) {
+      if (fp.namesMatch(req) && fp.valuesMatch(req)) {
+        return fp.index;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * @param segments decoded segments of the request path - may be null
+   * @return index of first matching webcache pattern or -1
+   */
+  public int matchWebcache(final List<String> segments) {
+    if (segments == null) {
+      return -1;
+    }
+
+    return webcache.match(segments, 0);
+  }
+
+  /* ====================================================================
+                   Compiling
+     ==================================================================== */
+
+  private static void expect(final String where,
+                             final String kind,
+                             final String wantKind,
+                             final String[] words,
+                             final int numWords) {
+    if (!wantKind.equals(kind)) {
+      throw new IllegalArgumentException(
+              where + ": " + words[0] + " only allowed for " + wantKind);
+    }
+
+    if ((words.length != numWords) || (numWords < 2)) {
+      throw new IllegalArgumentException(
+              where + ": bad " + words[0]);
+    }
+  }
+
+  private void add(final String where,
+                   final String kind,
+                   final String name,
+                   final String path,
+                   final Map<String, Integer> counts,
+                   final Map<String, ValueRule> rules,
+                   final List<ValueRule> segments) {
+    if (kind == null) {
+      return;
+    }
+
+    if ("feeder".equals(kind)) {
+      if (path == null) {
+        throw new IllegalArgumentException(
+                where + ": no path for feeder " + name);
+      }
+
+      final var fp = new FeedPattern(feederNames.size(), counts, rules);
+      feederNames.add(name);
+
+      feeders.computeIfAbsent(path, k -> new HashMap<>())
+             .computeIfAbsent(fp.signature, k -> new ArrayList<>())
+             .add(fp);
+      return;
+    }
+
+    if (segments == null) {
+      throw new IllegalArgumentException(
+              where + ": no segments for webcache " + name);
+    }
+
+    webcache.add(segments, 0, webcacheNames.size());
+    webcacheNames.add(name);
+  }
+
+  private static class FeedPattern {
+    final int index;
+
+    final String[] names;
+    final int[] counts;
+    final int numParams;
+
+    // Sum of the name hashes - one for each time a name appears
+    final long signature;
+
+    // Only for parameters with values to check
+    final String[] ruleNames;
+    final ValueRule[] rules;
+
+    FeedPattern(final int index,
+                final Map<String, Integer> counts,
+                final Map<String, ValueRule> rules) {
+      this.index = index;
+
+      names = counts.keySet().toArray(new String[0]);
+      this.counts = new int[names.length];
+
+      int num = 0;
+      long sig = 0;
+      for (int i = 0; i < names.length; i++) {
+        final int ct = counts.get(names[i]);
+
+        this.counts[i] = ct;
+        num += ct;
+        sig += ct * UrlParts.hash(names[i]);
+      }
+
+      numParams = num;
+      signature = sig;
+
+      ruleNames = rules.keySet().toArray(new String[0]);
+      this.rules = new ValueRule[ruleNames.length];
+      for (int i = 0; i < ruleNames.length; i++) {
+        this.rules[i] = rules.get(ruleNames[i]);
+      }
+    }
+
+    /* The signature is only a hash so check the names are exactly
+       those of the pattern.
+     */
+    boolean namesMatch(final UrlParts req) {
+      final int num = req.getParamCount();
+      if (num != numParams) {
+        return false;
+      }
+
+      for (int n = 0; n < names.length; n++) {
+        int ct = 0;
+
+        for (int i = 0; i < num; i++) {
+          if (req.nameEquals(i, names[n])) {
+            ct++;
+          }
+        }
+
+        if (ct != counts[n]) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    boolean valuesMatch(final UrlParts req) {
+      for (int r = 0; r < rules.length; r++) {
+        for (int i = 0; i < req.getParamCount(); i++) {
+          if (req.nameEquals(i, ruleNames[r]) &&
+                  !rules[r].matches(req.getValue(i))) {
+            return false;
+          }
+        }
+      }
+
+      return true;
+    }
+  }
+
+  /* A node in the tree of webcache path segments. A segment may
+     match a literal child and one or more rule children so all are
+     tried and the first pattern wins.
+   */
+  private static class SegmentNode {
+    final Map<String, SegmentNode> literals = new HashMap<>();
+    final Map<ValueRule, SegmentNode> rules = new LinkedHashMap<>();
+
+    // Pattern ending here
+    int index = -1;
+
+    void add(final List<ValueRule> segments,
+             final int pos,
+             final int patternIndex) {
+      if (pos == segments.size()) {
+        if (index < 0) {
+          index = patternIndex;
+        }
+        return;
+      }
+
+      final var rule = segments.get(pos);
+
+      for (final var lit: rule.literals) {
+        literals.computeIfAbsent(lit, k -> new SegmentNode())
+                .add(segments, pos + 1, patternIndex);
+      }
+
+      final var classes = rule.classesOnly();
+      if (classes != null) {
+        rules.computeIfAbsent(classes, k -> new SegmentNode())
+             .add(segments, pos + 1, patternIndex);
+      }
+    }
+
+    int match(final List<String> segments,
+              final int pos) {
+      if (pos == segments.size()) {
+        return index;
+      }
+
+      final var seg = segments.get(pos);
+      int res = -1;
+
+      final var lit = literals.get(seg);
+      if (lit != null) {
+        res = lit.match(segments, pos + 1);
+      }
+
+      for (final var ent: rules.entrySet()) {
+        if (!ent.getKey().matches(seg)) {
+          continue;
+        }
+
+        final int i = ent.getValue().match(segments, pos + 1);
+        if ((i >= 0) && ((res < 0) || (i < res))) {
+          res = i;
+        }
+      }
+
+      return res;
+    }
+  }
+
+  /** Allowed values for a parameter or segment: literals and classes
+   * of value.
+   */
+  static class ValueRule {
+    final Set<String> literals = new TreeSet<>();
+    boolean anything;
+    boolean anInt;
+    boolean catUids;
+
+    static ValueRule parse(final String spec) {
+      final var rule = new ValueRule();
+
+      for (final var alt: spec.split("\\|")) {
+        switch (alt) {
+          case "*" -> rule.anything = true;
+          case "{int}" -> rule.anInt = true;
+          case "{catuids}" -> rule.catUids = true;
+          case "" -> throw new IllegalArgumentException(
+                  "Empty value in " + spec);
+          default -> rule.literals.add(alt);
+        }
+      }
+
+      return rule;
+    }
+
+    boolean matches(final String val) {
+      if (val == null) {
+        return false;
+      }
+
+      return anything ||
+              literals.contains(val) ||
+              (anInt && isInt(val)) ||
+              (catUids && onlyCatUids(val));
+    }
+
+    /**
+     * @return this without the literals or null if only literals
+     */
+    ValueRule classesOnly() {
+      if (!anything && !anInt && !catUids) {
+        return null;
+      }
+
+      final var rule = new ValueRule();
+      rule.anything = anything;
+      rule.anInt = anInt;
+      rule.catUids = catUids;
+
+      return rule;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(literals, anything, anInt, catUids);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof final ValueRule that)) {
+        return false;
+      }
+
+      return literals.equals(that.literals) &&
+              (anything == that.anything) &&
+              (anInt == that.anInt) &&
+              (catUids == that.catUids);
+    }
+  }
+
+  static boolean isInt(final String s) {
+    try {
+      Integer.valueOf(s);
+      return true;
+    } catch (final Throwable ignored) {
+      return false;
+    }
+  }
+
+  static boolean onlyCatUids(final String fexpr) {
+      /*
+    fexpr=(catuid='2962ac9d-4b307640-014b-32408a42-000054fa')&
+    (catuid!='2962ac9d-2a425309-012a-43b52f6f-00000304'&catuid!='2962aca4-289343b8-0128-9420e1a5-00000007'&catuid!='2962aca4-289343b8-0128-9420505d-00000006')
+   */
+    final String frep = fexpr.replace("(", "").
+            replace(")", "").
+                                     replace("!=", "=");
+
+    final String[] segs = frep.split("&");
+
+    for (final String seg : segs) {
+      if (!seg.startsWith("catuid=")) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
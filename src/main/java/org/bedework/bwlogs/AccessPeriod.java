@@ -8,75 +8,182 @@ import org.bedework.util.misc.Util;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-/**
+import java.util.TreeMap;
+
+/** Counts for a period. The number of distinct ips and /16 networks
+ * is always estimated. The exact count for each ip and network is
+ * optional as the tables get very large.
+ *
+ * <p>Addresses are counted in binary form - see IpAddress. Anything
+ * logged in the ip field which isn't an address, e.g. a host name, is
+ * counted as a string and has no network.
+ *
  * User: mike Date: 2/22/20 Time: 23:56
  */
 public class AccessPeriod {
-  final Map<String, Integer> ipCounts = new HashMap<>();
-  final Map<String, Integer> ip2Counts = new HashMap<>();
+  // null if we aren't keeping exact counts
+  final IpCounts ipCounts;
+  final IpCounts ip2Counts;
+  final Map<String, Integer> otherIpCounts;
+
+  final HyperLogLog distinctIps;
+  final HyperLogLog distinctIp2s;
+
   final int periodSeconds;
+  long requests;
+
+  private IpAddress address;
 
   public AccessPeriod(final int periodSeconds) {
+    this(periodSeconds, true, AccessDay.hourPrecision);
+  }
+
+  /**
+   * @param periodSeconds length of period
+   * @param exactIps true to count requests for each ip
+   * @param precision for the distinct counts
+   */
+  public AccessPeriod(final int periodSeconds,
+                      final boolean exactIps,
+                      final int precision) {
     this.periodSeconds = periodSeconds;
+
+    if (exactIps) {
+      ipCounts = new IpCounts();
+      ip2Counts = new IpCounts();
+      otherIpCounts = new HashMap<>();
+    } else {
+      ipCounts = null;
+      ip2Counts = null;
+      otherIpCounts = null;
+    }
+
+    distinctIps = new HyperLogLog(precision);
+    distinctIp2s = new HyperLogLog(precision);
   }
 
   public void addIp(final String ip) {
-    var i = ipCounts.getOrDefault(ip, 0);
-    ipCounts.put(ip, i + 1);
+    addIp(parseIp(ip), ip);
+  }
+
+  /**
+   * @param addr parsed address or null if ip is not an address
+   * @param ip as logged
+   */
+  void addIp(final IpAddress addr,
+             final String ip) {
+    requests++;
+
+    if (addr == null) {
+      distinctIps.add(ip);
 
-    final var ip2 = getIp2(ip);
-    if (ip2 == null) {
+      if (otherIpCounts != null) {
+        otherIpCounts.merge(ip, 1, Integer::sum);
+      }
       return;
     }
 
-    i = ip2Counts.getOrDefault(ip2, 0);
-    ip2Counts.put(ip2, i + 1);
+    final long hi = addr.hi;
+    final long lo = addr.lo;
+    final boolean v4 = IpAddress.isV4(hi, lo);
+
+    distinctIps.add(hi, lo);
+    if (v4) {
+      distinctIp2s.add(hi, IpAddress.v4Net(lo));
+    }
+
+    if (ipCounts == null) {
+      return;
+    }
+
+    ipCounts.add(hi, lo, 1);
+    if (v4) {
+      ip2Counts.add(hi, IpAddress.v4Net(lo), 1);
+    }
   }
 
-  public int totalRequests() {
-    return ipCounts.values().stream().mapToInt(Number::intValue).sum();
+  /**
+   * @param ip as logged
+   * @return the parsed address - reused for each call - or null
+   */
+  IpAddress parseIp(final String ip) {
+    if (address == null) {
+      address = new IpAddress();
+    }
+
+    if (!address.parse(ip)) {
+      return null;
+    }
+
+    return address;
+  }
+
+  public boolean hasExactIps() {
+    return ipCounts != null;
   }
 
+  public long totalRequests() {
+    return requests;
+  }
+
+  /**
+   * @return estimated number of distinct ips
+   */
+  public long getDistinctIps() {
+    return distinctIps.estimate();
+  }
+
+  /**
+   * @return estimated number of distinct /16 networks
+   */
+  public long getDistinctIp2s() {
+    return distinctIp2s.estimate();
+  }
+
+  /* The sort is stable so sorting by key first gives the same
+     order for equal counts however the table was built up.
+   */
   public List<Map.Entry<String, Integer>> getSortedIpCounts() {
-    return Util.sortMap(ipCounts);
+    final Map<String, Integer> res = new TreeMap<>(otherIpCounts);
+
+    ipCounts.forEach((hi, lo, ct) ->
+                             res.put(IpAddress.toString(hi, lo), ct));
+
+    return Util.sortMap(res);
   }
 
   public List<Map.Entry<String, Integer>> getSortedIp2Counts() {
-    return Util.sortMap(ip2Counts);
+    final Map<String, Integer> res = new TreeMap<>();
+
+    ip2Counts.forEach((hi, lo, ct) ->
+                              res.put(IpAddress.v4NetToString(lo), ct));
+
+    return Util.sortMap(res);
   }
 
   public float perSecond() {
     return (float)totalRequests() / periodSeconds;
   }
 
+  /** Add the counts from another period - e.g. the same period
+   * from a different part of the log.
+   *
+   * @param ap period to add
+   */
   public void add(final AccessPeriod ap) {
-    for (final var ip: ap.ipCounts.keySet()) {
-      final var ct = ap.ipCounts.get(ip);
+    requests += ap.requests;
+    distinctIps.add(ap.distinctIps);
+    distinctIp2s.add(ap.distinctIp2s);
 
-      final var i = ipCounts.getOrDefault(ip, 0);
-      ipCounts.put(ip, i + ct);
+    if ((ipCounts == null) || (ap.ipCounts == null)) {
+      return;
     }
 
-    for (final var ip2: ap.ip2Counts.keySet()) {
-      final var ct = ap.ip2Counts.get(ip2);
+    ipCounts.add(ap.ipCounts);
+    ip2Counts.add(ap.ip2Counts);
 
-      final var i = ip2Counts.getOrDefault(ip2, 0);
-      ipCounts.put(ip2, i + ct);
+    for (final var ent: ap.otherIpCounts.entrySet()) {
+      otherIpCounts.merge(ent.getKey(), ent.getValue(), Integer::sum);
     }
   }
-
-  private String getIp2(final String ip) {
-    var pos = ip.indexOf(".");
-    if (pos < 0) {
-      return null;
-    }
-
-    pos = ip.indexOf(".", pos + 1);
-    if (pos < 0) {
-      return null;
-    }
-
-    return ip.substring(0, pos) + ".*";
-  }
 }
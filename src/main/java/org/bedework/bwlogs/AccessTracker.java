@@ -21,6 +21,20 @@ public class AccessTracker {
   // One entry per day
   private final Map<String, AccessDay> dayValues = new HashMap<>();
 
+  private final boolean exactIps;
+
+  public AccessTracker() {
+    this(true);
+  }
+
+  /**
+   * @param exactIps true to count requests for each ip. Otherwise
+   *                 only the estimated number of distinct ips
+   */
+  public AccessTracker(final boolean exactIps) {
+    this.exactIps = exactIps;
+  }
+
   /** Update from the given access log entry. These should appear in
    * increasing time order.
    *
@@ -28,10 +42,24 @@ public class AccessTracker {
    */
   public void updateFrom(final AccessLogEntry ale) {
     final AccessDay dayVal =
-            dayValues.computeIfAbsent(ale.normDate, v -> new AccessDay());
+            dayValues.computeIfAbsent(ale.normDate,
+                                      v -> new AccessDay(exactIps));
     dayVal.updateFrom(ale);
   }
 
+  /** Add the counts from another tracker - e.g. one that was used
+   * for a different part of the log.
+   *
+   * @param at tracker to add
+   */
+  public void add(final AccessTracker at) {
+    for (final var ent: at.dayValues.entrySet()) {
+      dayValues.computeIfAbsent(ent.getKey(),
+                                v -> new AccessDay(exactIps))
+               .add(ent.getValue());
+    }
+  }
+
   public List<String> getSortedKeys() {
     final List<String> days = new ArrayList<>(dayValues.keySet());
     Collections.sort(days);
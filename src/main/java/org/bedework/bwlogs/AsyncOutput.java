@@ -0,0 +1,230 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/** Output lines are appended to a large buffer which, when full, is
+ * handed to a separate thread to write. The caller only waits if all
+ * the buffers are waiting to be written, so a slow terminal doesn't
+ * hold up the analysis.
+ */
+public class AsyncOutput implements OutputSink {
+  /** Default size of each buffer in chars */
+  public static final int defaultBufferSize = 256 * 1024;
+
+  /** Default number of buffers */
+  public static final int defaultBuffers = 4;
+
+  private static final String lineSeparator = System.lineSeparator();
+
+  // Markers on the filled queue
+  private static final StringBuilder flushMark = new StringBuilder();
+  private static final StringBuilder closeMark = new StringBuilder();
+
+  private final Writer writer;
+  private final boolean closeWriter;
+  private final int bufferSize;
+
+  private final BlockingQueue<StringBuilder> free;
+  private final BlockingQueue<StringBuilder> filled;
+  private final Semaphore flushed = new Semaphore(0);
+  private final Thread drainer;
+
+  private volatile IOException drainException;
+  private boolean closed;
+
+  private StringBuilder buf;
+
+  /** Like System.out write errors - e.g. a closed pipe - are ignored.
+   *
+   * @return output to stdout - not closed by close
+   */
+  public static AsyncOutput stdout() {
+    return new AsyncOutput(
+            new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(FileDescriptor.out),
+                    Charset.defaultCharset())),
+            false, "bwlogs-stdout",
+            defaultBufferSize, defaultBuffers);
+  }
+
+  /**
+   * @param path of file to create or replace
+   * @return output to the file
+   * @throws IOException on open error
+   */
+  public static AsyncOutput file(final Path path) throws IOException {
+    return new AsyncOutput(Files.newBufferedWriter(path),
+                           true, "bwlogs-out",
+                           defaultBufferSize, defaultBuffers);
+  }
+
+  /**
+   * @param writer to write to
+   * @param closeWriter true to close writer on close
+   * @param name for the writing thread
+   * @param bufferSize size of each buffer in chars
+   * @param numBuffers number of buffers
+   */
+  public AsyncOutput(final Writer writer,
+                     final boolean closeWriter,
+                     final String name,
+                     final int bufferSize,
+                     final int numBuffers) {
+    this.writer = writer;
+    this.closeWriter = closeWriter;
+    this.bufferSize = bufferSize;
+
+    free = new ArrayBlockingQueue<>(numBuffers);
+    // Room for all the buffers and a marker
+    filled = new ArrayBlockingQueue<>(numBuffers + 1);
+
+    for (int i = 1; i < numBuffers; i++) {
+      free.add(new StringBuilder(bufferSize + 1024));
+    }
+
+    buf = new StringBuilder(bufferSize + 1024);
+
+    drainer = new Thread(this::drain, name);
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  @Override
+  public synchronized void println(final CharSequence line) {
+    if (closed) {
+      throw new IllegalStateException("Output closed");
+    }
+
+    buf.append(line).append(lineSeparator);
+
+    if (buf.length() >= bufferSize) {
+      handOff();
+      try {
+        buf = free.take();
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(ie);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void flush() {
+    if (closed) {
+      return;
+    }
+
+    mark(flushMark);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+
+    mark(closeMark);
+    closed = true;
+  }
+
+  /* Hand off what we have followed by the marker then wait for the
+     drainer to reach it.
+   */
+  private void mark(final StringBuilder marker) {
+    try {
+      if (buf.length() > 0) {
+        handOff();
+        buf = free.take();
+      }
+
+      filled.put(marker);
+      flushed.acquire();
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    }
+
+    if (drainException != null) {
+      throw new RuntimeException(drainException);
+    }
+  }
+
+  private void handOff() {
+    try {
+      filled.put(buf);
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    }
+  }
+
+  /* Runs on the drainer thread. After a write error the output is
+     discarded - the error is reported by the next flush or close.
+   */
+  private void drain() {
+    char[] chars = new char[bufferSize + 1024];
+
+    try {
+      while (true) {
+        final StringBuilder b = filled.take();
+
+        if ((b == flushMark) || (b == closeMark)) {
+          try {
+            if (drainException == null) {
+              writer.flush();
+            }
+
+            if ((b == closeMark) && closeWriter) {
+              writer.close();
+            }
+          } catch (final IOException ioe) {
+            drainException = ioe;
+          }
+
+          flushed.release();
+
+          if (b == closeMark) {
+            return;
+          }
+
+          continue;
+        }
+
+        final int len = b.length();
+        if (chars.length < len) {
+          chars = new char[len];
+        }
+
+        b.getChars(0, len, chars, 0);
+        b.setLength(0);
+        free.put(b);
+
+        if (drainException != null) {
+          continue;
+        }
+
+        try {
+          writer.write(chars, 0, len);
+        } catch (final IOException ioe) {
+          drainException = ioe;
+        }
+      }
+    } catch (final InterruptedException ignored) {
+      // Exit
+    }
+  }
+}
@@ -6,6 +6,10 @@ package org.bedework.bwlogs;
 import org.bedework.bwlogs.DisplaySessions.DisplayMode;
 import org.bedework.util.args.Args;
 
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+
 import static org.bedework.bwlogs.DisplaySessions.DisplayMode.full;
 import static org.bedework.bwlogs.DisplaySessions.DisplayMode.list;
 import static org.bedework.bwlogs.DisplaySessions.DisplayMode.summary;
@@ -34,6 +38,23 @@ public class BwLogs {
     DisplayMode displayMode = full;
     boolean logShowLong = false;
     boolean logShowMissingTaskIds = false;
+    boolean parallel = false;
+    boolean exactIps = true;
+    AccessPatterns accessPatterns = null;
+    SkipLists skipLists = SkipLists.defaults();
+    long entryBudget = EntryBuffer.defaultBudget;
+    int placeholderIdle = DisplaySessions.defaultPlaceholderIdle;
+    boolean useIndex = true;
+    int seekMargin = DisplaySessions.defaultSeekMargin;
+    int followInterval = 300;
+    int histogramBits = LatencyHistogram.defaultBits;
+    int endpointBudget = LogReader.defaultEndpointBudget;
+    int ipBudget = LogReader.defaultIpBudget;
+    String followState = null;
+    Long queryFrom = null;
+    Long queryTo = null;
+    final Map<RequestColumn, String> where =
+            new EnumMap<>(RequestColumn.class);
 
     try {
       final Args pargs = new Args(args);
@@ -49,28 +70,160 @@ public class BwLogs {
           continue;
         }
 
+        if (pargs.ifMatch("out")) {
+          Output.set(AsyncOutput.file(Paths.get(pargs.next())));
+          continue;
+        }
+
+        if (pargs.ifMatch("format")) {
+          Output.setFormat(RecordWriter.Format.valueOf(pargs.next()));
+          continue;
+        }
+
         if (pargs.ifMatch("logsummarisetests")) {
           new SummariseTests().process(pargs.next(), logShowLong,
                                        logShowMissingTaskIds);
           return;  // Always 1 shot
         }
 
+        if (pargs.ifMatch("logreadtiming")) {
+          new ReadTiming().process(pargs.next());
+          return;  // Always 1 shot
+        }
+
         if (pargs.ifMatch("loganalyse")) {
-          new LogAnalysis().process(pargs.next(), logShowLong,
-                                    logShowMissingTaskIds);
+          newAnalysis(histogramBits, endpointBudget, ipBudget)
+                  .process(pargs.next(),
+                           logShowLong,
+                           logShowMissingTaskIds);
+          return;  // Always 1 shot
+        }
+
+        if (pargs.ifMatch("histogramBits")) {
+          histogramBits = Integer.parseInt(pargs.next());
+          continue;
+        }
+
+        if (pargs.ifMatch("endpointBudget")) {
+          endpointBudget = Integer.parseInt(pargs.next());
+          continue;
+        }
+
+        if (pargs.ifMatch("ipBudget")) {
+          ipBudget = Integer.parseInt(pargs.next());
+          continue;
+        }
+
+        if (pargs.ifMatch("followInterval")) {
+          followInterval = Integer.parseInt(pargs.next());
+          continue;
+        }
+
+        if (pargs.ifMatch("followState")) {
+          followState = pargs.next();
+          continue;
+        }
+
+        if (pargs.ifMatch("logfollow")) {
+          final int bits = histogramBits;
+          final int epBudget = endpointBudget;
+          final int ipsBudget = ipBudget;
+          new LogFollower(pargs.next(), followInterval, followState,
+                          () -> newAnalysis(bits, epBudget, ipsBudget),
+                          logShowLong, logShowMissingTaskIds).follow();
+          return;  // Always 1 shot
+        }
+
+        if (pargs.ifMatch("export")) {
+          final var exportPath = Paths.get(pargs.next());
+          new ExportRequests(exportPath).process(pargs.next(),
+                                                 logShowLong,
+                                                 logShowMissingTaskIds);
+          return;  // Always 1 shot
+        }
+
+        if (pargs.ifMatch("from")) {
+          queryFrom = QueryRequests.parseTime(pargs.next());
+          continue;
+        }
+
+        if (pargs.ifMatch("to")) {
+          queryTo = QueryRequests.parseTime(pargs.next());
+          continue;
+        }
+
+        if (pargs.ifMatch("where")) {
+          final var cond = pargs.next();
+          final int pos = cond.indexOf('=');
+          if (pos < 0) {
+            usage("Expected <column>=<value>: " + cond);
+            return;
+          }
+
+          where.put(RequestColumn.valueOf(cond.substring(0, pos)),
+                    cond.substring(pos + 1));
+          continue;
+        }
+
+        if (pargs.ifMatch("query")) {
+          final var qr = new QueryRequests(histogramBits);
+          if (queryFrom != null) {
+            qr.setFrom(queryFrom);
+          }
+          if (queryTo != null) {
+            qr.setTo(queryTo);
+          }
+          where.forEach(qr::where);
+
+          qr.query(Paths.get(pargs.next()));
+          return;  // Always 1 shot
+        }
+
+        if (pargs.ifMatch("skipLists")) {
+          skipLists = SkipLists.load(Paths.get(pargs.next()));
+          continue;
+        }
+
+        if (pargs.ifMatch("entryBudget")) {
+          entryBudget = Long.parseLong(pargs.next()) * 1024;
+          continue;
+        }
+
+        if (pargs.ifMatch("placeholderIdle")) {
+          placeholderIdle = Integer.parseInt(pargs.next());
+          continue;
+        }
+
+        if (pargs.ifMatch("noIndex")) {
+          useIndex = false;
+          continue;
+        }
+
+        if (pargs.ifMatch("seekMargin")) {
+          seekMargin = Integer.parseInt(pargs.next());
+          continue;
+        }
+
+        if (pargs.ifMatch("index")) {
+          new SessionIndexer().process(pargs.next(), false, false);
           return;  // Always 1 shot
         }
 
         if (pargs.ifMatch("sessions")) {
-          new DisplaySessions(taskId,
-                              sessionId,
-                              sessionUser,
-                              requestDt,
-                              skipAnon,
-                              displayTotals,
-                              displayMode).
-                  process(pargs.next(), logShowLong,
-                          logShowMissingTaskIds);
+          final var ds = new DisplaySessions(taskId,
+                                             sessionId,
+                                             sessionUser,
+                                             requestDt,
+                                             skipAnon,
+                                             displayTotals,
+                                             displayMode,
+                                             skipLists);
+          ds.setEntryBudget(entryBudget);
+          ds.setPlaceholderIdle(placeholderIdle);
+          ds.setUseIndex(useIndex);
+          ds.setSeekMargin(seekMargin);
+          ds.process(pargs.next(), logShowLong,
+                     logShowMissingTaskIds);
           return;  // Always 1 shot
         }
 
@@ -119,8 +272,28 @@ public class BwLogs {
           continue;
         }
 
+        if (pargs.ifMatch("parallel")) {
+          parallel = true;
+          continue;
+        }
+
+        if (pargs.ifMatch("noIpCounts")) {
+          exactIps = false;
+          continue;
+        }
+
+        if (pargs.ifMatch("accessPatterns")) {
+          accessPatterns = AccessPatterns.load(Paths.get(pargs.next()));
+          continue;
+        }
+
         if (pargs.ifMatch("access")) {
-          new AccessLogs().analyze(pargs.next());
+          if (accessPatterns == null) {
+            accessPatterns = AccessPatterns.defaults();
+          }
+
+          new AccessLogs(parallel, exactIps, accessPatterns)
+                  .analyze(pargs.next());
           return;  // Always 1 shot
         }
 
@@ -130,10 +303,24 @@ public class BwLogs {
       }
     } catch (final Throwable t) {
       t.printStackTrace();
+    } finally {
+      Output.get().close();
     }
   }
 
+  private static LogAnalysis newAnalysis(final int histogramBits,
+                                         final int endpointBudget,
+                                         final int ipBudget) {
+    final var la = new LogAnalysis(histogramBits);
+    la.setEndpointBudget(endpointBudget);
+    la.setIpBudget(ipBudget);
+
+    return la;
+  }
+
   private static void usage(final String msg) {
+    Output.flush();
+
     if (msg != null) {
       System.err.println();
       System.err.println(msg);
@@ -142,8 +329,48 @@ public class BwLogs {
     System.err.println();
     System.err.println("Optional arguments:");
     System.err.println("   access             Analyze access log");
+    System.err.println("   parallel           Process access log in parallel chunks");
+    System.err.println("   noIpCounts         Only estimate distinct ips for" +
+                       "                      access - saves memory");
+    System.err.println("   accessPatterns <path>  Patterns to classify" +
+                       "                      feeder and webcache requests");
+    System.err.println("   skipLists <path>   Prefixes of lines to leave out" +
+                       "                      of sessions");
+    System.err.println("   entryBudget <kb>   Memory for each request's entries" +
+                       "                      in sessions. Default 1024");
+    System.err.println("   placeholderIdle <secs> Drop entries for a task" +
+                       "                      with no REQUEST after this" +
+                       "                      long idle. Default 600");
+    System.err.println("   index <path>       Index the log so sessions with" +
+                       "                      filters reads only what it needs");
+    System.err.println("   noIndex            Read the whole log in sessions" +
+                       "                      even if it's indexed or there" +
+                       "                      is a requestDt");
+    System.err.println("   seekMargin <secs>  Longest request expected when" +
+                       "                      sessions seeks to requestDt." +
+                       "                      Default 600");
+    System.err.println("   out <path>         Write the output to a file");
+    System.err.println("   format text|json|csv  Write tables for people" +
+                       "                      or records for programs");
     System.err.println("   logshowlong        To enable display of long requests" +
                        "                      in loganalyse");
+    System.err.println("   logreadtiming <path> Compare speed of log readers");
+    System.err.println("   histogramBits <n>  Precision of request time" +
+                       "                      percentiles. Default 7");
+    System.err.println("   endpointBudget <n> Number of endpoints to track" +
+                       "                      in loganalyse. Default 200");
+    System.err.println("   ipBudget <n>       Number of ips to count" +
+                       "                      in loganalyse. Default 10000");
+    System.err.println("   [followInterval <secs>] [followState <path>]" +
+                       "                      logfollow <path>" +
+                       "                      Follow the log displaying an" +
+                       "                      analysis for each interval");
+    System.err.println("   export <colpath> <path> Write the requests in the" +
+                       "                      log to a column file");
+    System.err.println("   [from <time>] [to <time>] [where <column>=<value>]..." +
+                       "                      query <colpath>" +
+                       "                      Request times by context from" +
+                       "                      a column file");
     System.err.println("   [logsummarisetests] loganalyse <path>  " +
                        "                      Calculate and display information" +
                        "                      from referenced log file. If" +
@@ -0,0 +1,114 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Remembers how recent request paths were classified - the index
+ * of the pattern they matched or -1 - so a path seen again needs
+ * only a lookup. Most of the traffic is a few widget urls so even a
+ * small cache gets most requests.
+ *
+ * <p>The least recently used path is dropped when the cache is full.
+ */
+public class ClassifyCache {
+  public static final int defaultMaxSize = 4096;
+
+  /** Returned by get for a path not in the cache */
+  public static final int notCached = Integer.MIN_VALUE;
+
+  private final Map<String, Integer> cache;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public ClassifyCache() {
+    this(defaultMaxSize);
+  }
+
+  /**
+   * @param maxSize maximum number of paths
+   */
+  public ClassifyCache(final int maxSize) {
+    cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+              final Map.Entry<String, Integer> eldest) {
+        if (size() <= maxSize) {
+          return false;
+        }
+
+        evictions++;
+        return true;
+      }
+    };
+  }
+
+  /**
+   * @param path raw path of the request
+   * @return result put for path or notCached
+   */
+  public int get(final String path) {
+    final Integer res = cache.get(path);
+
+    if (res == null) {
+      misses++;
+      return notCached;
+    }
+
+    hits++;
+    return res;
+  }
+
+  /**
+   * @param path raw path of the request
+   * @param res how it was classified
+   */
+  public void put(final String path,
+                  final int res) {
+    cache.put(path, res);
+  }
+
+  /** Add the statistics from another cache - usually one used for a
+   * different part of the log.
+   *
+   * @param cc to add
+   */
+  public void add(final ClassifyCache cc) {
+    hits += cc.hits;
+    misses += cc.misses;
+    evictions += cc.evictions;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return e.g. "1234 hits (98.6%), 17 misses, 0 evictions"
+   */
+  public String statistics() {
+    final long total = hits + misses;
+    final double pct;
+
+    if (total == 0) {
+      pct = 0;
+    } else {
+      pct = 100.0 * hits / total;
+    }
+
+    return String.format("%d hits (%.1f%%), %d misses, %d evictions",
+                         hits, pct, misses, evictions);
+  }
+}
@@ -0,0 +1,262 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.bedework.bwlogs.ColumnFileWriter.Block;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.bedework.bwlogs.ColumnFileWriter.columns;
+import static org.bedework.bwlogs.ColumnFileWriter.magic;
+import static org.bedework.bwlogs.ColumnFileWriter.version;
+
+/** Reads a file written by ColumnFileWriter. Only the index and
+ * dictionaries are read when it's opened - a column of a block is
+ * read when it's asked for. Use the minimum and maximum for a column
+ * in a block to decide whether it's worth reading.
+ */
+public class ColumnFileReader implements AutoCloseable {
+  private final FileChannel channel;
+
+  private final long numRows;
+  private final String[][] dictionaries = new String[columns.length][];
+
+  // Built on first lookup
+  private final SymbolTable[] lookups = new SymbolTable[columns.length];
+
+  private final List<Block> blocks = new ArrayList<>();
+
+  private ByteBuffer buf = ByteBuffer.allocate(8192);
+
+  /**
+   * @param path of file
+   * @throws IOException on read error or if it's not a column file
+   */
+  public ColumnFileReader(final Path path) throws IOException {
+    channel = FileChannel.open(path, READ);
+
+    try {
+      final long size = channel.size();
+
+      read(0, 8);
+      if ((buf.getInt() != magic) || (buf.getInt() != version)) {
+        throw new IOException("Not a request column file: " + path);
+      }
+
+      read(size - 12, 12);
+      final long footerOffset = buf.getLong();
+      if (buf.getInt() != magic) {
+        throw new IOException("Incomplete request column file: " + path);
+      }
+
+      read(footerOffset, (int)(size - 12 - footerOffset));
+
+      if (buf.getInt() != columns.length) {
+        throw new IOException("Wrong number of columns in " + path);
+      }
+
+      numRows = buf.getLong();
+
+      for (int c = 0; c < columns.length; c++) {
+        final String[] names = new String[buf.getInt() + 1];
+
+        for (int id = 1; id < names.length; id++) {
+          final int len = buf.getInt();
+          names[id] = new String(buf.array(), buf.position(), len,
+                                 StandardCharsets.UTF_8);
+          buf.position(buf.position() + len);
+        }
+
+        dictionaries[c] = names;
+      }
+
+      final int numBlocks = buf.getInt();
+
+      for (int i = 0; i < numBlocks; i++) {
+        final var b = new Block(buf.getInt());
+
+        for (int c = 0; c < columns.length; c++) {
+          b.offsets[c] = buf.getLong();
+          b.widths[c] = buf.get();
+          b.mins[c] = buf.getLong();
+          b.maxs[c] = buf.getLong();
+        }
+
+        blocks.add(b);
+      }
+    } catch (final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public long getNumRows() {
+    return numRows;
+  }
+
+  public int getNumBlocks() {
+    return blocks.size();
+  }
+
+  /**
+   * @param block index
+   * @return rows in the block
+   */
+  public int getRows(final int block) {
+    return blocks.get(block).rows;
+  }
+
+  /**
+   * @param block index
+   * @param col column
+   * @return smallest value of the column in the block
+   */
+  public long getMin(final int block,
+                     final RequestColumn col) {
+    return blocks.get(block).mins[col.ordinal()];
+  }
+
+  /**
+   * @param block index
+   * @param col column
+   * @return largest value of the column in the block
+   */
+  public long getMax(final int block,
+                     final RequestColumn col) {
+    return blocks.get(block).maxs[col.ordinal()];
+  }
+
+  /**
+   * @param block index
+   * @param col column
+   * @param val array to reuse - may be null
+   * @return the values of the column in the block - at the start of
+   *         val if it was big enough
+   * @throws IOException on read error
+   */
+  public long[] read(final int block,
+                     final RequestColumn col,
+                     final long[] val) throws IOException {
+    final var b = blocks.get(block);
+    final int c = col.ordinal();
+    final int rows = b.rows;
+    final long min = b.mins[c];
+
+    long[] res = val;
+    if ((res == null) || (res.length < rows)) {
+      res = new long[rows];
+    }
+
+    final int width = b.widths[c];
+
+    if (width == 0) {
+      Arrays.fill(res, 0, rows, min);
+      return res;
+    }
+
+    read(b.offsets[c], rows * width);
+
+    switch (width) {
+      case 1:
+        for (int i = 0; i < rows; i++) {
+          res[i] = min + (buf.get() & 0xffL);
+        }
+        break;
+      case 2:
+        for (int i = 0; i < rows; i++) {
+          res[i] = min + (buf.getShort() & 0xffffL);
+        }
+        break;
+      case 4:
+        for (int i = 0; i < rows; i++) {
+          res[i] = min + (buf.getInt() & 0xffffffffL);
+        }
+        break;
+      default:
+        for (int i = 0; i < rows; i++) {
+          res[i] = min + buf.getLong();
+        }
+    }
+
+    return res;
+  }
+
+  /**
+   * @param col a string column
+   * @param id a value of the column
+   * @return the string - null for none
+   */
+  public String name(final RequestColumn col,
+                     final long id) {
+    return dictionaries[col.ordinal()][(int)id];
+  }
+
+  /**
+   * @param col a string column
+   * @return number of distinct values - ids are 1 to this
+   */
+  public int getDictionarySize(final RequestColumn col) {
+    return dictionaries[col.ordinal()].length - 1;
+  }
+
+  /**
+   * @param col a string column
+   * @param name to look for
+   * @return its id or SymbolTable.none if it's not in the file
+   */
+  public int lookup(final RequestColumn col,
+                    final String name) {
+    final int c = col.ordinal();
+
+    if (lookups[c] == null) {
+      // Interned in the same order so the ids match
+      final var st = new SymbolTable();
+      final var names = dictionaries[c];
+
+      for (int id = 1; id < names.length; id++) {
+        st.intern(names[id]);
+      }
+
+      lookups[c] = st;
+    }
+
+    return lookups[c].lookup(name);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /* Read len bytes at offset into buf ready to get them
+   */
+  private void read(final long offset,
+                    final int len) throws IOException {
+    if (buf.capacity() < len) {
+      buf = ByteBuffer.allocate(len);
+    }
+
+    buf.clear();
+    buf.limit(len);
+
+    long pos = offset;
+    while (buf.hasRemaining()) {
+      final int n = channel.read(buf, pos);
+      if (n < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      pos += n;
+    }
+
+    buf.flip();
+  }
+}
@@ -0,0 +1,306 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** Writes requests to a file column by column so a query need only
+ * read the columns it uses - see ColumnFileReader.
+ *
+ * <p>Rows are written in blocks. Within a block each column is stored
+ * as the difference from the smallest value in the block, in 0 (all
+ * the same), 1, 2, 4 or 8 bytes - whatever the largest needs. The
+ * smallest and largest values of each column in each block are kept
+ * in the index so blocks can be skipped without reading them. String
+ * columns are ids in a dictionary for the column.
+ *
+ * <p>The file is<pre>
+ *   magic, version
+ *   the column data for each block
+ *   footer: number of columns, number of rows,
+ *           the dictionary for each column - count then strings,
+ *           number of blocks then for each: rows and for each
+ *           column: offset, width, min, max
+ *   offset of footer, magic
+ * </pre>
+ * All numbers are big-endian. A string is its length and UTF-8 bytes.
+ */
+public class ColumnFileWriter implements AutoCloseable {
+  static final int magic = 0x42575243; // BWRC
+  static final int version = 1;
+
+  public static final int defaultBlockRows = 16 * 1024;
+
+  static final RequestColumn[] columns = RequestColumn.values();
+
+  /** Where a block is and what is in it */
+  static class Block {
+    final int rows;
+    final long[] offsets = new long[columns.length];
+    final byte[] widths = new byte[columns.length];
+    final long[] mins = new long[columns.length];
+    final long[] maxs = new long[columns.length];
+
+    Block(final int rows) {
+      this.rows = rows;
+    }
+  }
+
+  private final FileChannel channel;
+  private final int blockRows;
+
+  private final SymbolTable[] dictionaries =
+          new SymbolTable[columns.length];
+
+  // Values of the block being built for each column
+  private final long[][] values;
+  private int rows;
+
+  private long numRows;
+  private long size;
+
+  private final List<Block> blocks = new ArrayList<>();
+
+  private final ByteBuffer buf;
+
+  /**
+   * @param path of file to create or replace
+   * @throws IOException on open error
+   */
+  public ColumnFileWriter(final Path path) throws IOException {
+    this(path, defaultBlockRows);
+  }
+
+  /**
+   * @param path of file to create or replace
+   * @param blockRows number of rows in each block
+   * @throws IOException on open error
+   */
+  public ColumnFileWriter(final Path path,
+                          final int blockRows) throws IOException {
+    this.blockRows = blockRows;
+
+    for (final var col: columns) {
+      if (col.isDictionary()) {
+        dictionaries[col.ordinal()] = new SymbolTable();
+      }
+    }
+
+    values = new long[columns.length][blockRows];
+    buf = ByteBuffer.allocate(blockRows * 8);
+
+    channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE);
+
+    buf.putInt(magic);
+    buf.putInt(version);
+    write();
+  }
+
+  /**
+   * @param col a numeric column
+   * @param val its value in the current row
+   */
+  public void set(final RequestColumn col,
+                  final long val) {
+    if (col.isDictionary()) {
+      throw new IllegalArgumentException(col + " is not numeric");
+    }
+
+    values[col.ordinal()][rows] = val;
+  }
+
+  /**
+   * @param col a string column
+   * @param val its value in the current row - may be null
+   */
+  public void set(final RequestColumn col,
+                  final String val) {
+    final var dict = dictionaries[col.ordinal()];
+
+    if (dict == null) {
+      throw new IllegalArgumentException(col + " is not a string");
+    }
+
+    values[col.ordinal()][rows] = dict.intern(val);
+  }
+
+  /** Columns not set in the row are 0 - no value for a string.
+   *
+   * @throws IOException on write error
+   */
+  public void endRow() throws IOException {
+    rows++;
+    numRows++;
+
+    if (rows == blockRows) {
+      writeBlock();
+    }
+  }
+
+  public long getNumRows() {
+    return numRows;
+  }
+
+  public int getNumBlocks() {
+    return blocks.size();
+  }
+
+  /**
+   * @return bytes written so far
+   */
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (rows > 0) {
+      writeBlock();
+    }
+
+    final long footerOffset = size;
+
+    // Closing the stream closes the channel
+    try (final var out = new DataOutputStream(new BufferedOutputStream(
+            Channels.newOutputStream(channel)))) {
+      out.writeInt(columns.length);
+      out.writeLong(numRows);
+
+      for (final var dict: dictionaries) {
+        if (dict == null) {
+          out.writeInt(0);
+          continue;
+        }
+
+        out.writeInt(dict.size());
+
+        for (int id = 1; id <= dict.size(); id++) {
+          final byte[] bytes =
+                  dict.name(id).getBytes(StandardCharsets.UTF_8);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+      }
+
+      out.writeInt(blocks.size());
+
+      for (final var b: blocks) {
+        out.writeInt(b.rows);
+
+        for (int c = 0; c < columns.length; c++) {
+          out.writeLong(b.offsets[c]);
+          out.writeByte(b.widths[c]);
+          out.writeLong(b.mins[c]);
+          out.writeLong(b.maxs[c]);
+        }
+      }
+
+      out.writeLong(footerOffset);
+      out.writeInt(magic);
+      size += out.size();
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    final var b = new Block(rows);
+
+    for (int c = 0; c < columns.length; c++) {
+      final long[] vals = values[c];
+      long min = vals[0];
+      long max = vals[0];
+
+      for (int i = 1; i < rows; i++) {
+        min = Math.min(min, vals[i]);
+        max = Math.max(max, vals[i]);
+      }
+
+      // max - min may overflow but is right taken as unsigned
+      final int width = width(max - min);
+
+      b.offsets[c] = size;
+      b.widths[c] = (byte)width;
+      b.mins[c] = min;
+      b.maxs[c] = max;
+
+      switch (width) {
+        case 1:
+          for (int i = 0; i < rows; i++) {
+            buf.put((byte)(vals[i] - min));
+          }
+          break;
+        case 2:
+          for (int i = 0; i < rows; i++) {
+            buf.putShort((short)(vals[i] - min));
+          }
+          break;
+        case 4:
+          for (int i = 0; i < rows; i++) {
+            buf.putInt((int)(vals[i] - min));
+          }
+          break;
+        case 8:
+          for (int i = 0; i < rows; i++) {
+            buf.putLong(vals[i] - min);
+          }
+          break;
+        default:
+          // All the same - nothing to write
+      }
+
+      write();
+      Arrays.fill(vals, 0, rows, 0);
+    }
+
+    blocks.add(b);
+    rows = 0;
+  }
+
+  private void write() throws IOException {
+    buf.flip();
+
+    while (buf.hasRemaining()) {
+      size += channel.write(buf);
+    }
+
+    buf.clear();
+  }
+
+  /**
+   * @param range unsigned
+   * @return bytes needed for it
+   */
+  static int width(final long range) {
+    if (range == 0) {
+      return 0;
+    }
+
+    if (Long.compareUnsigned(range, 0xffL) <= 0) {
+      return 1;
+    }
+
+    if (Long.compareUnsigned(range, 0xffffL) <= 0) {
+      return 2;
+    }
+
+    if (Long.compareUnsigned(range, 0xffffffffL) <= 0) {
+      return 4;
+    }
+
+    return 8;
+  }
+}
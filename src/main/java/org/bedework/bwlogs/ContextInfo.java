@@ -3,8 +3,6 @@
 */
 package org.bedework.bwlogs;
 
-import java.util.Map;
-
 /**
  * User: mike Date: 10/23/22 Time: 01:16
  */
@@ -22,54 +20,79 @@ public class ContextInfo {
 
   long[] buckets = new long[numMilliBuckets];
 
+  // For the percentiles
+  final LatencyHistogram histogram;
+
   // How often we see ";jsessionid" in the incoming request
   long sessions;
   public long rTotalReq;
 
-  final Map<String, Integer> longreqIpMap;
+  public ContextInfo(final String context) {
+    this(context, LatencyHistogram.defaultBits);
+  }
 
+  /**
+   * @param context name of context
+   * @param histogramBits precision of the histogram
+   */
   public ContextInfo(final String context,
-                     final Map<String, Integer> longreqIpMap) {
+                     final int histogramBits) {
     this.context = context;
-    this.longreqIpMap = longreqIpMap;
+    histogram = new LatencyHistogram(histogramBits);
   }
 
-  public void reqOut(final String ln,
-                     final ReqInOutLogEntry rs,
-                     final long millis,
-                     final boolean showLong) {
+  /** Record a completed request
+   *
+   * @param millis time taken
+   * @return true if it went in the highest bucket - a long request
+   */
+  public boolean reqOut(final long millis) {
     requests++;
     totalMillis += millis;
+    histogram.record(millis);
 
-    int bucket = (int)(millis / milliBucketSize);
+    // Negative if the clock was put back while the request ran
+    final int bucket = (int)(Math.max(millis, 0) / milliBucketSize);
 
     if (bucket >= (numMilliBuckets - 1)) {
-      bucket = numMilliBuckets - 1;
-      if (showLong) {
-        final String dt = ln.substring(0, ln.indexOf(" INFO"));
-
-        outFmt("Long request %s %s %d: %s - %s %s",
-               rs.ip, rs.taskId, millis, rs.dt, dt, rs.request);
-      }
-
-      int ct = longreqIpMap.computeIfAbsent(rs.ip, k -> 0);
-
-      ct = ct + 1;
-      longreqIpMap.put(rs.ip, ct);
+      buckets[numMilliBuckets - 1]++;
+      return true;
     }
 
     buckets[bucket]++;
+    subTrequests++;
+    subTtotalMillis += millis;
 
-    if (bucket < (numMilliBuckets - 1)) {
-      subTrequests++;
-      subTtotalMillis += millis;
+    return false;
+  }
+
+  /** Add the figures for the same context from another part of the
+   * log.
+   *
+   * @param ci to add
+   */
+  public void add(final ContextInfo ci) {
+    requests += ci.requests;
+    totalMillis += ci.totalMillis;
+    subTrequests += ci.subTrequests;
+    subTtotalMillis += ci.subTtotalMillis;
+    sessions += ci.sessions;
+
+    for (int i = 0; i < numMilliBuckets; i++) {
+      buckets[i] += ci.buckets[i];
     }
+
+    histogram.add(ci.histogram);
   }
 
   public long getBucket(final int i) {
     return buckets[i];
   }
 
+  public LatencyHistogram getHistogram() {
+    return histogram;
+  }
+
   public long getRequests() {
     return requests;
   }
@@ -89,9 +112,4 @@ public class ContextInfo {
   public long getSubTtotalMillis() {
     return subTtotalMillis;
   }
-
-  protected void outFmt(final String format,
-                        final Object... args) {
-    System.out.println(String.format(format, args));
-  }
 }
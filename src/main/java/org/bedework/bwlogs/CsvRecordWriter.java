@@ -0,0 +1,63 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Writes each record as a line of comma separated values - RFC 4180
+ * quoting - starting with the name of the record type. The header for
+ * a type is written by Output before the first record of the type.
+ *
+ * <p>A null is written as an empty field.
+ */
+public class CsvRecordWriter extends RecordWriter {
+  @Override
+  protected void begin() {
+    sb.append(type.getName());
+  }
+
+  @Override
+  protected void separator(final int i) {
+    sb.append(',');
+  }
+
+  @Override
+  protected void string(final CharSequence val) {
+    final int len = val.length();
+    boolean quote = false;
+
+    for (int i = 0; i < len; i++) {
+      final char c = val.charAt(i);
+
+      if ((c == ',') || (c == '"') || (c == '\n') || (c == '\r')) {
+        quote = true;
+        break;
+      }
+    }
+
+    if (!quote) {
+      sb.append(val);
+      return;
+    }
+
+    sb.append('"');
+
+    for (int i = 0; i < len; i++) {
+      final char c = val.charAt(i);
+
+      if (c == '"') {
+        sb.append('"');
+      }
+      sb.append(c);
+    }
+
+    sb.append('"');
+  }
+
+  @Override
+  protected void nullValue() {
+  }
+
+  @Override
+  protected void finish() {
+  }
+}
@@ -24,99 +24,47 @@ public class DisplaySessions extends LogAnalysis {
 
   private ReqInOutLogEntry lastMapRs;
 
-  private final java.util.List<String> skipClasses =
-          java.util.Arrays.asList("org.apache.struts2",
-                                  "org.bedework.timezones.server.",
-                                  "org.bedework.util.servlet.HttpServletUtils");
+  private final SkipLists skipLists;
+
+  // Records for json and csv output
+
+  static final RecordType requestRecord =
+          RecordType.of("request", "start", "end", "millis", "taskId",
+                        "sessid", "user", "calsuite", "className",
+                        "uri", "exitTo", "noRequestIn", "error");
+
+  // Sub-entries - e.g. request parameters - have level 1
+  static final RecordType entryRecord =
+          RecordType.of("entry", "start", "taskId", "level", "text");
+
+  static final RecordType eventRecord =
+          RecordType.of("event", "start", "taskId", "event");
+
+  static final RecordType sessionTotalsRecord =
+          RecordType.of("sessionTotals", "placeholdersDropped",
+                        "entriesSpilled", "spillBytes");
 
   private final java.util.List<String> skipUnparsed = java.util.Arrays.asList(
           "A soft-locked cache entry");
 
-  private final java.util.List<String> skipContent = java.util.Arrays.asList(
-          "A soft-locked cache entry was expired",
-          "About to claim module default",
-          "About to clone: ",
-          "About to embed ",
-          "About to flush",
-          "About to get state",
-          "About to prepare render",
-          "actionType:",
-          "After embed ",
-          "Client interface -- Found in session",
-          "Cloned: ",
-          "Close for ",
-          "contentlen=",
-          "conversation: ",
-          "current change token: ",
-          "entry",
-          " For col /",
-          "Found form in session",
-          "Get Calendar home for ",
-          "getCb(): from session-- set req in cb",
-          "getState-- obtainedfrom session",
-          "getState-- timeout interval",
-          "getUserEntry for ",
-          "getUserPrincipal.name",
-          "getWriter called",
-          "host=",
-          "HttpUtils.getRequestURL(req) = ",
-          "java.sql.Connection#beginRequest has been invoked",
-          "java.sql.Connection#endRequest has been invoked",
-          "No active synch connection",
-          "No form in session",
-          "Normalized uri=",
-          "Obtained state",
-          "out Obtained BwCallback object",
-          "parameters:",
-          "request=org.apache.struts2",
-          "Request out for module ",
-          "Request parameters - global info and uris",
-          "query=b=de",
-          "query=null",
-          "Set presentation state",
-          "setAutoCommit",
-          "Setting locale to ",
-          "The size was",
-          "vpath collection",
-          "XSLTFilter: Converting",
-          "==============");
-
-  private final java.util.List<String> skipForSummary = java.util.Arrays.asList(
-          "checkSvci",
-          "About to claim",
-          "Begin transaction for ",
-          "ChangeTable",
-          "Check access for ",
-          "Client interface --",
-          "close Obtained BwCallback object",
-          "current change token",
-          "Date=",
-          "Emitted:",
-          "end ChangeTable",
-          "End transaction for",
-          "Event duration=",
-          "Fetch collection with",
-          "fetchChildren for",
-          "fetchEntities: ",
-          "flush for ",
-          "Get Calendar home for",
-          "Get event ",
-          "getState--",
-          "getUserEntry for",
-          "handleException called",
-          "Indexing to index",
-          "IndexResponse:",
-          "New hibernate session",
-          "No access",
-          "No messages emitted",
-          "Not found",
-          "offset:",
-          "Open session for",
-          "Return ok - access ok",
-          "Search:",
-          "Set event with location",
-          "The size was"
-  );
+  public static final int defaultPlaceholderIdle = 600;
+
+  public static final int defaultSeekMargin = 600;
+
+  // Entries over a request's budget go here
+  private final SpillFile spill = new SpillFile();
+  private long entryBudget = EntryBuffer.defaultBudget;
+
+  // Placeholders with no lines for this long are dropped
+  private long placeholderIdleMillis = defaultPlaceholderIdle * 1000L;
+  private long nextIdleCheck;
+  private int placeholdersEvicted;
+
+  /* Read only the requests we want if the log has a SessionIndex or
+     only the lines around requestDt if not
+   */
+  private boolean useIndex = true;
+  private long seekMarginMillis = defaultSeekMargin * 1000L;
 
   public DisplaySessions(final String taskId,
                          final String sessionId,
@@ -125,6 +73,21 @@ public class DisplaySessions extends LogAnalysis {
                          final boolean skipAnon,
                          final boolean displayTotals,
                          final org.bedework.bwlogs.DisplaySessions.DisplayMode displayMode) {
+    this(taskId, sessionId, user, requestDt, skipAnon, displayTotals,
+         displayMode, SkipLists.defaults());
+  }
+
+  /**
+   * @param skipLists prefixes of lines to leave out
+   */
+  public DisplaySessions(final String taskId,
+                         final String sessionId,
+                         final String user,
+                         final String requestDt,
+                         final boolean skipAnon,
+                         final boolean displayTotals,
+                         final org.bedework.bwlogs.DisplaySessions.DisplayMode displayMode,
+                         final SkipLists skipLists) {
     this.taskId = taskId;
     this.sessionId = sessionId;
     this.user = user;
@@ -132,15 +95,86 @@ public class DisplaySessions extends LogAnalysis {
     this.skipAnon = skipAnon;
     this.displayTotals = displayTotals;
     this.displayMode = displayMode;
+    this.skipLists = skipLists;
+  }
+
+  /**
+   * @param val approximate bytes of log entries held in memory for
+   *            each request. More are written to a temporary file.
+   */
+  public void setEntryBudget(final long val) {
+    entryBudget = val;
+  }
+
+  /**
+   * @param secs drop a placeholder for a task with no REQUEST after
+   *             this many seconds, in log time, with no lines. 0 to
+   *             keep them.
+   */
+  public void setPlaceholderIdle(final int secs) {
+    placeholderIdleMillis = secs * 1000L;
+  }
+
+  /**
+   * @param val false to read the whole log even if it has an index
+   *            or there is a requestDt
+   */
+  public void setUseIndex(final boolean val) {
+    useIndex = val;
+  }
+
+  /**
+   * @param secs with a requestDt and no index read from this long
+   *             before the first matching time to this long after the
+   *             last - the longest request expected
+   */
+  public void setSeekMargin(final int secs) {
+    seekMarginMillis = secs * 1000L;
+  }
+
+  @Override
+  protected boolean wantsRecords() {
+    return true;
+  }
+
+  @Override
+  protected void processFile(final java.nio.file.Path path)
+          throws java.io.IOException {
+    if (useIndex &&
+            ((taskId != null) || (sessionId != null) ||
+                     (user != null) || (requestDt != null))) {
+      final var idx = SessionIndex.open(path);
+
+      if (idx != null) {
+        processRegions(path, idx.select(path, taskId, sessionId,
+                                        user, requestDt));
+        return;
+      }
+    }
+
+    if (useIndex && (requestDt != null) &&
+            (LineReader.compression(path) == LineReader.Compression.none)) {
+      processTimeRegion(path, requestDt, seekMarginMillis);
+      return;
+    }
+
+    super.processFile(path);
+  }
+
+  @Override
+  protected void startRegion() {
+    super.startRegion();
+    lastMapRs = null;
   }
 
-  public void processRecord(final String s) {
+  public void processRecord(final String s,
+                            final LogEntry hdr) {
     // Display various lines from the log
     // 2020-01-14 15:46:04,709 DEBUG [org.bedework.caldav.server.CaldavBWServlet] (default task-1) entry: PROPFIND
 
-    final LogEntry le = new LogEntry();
+    if (hdr == null) {
+      final LogEntry le = new LogEntry();
 
-    if(!s.startsWith("202")) {
       // Continuation line - we'll add to last request we saw -
       // This may not be correct if requests overlap
       le.unparsed(s);
@@ -160,10 +194,12 @@ public class DisplaySessions extends LogAnalysis {
             }
           }
         } else {
-          if (lastMapRs.lastAdded != null) {
-            lastMapRs.lastAdded.addLogEntry(le);
+          final var buffer = buffer(lastMapRs);
+
+          if (buffer.getLast() != null) {
+            buffer.getLast().addLogEntry(le);
           } else {
-            lastMapRs.addLogEntry(le);
+            buffer.add(le);
           }
         }
       }
@@ -171,38 +207,44 @@ public class DisplaySessions extends LogAnalysis {
       return;
     }
 
-    if (le.parse(s, null, null) == null) {
-      le.unparsed(s);
+    // Most lines are discarded - only copy the ones we keep
+    final LogEntry le = hdr;
+
+    if (le.unparsed) {
       if (lastMapRs != null) {
-        lastMapRs.addLogEntry(le);
+        buffer(lastMapRs).add(le.copy());
       }
       return;
     }
 
-    if ("ERROR".equals(le.level)) {
+    if (le.levelIs("ERROR")) {
     }
 
-    if ("ChangeNotifications".equals(le.taskId)) {
+    if (le.taskIdIs("ChangeNotifications")) {
       return;
     }
 
-    if (startMatches(le.className, skipClasses) ||
-        startMatches(le.logText, skipContent)) {
+    if (le.classNameMatches(skipLists.getClasses()) ||
+        le.logTextMatches(skipLists.getContent())) {
       return;
     }
 
-    if ((taskId != null) && !taskId.equals(le.taskId)) {
+    if ((taskId != null) && !le.taskIdIs(taskId)) {
       return;
     }
 
-    ReqInOutLogEntry mapRs = tasks.get(le.taskId);
+    evictIdle(le.millis);
+
+    ReqInOutLogEntry mapRs = tasks.get(le.getTaskSym());
 
     if (mapRs == null) {
       // No associated request - create a placeholder
       mapRs = ReqInOutLogEntry.forMissingEntry(le);
-      tasks.put(le.taskId, mapRs);
+      tasks.put(le.getTaskSym(), mapRs);
     }
 
+    buffer(mapRs).lastMillis = le.millis;
+
     mapRs.doingCalsuite = false;
     lastMapRs = mapRs;
 
@@ -215,8 +257,8 @@ public class DisplaySessions extends LogAnalysis {
     }
 
     if (requestDt != null) {
-      if ((mapRs.dt != null) &&
-            !mapRs.dt.startsWith(requestDt)){
+      if ((mapRs.getDt() != null) &&
+            !mapRs.getDt().startsWith(requestDt)){
         mapRs.skipping = true;
         return;
       }
@@ -226,11 +268,11 @@ public class DisplaySessions extends LogAnalysis {
       return;
     }
 
-    if ("ERROR".equals(le.level)) {
+    if (le.levelIs("ERROR")) {
       mapRs.hadError = true;
     }
 
-    final String lt = le.logText;
+    final String lt = le.getLogText();
 
     // ======================== Request parameters ========
     if (mapRs.doingReqPars) {
@@ -238,8 +280,10 @@ public class DisplaySessions extends LogAnalysis {
         if (lt.startsWith("  b = \"de\"")) {
           return;
         }
-        if (mapRs.lastAdded != null) {
-          mapRs.lastAdded.addLogEntry(le);
+        final var last = buffer(mapRs).getLast();
+
+        if (last != null) {
+          last.addLogEntry(le.copy());
           return;
         }
       }
@@ -280,17 +324,73 @@ public class DisplaySessions extends LogAnalysis {
       mapRs.doingCalsuite = true;
     } else if (rq.equals(lt)) {
       mapRs.doingReqPars = true;
-      mapRs.addLogEntry(le);
+      buffer(mapRs).add(le.copy());
       return;
     } else {
-      mapRs.addLogEntry(le);
+      buffer(mapRs).add(le.copy());
+    }
+  }
+
+  private EntryBuffer buffer(final ReqInOutLogEntry rs) {
+    if (rs.buffer == null) {
+      rs.buffer = new EntryBuffer(spill, entryBudget);
+    }
+
+    return rs.buffer;
+  }
+
+  /* Placeholders are never displayed but hold the entries for their
+     task until a REQUEST for the task replaces them. For a task which
+     never has a REQUEST that is forever.
+   */
+  private void evictIdle(final long now) {
+    if ((placeholderIdleMillis <= 0) || (now < nextIdleCheck)) {
+      return;
+    }
+
+    nextIdleCheck = now + Math.max(placeholderIdleMillis / 4, 1000);
+
+    final java.util.List<Integer> idle = new java.util.ArrayList<>();
+
+    tasks.forEach((id, rs) -> {
+      if (rs.placeHolder &&
+              (now - buffer(rs).lastMillis > placeholderIdleMillis)) {
+        idle.add(id);
+      }
+    });
+
+    for (final int id: idle) {
+      if (tasks.remove(id) == lastMapRs) {
+        lastMapRs = null;
+      }
+      placeholdersEvicted++;
     }
   }
 
 
   public void results() {
+    try {
+      spill.close();
+    } catch (final java.io.IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+
     if (displayTotals) {
       super.results();
+
+      if (records != null) {
+        records.start(sessionTotalsRecord)
+               .value(placeholdersEvicted)
+               .value(spill.getNumRecords())
+               .value(spill.size());
+        outRecord();
+      } else if ((placeholdersEvicted > 0) ||
+              (spill.getNumRecords() > 0)) {
+        out();
+        outFmt("Idle placeholder tasks dropped: %d", placeholdersEvicted);
+        outFmt("Entries written to temporary file: %d (%d bytes)",
+               spill.getNumRecords(), spill.size());
+      }
     }
   }
 
@@ -303,7 +403,7 @@ public class DisplaySessions extends LogAnalysis {
       return;
     }
 
-    if ((taskId != null) && !taskId.equals(rsin.taskId)) {
+    if ((taskId != null) && !taskId.equals(rsin.getTaskId())) {
       return;
     }
 
@@ -311,35 +411,49 @@ public class DisplaySessions extends LogAnalysis {
       return;
     }
 
-    // Output the log entries
-
-    outFmt("     uri: %s", rsin.uri);
-
-    outFmt(" exit to: %s", rsin.exitTo);
-    outFmt("Request in: %s out %s task %s", rsin.dt, rsout.dt, rsin.taskId);
-    if (rsin.placeHolder) {
-      out("   **** No REQUEST in found *****");
+    // Skipping is only set by later lines for the task - there may
+    // be none
+    if ((sessionId != null) && (rsin.sessid != null) &&
+            !sessionId.equals(rsin.sessid)) {
+      return;
     }
 
-    if (rsin.hadError) {
-      out("***** An error occurred");
+    if ((requestDt != null) && !rsin.getDt().startsWith(requestDt)) {
+      return;
     }
 
-    outFmt("  sessid: %s", rsin.sessid);
-    outFmt("   class: %s", rsin.className);
-    outFmt("    user: %s  calsuite %s", rsin.user, rsin.calsuiteName);
+    // Output the log entries
+
+    if (records != null) {
+      records.start(requestRecord)
+             .value(rsin.getDt())
+             .value(rsout.getDt())
+             .value(rsout.millis - rsin.millis)
+             .value(rsin.getTaskId())
+             .value(rsin.sessid)
+             .value(rsin.user)
+             .value(rsin.calsuiteName)
+             .value(rsin.getClassName())
+             .value(rsin.uri)
+             .value(rsin.exitTo)
+             .value(rsin.placeHolder)
+             .value(rsin.hadError);
+      outRecord();
+    } else {
+      outRequest(rsin, rsout);
+    }
 
-    final var fetchEvent = rsin.className.endsWith("FetchEventAction");
-    final var updateEvent = rsin.className.endsWith("UpdateEventAction");
+    final var fetchEvent = rsin.getClassName().endsWith("FetchEventAction");
+    final var updateEvent = rsin.getClassName().endsWith("UpdateEventAction");
 
     if ((displayMode == org.bedework.bwlogs.DisplaySessions.DisplayMode.list) && !fetchEvent && !updateEvent) {
-      out(sessionDelim);
+      outDelim();
       return;
     }
 
     logEntries:
-    for (final var le: rsin.entries) {
-      final var lt = le.logText;
+    for (final var le: buffer(rsin).entries()) {
+      final var lt = le.getLogText();
       if (lt == null) {
         continue;
       }
@@ -347,12 +461,12 @@ public class DisplaySessions extends LogAnalysis {
       final var doingRpars = lt.equals("Request parameters");
 
       if (fetchEvent && doingRpars) {
-        displayEventHref(le);
+        displayEventHref(rsin, le);
         continue logEntries;
       }
 
       if (doingRpars && updateEvent) {
-        displayEventHref(le);
+        displayEventHref(rsin, le);
       }
 
       if (displayMode == org.bedework.bwlogs.DisplaySessions.DisplayMode.list) {
@@ -360,12 +474,24 @@ public class DisplaySessions extends LogAnalysis {
       }
 
       if ((displayMode == org.bedework.bwlogs.DisplaySessions.DisplayMode.summary) &&
-              startMatches(le.logText, skipForSummary)) {
+              skipLists.getSummary().matches(lt)) {
         continue logEntries;
       }
 
+      if (records != null) {
+        outEntry(rsin, 0, lt);
+
+        if (le.hasEntries()) {
+          for (final var suble: le.getEntries()) {
+            outEntry(rsin, 1, suble.getLogText());
+          }
+        }
+
+        continue;
+      }
+
       if (doingRpars) {
-        if (!le.entries.isEmpty()) {
+        if (le.hasEntries()) {
           out("  Request parameters:");
         } else {
           out("  Request parameters: none");
@@ -374,24 +500,61 @@ public class DisplaySessions extends LogAnalysis {
         outFmt("         %s", lt);
       }
 
-      if (!le.entries.isEmpty()) {
-        for (final var suble: le.entries) {
-          outFmt("             %s", suble.logText);
+      if (le.hasEntries()) {
+        for (final var suble: le.getEntries()) {
+          outFmt("             %s", suble.getLogText());
         }
       }
     }
 
-    out(sessionDelim);
+    outDelim();
   }
 
-  private void displayEventHref(final LogEntry le) {
+  private void outRequest(final ReqInOutLogEntry rsin,
+                          final ReqInOutLogEntry rsout) {
+    outFmt("     uri: %s", rsin.uri);
+
+    outFmt(" exit to: %s", rsin.exitTo);
+    outFmt("Request in: %s out %s task %s", rsin.getDt(), rsout.getDt(), rsin.getTaskId());
+    if (rsin.placeHolder) {
+      out("   **** No REQUEST in found *****");
+    }
+
+    if (rsin.hadError) {
+      out("***** An error occurred");
+    }
+
+    outFmt("  sessid: %s", rsin.sessid);
+    outFmt("   class: %s", rsin.getClassName());
+    outFmt("    user: %s  calsuite %s", rsin.user, rsin.calsuiteName);
+  }
+
+  private void outEntry(final ReqInOutLogEntry rsin,
+                        final int level,
+                        final String text) {
+    records.start(entryRecord)
+           .value(rsin.getDt())
+           .value(rsin.getTaskId())
+           .value(level)
+           .value(text);
+    outRecord();
+  }
+
+  private void outDelim() {
+    if (records == null) {
+      out(sessionDelim);
+    }
+  }
+
+  private void displayEventHref(final ReqInOutLogEntry rsin,
+                                final LogEntry le) {
     String calPath = null;
     String guid = null;
     String rid = null;
     String href = null;
 
-    if (!le.entries.isEmpty()) {
-      for (final var suble: le.entries) {
+    if (le.hasEntries()) {
+      for (final var suble: le.getEntries()) {
         var val = tryReqPar(suble, "calPath");
         if (val != null) {
           calPath = val;
@@ -417,24 +580,32 @@ public class DisplaySessions extends LogAnalysis {
       }
     }
 
+    final String event;
+
     if (href != null) {
-      outFmt("   event: %s", href);
-      return;
+      event = href;
+    } else if (rid == null) {
+      event = calPath + " " + guid;
+    } else {
+      event = calPath + " " + guid + " " + rid;
     }
 
-    if (rid == null) {
-      outFmt("   event: %s %s", calPath, guid);
+    if (records == null) {
+      outFmt("   event: %s", event);
       return;
-
     }
 
-    outFmt("   event: %s %s %s", calPath, guid, rid);
+    records.start(eventRecord)
+           .value(rsin.getDt())
+           .value(rsin.getTaskId())
+           .value(event);
+    outRecord();
   }
 
   private String tryReqPar(final LogEntry le,
                            final String parName) {
     var test = parName + " = \"";
-    final var lt = le.logText;
+    final var lt = le.getLogText();
     final var pos = lt.indexOf(test);
 
     if (pos < 0) {
@@ -443,19 +614,4 @@ public class DisplaySessions extends LogAnalysis {
 
     return lt.substring(pos + test.length()).replace("\"", "");
   }
-
-  private boolean startMatches(final String text,
-                               final java.util.List<String> prefixes) {
-    if (text == null) {
-      return false;
-    }
-
-    for (final var s: prefixes) {
-      if (text.startsWith(s)) {
-        return true;
-      }
-    }
-
-    return false;
-  }
 }
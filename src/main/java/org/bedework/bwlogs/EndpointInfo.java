@@ -0,0 +1,49 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Request times for an endpoint template.
+ */
+public class EndpointInfo {
+  // Many of these - so less precise than for contexts: within 6.25%
+  public static final int histogramBits = 5;
+
+  long requests;
+  long totalMillis;
+
+  final LatencyHistogram histogram = new LatencyHistogram(histogramBits);
+
+  /** Record a completed request
+   *
+   * @param millis time taken
+   */
+  public void reqOut(final long millis) {
+    requests++;
+    totalMillis += Math.max(millis, 0);
+    histogram.record(millis);
+  }
+
+  /** Add the figures for the same endpoint from another part of the
+   * log.
+   *
+   * @param ei to add
+   */
+  public void add(final EndpointInfo ei) {
+    requests += ei.requests;
+    totalMillis += ei.totalMillis;
+    histogram.add(ei.histogram);
+  }
+
+  public long getRequests() {
+    return requests;
+  }
+
+  public long getTotalMillis() {
+    return totalMillis;
+  }
+
+  public LatencyHistogram getHistogram() {
+    return histogram;
+  }
+}
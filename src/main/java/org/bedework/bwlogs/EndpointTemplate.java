@@ -0,0 +1,226 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Reduce a request url to a template for the endpoint so that
+ * requests for the same action with different ids fall together, e.g.
+ * <pre>
+ * http://cal.example.edu/cal/event/eventView.do;jsessionid=yb4n2K?b=de&href=%2Fpublic%2Fcals%2FCAL-ff80.ics
+ * </pre>
+ * becomes
+ * <pre>
+ * /cal/event/eventView.do?b=*&amp;href=*
+ * </pre>
+ *
+ * <p>The scheme, host and any ;jsessionid are dropped. Path segments
+ * which look like numbers, UUIDs, dates or generated ids are replaced
+ * by {id}, {uuid} or {date}. Query values are replaced by *.
+ */
+public class EndpointTemplate {
+  public static final String idMask = "{id}";
+  public static final String uuidMask = "{uuid}";
+  public static final String dateMask = "{date}";
+
+  // Longer segments with a digit in them are taken to be ids
+  private static final int idMinLength = 16;
+
+  /**
+   * @param url from the request
+   * @return template - never null
+   */
+  public static String of(final String url) {
+    if (url == null) {
+      return "";
+    }
+
+    int pos = url.indexOf("//");
+    if (pos < 0) {
+      pos = 0;
+    } else {
+      pos = url.indexOf('/', pos + 2);
+      if (pos < 0) {
+        return "/";
+      }
+    }
+
+    final int len = url.length();
+    final var sb = new StringBuilder(Math.min(len - pos, 128));
+
+    // Path
+    while (pos < len) {
+      final char c = url.charAt(pos);
+
+      if ((c == '?') || (c == ';') || (c == '#')) {
+        break;
+      }
+
+      if (c != '/') {
+        pos++;
+        continue;
+      }
+
+      sb.append('/');
+      pos++;
+
+      final int segStart = pos;
+      while ((pos < len) && !endOfSegment(url.charAt(pos))) {
+        pos++;
+      }
+
+      appendSegment(sb, url, segStart, pos);
+    }
+
+    // Skip path parameters - ;jsessionid=...
+    while ((pos < len) && (url.charAt(pos) != '?') &&
+            (url.charAt(pos) != '#')) {
+      pos++;
+    }
+
+    if ((pos >= len) || (url.charAt(pos) != '?')) {
+      return sb.toString();
+    }
+
+    // Query - keep the names
+    pos++;
+    char sep = '?';
+
+    while (pos < len) {
+      final int nameStart = pos;
+
+      while ((pos < len) && (url.charAt(pos) != '=') &&
+              (url.charAt(pos) != '&') && (url.charAt(pos) != '#')) {
+        pos++;
+      }
+
+      if (pos > nameStart) {
+        sb.append(sep).append(url, nameStart, pos);
+        sep = '&';
+
+        if ((pos < len) && (url.charAt(pos) == '=')) {
+          sb.append("=*");
+        }
+      }
+
+      while ((pos < len) && (url.charAt(pos) != '&') &&
+              (url.charAt(pos) != '#')) {
+        pos++;
+      }
+
+      if ((pos >= len) || (url.charAt(pos) == '#')) {
+        break;
+      }
+
+      pos++; // the &
+    }
+
+    return sb.toString();
+  }
+
+  private static boolean endOfSegment(final char c) {
+    return (c == '/') || (c == '?') || (c == ';') || (c == '#');
+  }
+
+  private static void appendSegment(final StringBuilder sb,
+                                    final String url,
+                                    final int start,
+                                    final int end) {
+    final int len = end - start;
+
+    if (len == 0) {
+      return;
+    }
+
+    int digits = 0;
+    int hex = 0;
+    int dashes = 0;
+
+    for (int i = start; i < end; i++) {
+      final char c = url.charAt(i);
+
+      if ((c >= '0') && (c <= '9')) {
+        digits++;
+        hex++;
+      } else if (((c >= 'a') && (c <= 'f')) ||
+              ((c >= 'A') && (c <= 'F'))) {
+        hex++;
+      } else if (c == '-') {
+        dashes++;
+      }
+    }
+
+    if (digits == len) {
+      // 20200214 is a date - other numbers are ids
+      if ((len == 8) && isDate(url, start, false)) {
+        sb.append(dateMask);
+      } else {
+        sb.append(idMask);
+      }
+      return;
+    }
+
+    if ((len == 36) && (dashes == 4) && (hex == 32)) {
+      sb.append(uuidMask);
+      return;
+    }
+
+    if ((len >= 10) && isDate(url, start, true)) {
+      // 2020-02-14 or 2020-02-14T...
+      sb.append(dateMask);
+      return;
+    }
+
+    if ((digits > 0) && (len >= idMinLength)) {
+      sb.append(idMask);
+      return;
+    }
+
+    sb.append(url, start, end);
+  }
+
+  /* yyyymmdd or yyyy-mm-dd
+   */
+  private static boolean isDate(final String url,
+                                final int start,
+                                final boolean dashed) {
+    final int monthPos;
+    final int dayPos;
+
+    if (dashed) {
+      if ((url.charAt(start + 4) != '-') ||
+              (url.charAt(start + 7) != '-')) {
+        return false;
+      }
+      monthPos = start + 5;
+      dayPos = start + 8;
+    } else {
+      monthPos = start + 4;
+      dayPos = start + 6;
+    }
+
+    if (!digits(url, start, 4) || !digits(url, monthPos, 2) ||
+            !digits(url, dayPos, 2)) {
+      return false;
+    }
+
+    final int month = (url.charAt(monthPos) - '0') * 10 +
+            (url.charAt(monthPos + 1) - '0');
+    final int day = (url.charAt(dayPos) - '0') * 10 +
+            (url.charAt(dayPos + 1) - '0');
+
+    return (month >= 1) && (month <= 12) && (day >= 1) && (day <= 31);
+  }
+
+  private static boolean digits(final String url,
+                                final int start,
+                                final int n) {
+    for (int i = start; i < start + n; i++) {
+      final char c = url.charAt(i);
+      if ((c < '0') || (c > '9')) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
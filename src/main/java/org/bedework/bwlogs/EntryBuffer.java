@@ -0,0 +1,186 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** The log entries kept for a request until it is displayed. Entries
+ * are held in memory up to a budget and after that written to a
+ * SpillFile shared by all the requests, from where they are read back
+ * one at a time when the request is displayed.
+ *
+ * <p>The last entry added is always in memory as sub-entries - e.g.
+ * request parameters - may still be added to it. Only the log text
+ * of a spilled entry and of its sub-entries is kept.
+ */
+public class EntryBuffer {
+  public static final long defaultBudget = 1024 * 1024;
+
+  // Rough cost of an entry apart from its text
+  private static final int entryOverhead = 200;
+
+  private final SpillFile spill;
+  private final long budget;
+
+  private final List<LogEntry> kept = new ArrayList<>();
+  private long keptSize;
+
+  // Offsets in the spill file - allocated by the first spill
+  private long[] spilled;
+  private int numSpilled;
+
+  private LogEntry last;
+
+  // Time of the last line for the request
+  long lastMillis;
+
+  /**
+   * @param spill where entries over the budget go
+   * @param budget approximate bytes of entries held in memory
+   */
+  public EntryBuffer(final SpillFile spill,
+                     final long budget) {
+    this.spill = spill;
+    this.budget = budget;
+  }
+
+  /**
+   * @param le entry to add - not the flyweight
+   */
+  public void add(final LogEntry le) {
+    if (last != null) {
+      keep(last);
+    }
+
+    last = le;
+  }
+
+  /**
+   * @return the entry added last or null
+   */
+  public LogEntry getLast() {
+    return last;
+  }
+
+  /**
+   * @return the entries in the order they were added. Spilled entries
+   *         are read as the iterator reaches them.
+   */
+  public Iterable<LogEntry> entries() {
+    return () -> new Iterator<>() {
+      private int pos;
+      private final int size = kept.size() + numSpilled +
+              ((last == null) ? 0 : 1);
+
+      @Override
+      public boolean hasNext() {
+        return pos < size;
+      }
+
+      @Override
+      public LogEntry next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        final int i = pos;
+        pos++;
+
+        if (i < kept.size()) {
+          return kept.get(i);
+        }
+
+        if (i - kept.size() < numSpilled) {
+          return unspill(spilled[i - kept.size()]);
+        }
+
+        return last;
+      }
+    };
+  }
+
+  private void keep(final LogEntry le) {
+    final long sz = size(le);
+
+    if ((numSpilled == 0) && (keptSize + sz <= budget)) {
+      kept.add(le);
+      keptSize += sz;
+      return;
+    }
+
+    // Once we start spilling everything goes to keep the order
+    final List<String> texts = new ArrayList<>();
+    texts.add(le.getLogText());
+
+    if (le.hasEntries()) {
+      for (final var sub: le.getEntries()) {
+        texts.add(sub.getLogText());
+      }
+    }
+
+    if (spilled == null) {
+      spilled = new long[16];
+    } else if (numSpilled == spilled.length) {
+      spilled = Arrays.copyOf(spilled, numSpilled * 2);
+    }
+
+    try {
+      spilled[numSpilled] = spill.append(texts);
+    } catch (final IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+
+    numSpilled++;
+  }
+
+  private LogEntry unspill(final long offset) {
+    final List<String> texts;
+
+    try {
+      texts = spill.read(offset);
+    } catch (final IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+
+    final var le = new LogEntry();
+    le.setLogText(texts.get(0));
+
+    for (int i = 1; i < texts.size(); i++) {
+      final var sub = new LogEntry();
+      sub.setLogText(texts.get(i));
+      le.addLogEntry(sub);
+    }
+
+    return le;
+  }
+
+  private static long size(final LogEntry le) {
+    long sz = entryOverhead + textSize(le);
+
+    if (le.hasEntries()) {
+      for (final var sub: le.getEntries()) {
+        sz += entryOverhead + textSize(sub);
+      }
+    }
+
+    return sz;
+  }
+
+  /* The entries hold the whole line - the text is most of it.
+   */
+  private static long textSize(final LogEntry le) {
+    final var lt = le.getLogText();
+
+    if (lt == null) {
+      return 0;
+    }
+
+    return 2L * lt.length();
+  }
+}
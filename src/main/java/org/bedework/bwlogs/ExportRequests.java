@@ -0,0 +1,137 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/** Writes each paired REQUEST and REQUEST-OUT to a column file - see
+ * ColumnFileWriter - so questions about the requests can be answered
+ * by QueryRequests without parsing the log again.
+ *
+ * <p>The user and error flag come from the DEBUG and ERROR lines for
+ * the request's task so every line is looked at. The files are parsed
+ * in order as the requests are written as they complete.
+ *
+ * <p>The file is written under a temporary name and only replaces
+ * the old one if the export completes. If it fails the partial file
+ * is deleted.
+ */
+public class ExportRequests extends LogAnalysis {
+  private static final String remoteUser = "getRemoteUser = ";
+
+  private final Path path;
+  private final Path tmpPath;
+  private final ColumnFileWriter writer;
+
+  // Set once the file is in place
+  private boolean exported;
+
+  /**
+   * @param path of the column file to create or replace
+   * @throws IOException on open error
+   */
+  public ExportRequests(final Path path) throws IOException {
+    this.path = path;
+    tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+    writer = new ColumnFileWriter(tmpPath);
+  }
+
+  @Override
+  public void process(final String logPathName,
+                      final boolean showLong,
+                      final boolean showMissingTaskIds) {
+    try {
+      super.process(logPathName, showLong, showMissingTaskIds);
+    } finally {
+      if (!exported) {
+        discard();
+      }
+    }
+  }
+
+  @Override
+  protected boolean wantsRecords() {
+    return true;
+  }
+
+  @Override
+  public void processRecord(final String s,
+                            final LogEntry le) {
+    if ((le == null) || le.unparsed) {
+      return;
+    }
+
+    final var rs = tasks.get(le.getTaskSym());
+
+    if (rs == null) {
+      return;
+    }
+
+    if (le.levelIs("ERROR")) {
+      rs.hadError = true;
+    } else if (le.logTextStartsWith(remoteUser)) {
+      rs.user = le.getLogText().substring(remoteUser.length());
+    }
+  }
+
+  @Override
+  public void requestOut(final ReqInOutLogEntry rsin,
+                         final ReqInOutLogEntry rsout) {
+    writer.set(RequestColumn.start, rsin.millis);
+    writer.set(RequestColumn.millis, rsout.millis - rsin.millis);
+    writer.set(RequestColumn.context, rsin.context);
+    writer.set(RequestColumn.endpoint, EndpointTemplate.of(rsin.url));
+    writer.set(RequestColumn.ip, rsin.ip);
+    writer.set(RequestColumn.session, rsin.sessionId);
+    writer.set(RequestColumn.user, rsin.user);
+    writer.set(RequestColumn.task, rsin.getTaskId());
+    writer.set(RequestColumn.error, rsin.hadError ? 1 : 0);
+
+    try {
+      writer.endRow();
+    } catch (final IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+
+  @Override
+  public void results() {
+    try {
+      writer.close();
+      Files.move(tmpPath, path, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (final IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+
+    exported = true;
+
+    outFmt("Exported %d requests in %d blocks to %s (%d bytes)",
+           writer.getNumRows(), writer.getNumBlocks(), path,
+           writer.size());
+  }
+
+  /* Close and delete the partial file - the error has been reported.
+   */
+  private void discard() {
+    try {
+      writer.close();
+    } catch (final IOException | RuntimeException ignored) {
+      // Failed already - we only want the channel closed
+    }
+
+    try {
+      Files.deleteIfExists(tmpPath);
+    } catch (final IOException ioe) {
+      outFmt("Unable to delete %s: %s", tmpPath, ioe.getMessage());
+      return;
+    }
+
+    outFmt("Export failed - %s not written", path);
+  }
+}
@@ -0,0 +1,282 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Parses an ip address into binary form - 2 longs holding the 128
+ * bits of an ipv6 address. An ipv4 address is held as the ipv4
+ * mapped ipv6 address ::ffff:a.b.c.d so it's simply an int in the
+ * low 32 bits.
+ *
+ * <p>One of these is reused for each address parsed so nothing is
+ * allocated.
+ */
+public class IpAddress {
+  private static final long v4Prefix = 0xFFFF_0000_0000L;
+
+  // Masks the low 16 bits of an ipv4 address to give the /16
+  private static final long v4NetMask = ~0xFFFFL;
+
+  long hi;
+  long lo;
+
+  private final int[] groups = new int[8];
+
+  /**
+   * @param s possible address
+   * @return true if s is an ipv4 or ipv6 address - hi and lo are set
+   */
+  public boolean parse(final CharSequence s) {
+    final int v4 = parseV4(s, 0, s.length());
+
+    if (v4 != -1) {
+      hi = 0;
+      lo = v4Prefix | (v4 & 0xFFFF_FFFFL);
+      return true;
+    }
+
+    return parseV6(s);
+  }
+
+  public boolean isV4() {
+    return isV4(hi, lo);
+  }
+
+  /**
+   * @param hi high 64 bits
+   * @param lo low 64 bits
+   * @return true for an ipv4 address
+   */
+  public static boolean isV4(final long hi,
+                             final long lo) {
+    return (hi == 0) && ((lo >>> 32) == 0xFFFF);
+  }
+
+  /**
+   * @param lo low 64 bits of an ipv4 address
+   * @return low 64 bits of the /16 network
+   */
+  public static long v4Net(final long lo) {
+    return lo & v4NetMask;
+  }
+
+  /**
+   * @param hi high 64 bits
+   * @param lo low 64 bits
+   * @return dotted form for ipv4 or the RFC 5952 form for ipv6
+   */
+  public static String toString(final long hi,
+                                final long lo) {
+    final var sb = new StringBuilder(39);
+
+    if (isV4(hi, lo)) {
+      appendV4(sb, (int)lo, 4);
+      return sb.toString();
+    }
+
+    // Find the longest run of 2 or more zero groups
+    int bestStart = -1;
+    int bestLen = 1;
+    int runStart = -1;
+
+    for (int i = 0; i <= 8; i++) {
+      if ((i < 8) && (group(hi, lo, i) == 0)) {
+        if (runStart < 0) {
+          runStart = i;
+        }
+        continue;
+      }
+
+      if ((runStart >= 0) && (i - runStart > bestLen)) {
+        bestStart = runStart;
+        bestLen = i - runStart;
+      }
+      runStart = -1;
+    }
+
+    for (int i = 0; i < 8; i++) {
+      if (i == bestStart) {
+        sb.append("::");
+        i += bestLen - 1;
+        continue;
+      }
+
+      if ((i > 0) && (sb.charAt(sb.length() - 1) != ':')) {
+        sb.append(':');
+      }
+      sb.append(Integer.toHexString(group(hi, lo, i)));
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * @param lo low 64 bits of an ipv4 /16 network
+   * @return e.g. "10.1.*"
+   */
+  public static String v4NetToString(final long lo) {
+    final var sb = new StringBuilder(9);
+
+    appendV4(sb, (int)lo, 2);
+    sb.append(".*");
+
+    return sb.toString();
+  }
+
+  private static void appendV4(final StringBuilder sb,
+                               final int v4,
+                               final int parts) {
+    for (int i = 0; i < parts; i++) {
+      if (i > 0) {
+        sb.append('.');
+      }
+      sb.append((v4 >>> (24 - 8 * i)) & 0xFF);
+    }
+  }
+
+  private static int group(final long hi,
+                           final long lo,
+                           final int i) {
+    final long half = (i < 4) ? hi : lo;
+
+    return (int)(half >>> (48 - 16 * (i & 3))) & 0xFFFF;
+  }
+
+  /* Dotted decimal with no leading zeros so that the address prints
+     as it was logged. Returns -1 if not an address - which is also
+     255.255.255.255 but that won't be seen as a client.
+   */
+  private static int parseV4(final CharSequence s,
+                             final int start,
+                             final int end) {
+    int res = 0;
+    int pos = start;
+
+    for (int part = 0; part < 4; part++) {
+      if (part > 0) {
+        if ((pos >= end) || (s.charAt(pos) != '.')) {
+          return -1;
+        }
+        pos++;
+      }
+
+      final int partStart = pos;
+      int val = 0;
+
+      while ((pos < end) && (pos - partStart < 3)) {
+        final char c = s.charAt(pos);
+        if ((c < '0') || (c > '9')) {
+          break;
+        }
+
+        val = val * 10 + (c - '0');
+        pos++;
+      }
+
+      if ((pos == partStart) || (val > 255) ||
+              ((pos - partStart > 1) && (s.charAt(partStart) == '0'))) {
+        return -1;
+      }
+
+      res = (res << 8) | val;
+    }
+
+    if (pos != end) {
+      return -1;
+    }
+
+    return res;
+  }
+
+  private boolean parseV6(final CharSequence s) {
+    final int len = s.length();
+    int n = 0;
+    int gap = -1;
+    int pos = 0;
+
+    if ((len >= 2) && (s.charAt(0) == ':') && (s.charAt(1) == ':')) {
+      gap = 0;
+      pos = 2;
+    } else if (len == 0) {
+      return false;
+    }
+
+    while (pos < len) {
+      final int groupStart = pos;
+      int val = 0;
+
+      while ((pos < len) && (pos - groupStart < 4)) {
+        final int d = Character.digit(s.charAt(pos), 16);
+        if (d < 0) {
+          break;
+        }
+
+        val = (val << 4) | d;
+        pos++;
+      }
+
+      if ((pos < len) && (s.charAt(pos) == '.')) {
+        // Trailing ipv4 - e.g. ::ffff:10.1.2.3
+        final int v4 = parseV4(s, groupStart, len);
+        if ((v4 == -1) || (n > 6)) {
+          return false;
+        }
+
+        groups[n++] = v4 >>> 16;
+        groups[n++] = v4 & 0xFFFF;
+        pos = len;
+        break;
+      }
+
+      if ((pos == groupStart) || (n == 8)) {
+        return false;
+      }
+
+      groups[n++] = val;
+
+      if (pos == len) {
+        break;
+      }
+
+      if (s.charAt(pos) != ':') {
+        return false;
+      }
+      pos++;
+
+      if ((pos < len) && (s.charAt(pos) == ':')) {
+        if (gap >= 0) {
+          return false;
+        }
+
+        gap = n;
+        pos++;
+      } else if (pos == len) {
+        return false;
+      }
+    }
+
+    if (gap < 0) {
+      if (n != 8) {
+        return false;
+      }
+    } else if (n > 7) {
+      return false;
+    }
+
+    hi = 0;
+    lo = 0;
+
+    final int zeros = 8 - n;
+    for (int i = 0; i < n; i++) {
+      final int at = ((gap >= 0) && (i >= gap)) ? i + zeros : i;
+
+      if (at < 4) {
+        hi |= (long)groups[i] << (48 - 16 * at);
+      } else {
+        lo |= (long)groups[i] << (48 - 16 * (at - 4));
+      }
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,138 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Counts keyed on a binary ip address - see IpAddress. An open
+ * addressing table with linear probing in parallel primitive arrays
+ * so an increment allocates nothing.
+ */
+public class IpCounts {
+  public interface Visitor {
+    void count(long hi, long lo, int count);
+  }
+
+  private static final int initialBits = 6;
+
+  private long[] his;
+  private long[] los;
+  private int[] counts; // 0 for an empty slot
+
+  private int bits;
+  private int size;
+
+  public IpCounts() {
+    alloc(initialBits);
+  }
+
+  /**
+   * @param hi high 64 bits of address
+   * @param lo low 64 bits of address
+   * @param n to add - greater than 0
+   */
+  public void add(final long hi,
+                  final long lo,
+                  final int n) {
+    int i = slot(hi, lo);
+
+    if (counts[i] != 0) {
+      counts[i] += n;
+      return;
+    }
+
+    if (size + 1 > (1 << (bits - 1))) {
+      // Keep the load below 1/2
+      grow();
+      i = slot(hi, lo);
+    }
+
+    his[i] = hi;
+    los[i] = lo;
+    counts[i] = n;
+    size++;
+  }
+
+  /** Add the counts from another table
+   *
+   * @param ic to add
+   */
+  public void add(final IpCounts ic) {
+    ic.forEach(this::add);
+  }
+
+  /**
+   * @param hi high 64 bits of address
+   * @param lo low 64 bits of address
+   * @return count - 0 if never seen
+   */
+  public int get(final long hi,
+                 final long lo) {
+    return counts[slot(hi, lo)];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param v called for each address - in no particular order
+   */
+  public void forEach(final Visitor v) {
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] != 0) {
+        v.count(his[i], los[i], counts[i]);
+      }
+    }
+  }
+
+  /* The slot holding the address or the empty slot where it goes
+   */
+  private int slot(final long hi,
+                   final long lo) {
+    final int mask = counts.length - 1;
+    int i = index(hi, lo);
+
+    while ((counts[i] != 0) && ((los[i] != lo) || (his[i] != hi))) {
+      i = (i + 1) & mask;
+    }
+
+    return i;
+  }
+
+  /* Fibonacci hashing - the multiply mixes the low bits, which vary
+     most, into the high bits which we take.
+   */
+  private int index(final long hi,
+                    final long lo) {
+    final long h = ((hi * 0x9E3779B97F4A7C15L) ^ lo) * 0x9E3779B97F4A7C15L;
+
+    return (int)(h >>> (64 - bits));
+  }
+
+  private void grow() {
+    final long[] oldHis = his;
+    final long[] oldLos = los;
+    final int[] oldCounts = counts;
+
+    alloc(bits + 1);
+
+    for (int i = 0; i < oldCounts.length; i++) {
+      if (oldCounts[i] != 0) {
+        final int j = slot(oldHis[i], oldLos[i]);
+
+        his[j] = oldHis[i];
+        los[j] = oldLos[i];
+        counts[j] = oldCounts[i];
+        size++;
+      }
+    }
+  }
+
+  private void alloc(final int bits) {
+    this.bits = bits;
+    his = new long[1 << bits];
+    los = new long[1 << bits];
+    counts = new int[1 << bits];
+    size = 0;
+  }
+}
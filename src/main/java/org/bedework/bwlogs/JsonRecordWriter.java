@@ -0,0 +1,58 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Writes each record as a json object on one line, e.g.<pre>
+ * {"record":"context","context":"cal","requests":1234,...}
+ * </pre>
+ */
+public class JsonRecordWriter extends RecordWriter {
+  private static final char[] hex = "0123456789abcdef".toCharArray();
+
+  @Override
+  protected void begin() {
+    sb.append(type.jsonStart);
+  }
+
+  @Override
+  protected void separator(final int i) {
+    sb.append(type.jsonNames[i]);
+  }
+
+  @Override
+  protected void string(final CharSequence val) {
+    sb.append('"');
+
+    final int len = val.length();
+    for (int i = 0; i < len; i++) {
+      final char c = val.charAt(i);
+
+      if ((c == '"') || (c == '\\')) {
+        sb.append('\\').append(c);
+      } else if (c >= 0x20) {
+        sb.append(c);
+      } else if (c == '\n') {
+        sb.append("\\n");
+      } else if (c == '\r') {
+        sb.append("\\r");
+      } else if (c == '\t') {
+        sb.append("\\t");
+      } else {
+        sb.append("\\u00").append(hex[c >> 4]).append(hex[c & 0xf]);
+      }
+    }
+
+    sb.append('"');
+  }
+
+  @Override
+  protected void nullValue() {
+    sb.append("null");
+  }
+
+  @Override
+  protected void finish() {
+    sb.append('}');
+  }
+}
@@ -0,0 +1,145 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** A histogram of request times in the style of HdrHistogram. Values
+ * below 2^bits are counted exactly. Above that each power of 2 is
+ * split into 2^(bits - 1) buckets, so any value is recorded to within
+ * 1 part in 2^(bits - 1), whatever its size.
+ *
+ * <p>Memory is fixed by the number of bits - about 29K for the
+ * default of 7 which is within 1.6%. Histograms with the same number
+ * of bits can be added together so parts of a log may be handled
+ * separately.
+ */
+public class LatencyHistogram {
+  public static final int defaultBits = 7;
+  public static final int minBits = 2;
+  public static final int maxBits = 16;
+
+  private final int bits;
+  private final int halfCount; // buckets in each power of 2
+  private final long[] counts;
+
+  private long totalCount;
+  private long max;
+
+  /**
+   * @param bits precision - between minBits and maxBits
+   */
+  public LatencyHistogram(final int bits) {
+    checkBits(bits);
+
+    this.bits = bits;
+    halfCount = 1 << (bits - 1);
+    counts = new long[(65 - bits) * halfCount];
+  }
+
+  /**
+   * @param bits precision
+   * @throws IllegalArgumentException if out of range
+   */
+  public static void checkBits(final int bits) {
+    if ((bits < minBits) || (bits > maxBits)) {
+      throw new IllegalArgumentException(
+              "Histogram bits must be between " + minBits +
+                      " and " + maxBits);
+    }
+  }
+
+  /**
+   * @param val to record - negative values are recorded as 0
+   */
+  public void record(final long val) {
+    final long v = Math.max(val, 0);
+
+    counts[index(v)]++;
+    totalCount++;
+
+    if (v > max) {
+      max = v;
+    }
+  }
+
+  /** Add the counts from another histogram
+   *
+   * @param h histogram with the same number of bits
+   */
+  public void add(final LatencyHistogram h) {
+    if (h.bits != bits) {
+      throw new IllegalArgumentException(
+              "Histograms have different precision");
+    }
+
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += h.counts[i];
+    }
+
+    totalCount += h.totalCount;
+
+    if (h.max > max) {
+      max = h.max;
+    }
+  }
+
+  /**
+   * @param percentile e.g. 99.9
+   * @return the value at or below which that percentage of values
+   *         fall - to within the precision. 0 if nothing recorded.
+   */
+  public long getValueAtPercentile(final double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+
+    final double p = Math.min(Math.max(percentile, 0), 100);
+    final long wanted = Math.max(1,
+                                 (long)Math.ceil(p / 100 * totalCount));
+
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+
+      if (seen >= wanted) {
+        return Math.min(highestInBucket(i), max);
+      }
+    }
+
+    return max;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public int getBits() {
+    return bits;
+  }
+
+  private int index(final long v) {
+    if (v < (halfCount << 1)) {
+      return (int)v;
+    }
+
+    // v >>> shift is in [halfCount, 2 * halfCount)
+    final int shift = 64 - Long.numberOfLeadingZeros(v) - bits;
+
+    return shift * halfCount + (int)(v >>> shift);
+  }
+
+  private long highestInBucket(final int index) {
+    if (index < (halfCount << 1)) {
+      return index;
+    }
+
+    final int shift = index / halfCount - 1;
+    final long m = index - (long)shift * halfCount;
+
+    return ((m + 1) << shift) - 1;
+  }
+}
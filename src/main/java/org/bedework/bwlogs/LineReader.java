@@ -0,0 +1,110 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/** Supplies the lines of a log as {@link LogLine} views.
+ */
+public interface LineReader extends Closeable {
+  enum Compression {
+    none,
+    gzip,
+    zstd
+  }
+
+  /** The returned object is reused - it is only valid until the
+   * next call.
+   *
+   * @return next line or null for end of input
+   * @throws IOException on read error
+   */
+  LogLine next() throws IOException;
+
+  /**
+   * @return number of the line last returned - starting at 1
+   */
+  long getLineNumber();
+
+  /** Open a reader for the file. Compressed files are recognized by
+   * their magic bytes and decompressed on a separate thread. Plain
+   * files are memory mapped.
+   *
+   * <p>zstd files are decompressed by running the zstd command which
+   * must be on the path. A non-zero exit status is reported as a read
+   * error at the end of the file.
+   *
+   * @param path to file
+   * @return a reader
+   * @throws IOException on open error
+   */
+  static LineReader open(final Path path) throws IOException {
+    final var name = "bwlogs-read-" + path.getFileName();
+
+    switch (compression(path)) {
+      case gzip:
+        return new PipedLineReader(
+                new GZIPInputStream(Files.newInputStream(path),
+                                    64 * 1024),
+                name);
+
+      case zstd:
+        final var proc = new ProcessBuilder("zstd", "-dcq",
+                                            path.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        return new PipedLineReader(
+                new ProcessInputStream(
+                        new BufferedInputStream(proc.getInputStream(),
+                                                64 * 1024),
+                        proc, "zstd decompressing " + path),
+                name);
+
+      default:
+        return new MappedLineReader(path);
+    }
+  }
+
+  /**
+   * @param path to file
+   * @return compression determined by the magic bytes at the start
+   * @throws IOException on read error
+   */
+  static Compression compression(final Path path) throws IOException {
+    final byte[] magic = new byte[4];
+    int len = 0;
+
+    try (final InputStream is = Files.newInputStream(path)) {
+      while (len < magic.length) {
+        final int n = is.read(magic, len, magic.length - len);
+        if (n < 0) {
+          break;
+        }
+        len += n;
+      }
+    }
+
+    if ((len >= 2) &&
+            ((magic[0] & 0xff) == 0x1f) &&
+            ((magic[1] & 0xff) == 0x8b)) {
+      return Compression.gzip;
+    }
+
+    if ((len == 4) &&
+            ((magic[0] & 0xff) == 0x28) &&
+            ((magic[1] & 0xff) == 0xb5) &&
+            ((magic[2] & 0xff) == 0x2f) &&
+            ((magic[3] & 0xff) == 0xfd)) {
+      return Compression.zstd;
+    }
+
+    return Compression.none;
+  }
+}
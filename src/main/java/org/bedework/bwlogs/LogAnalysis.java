@@ -3,12 +3,11 @@
 */
 package org.bedework.bwlogs;
 
-import org.bedework.util.misc.Util;
-
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.TreeMap;
 
 import static java.lang.String.format;
 
@@ -28,8 +27,76 @@ public class LogAnalysis extends LogReader {
   long totalRequests;
   long totalForwardedRequests;
 
+  private static final double[] percentiles = {50, 90, 99, 99.9};
+  private static final String[] percentileLabels =
+          {"p50", "p90", "p99", "p999"};
+
+  private static final int numEndpoints = 20;
+
+  // Fewer requests than this and the p99 is just the slowest
+  private static final int minP99Requests = 100;
+
+  // Records for json and csv output
+
+  static final RecordType totalsRecord =
+          RecordType.of("totals", "requests", "forwardedRequests",
+                        "sessions", "errorLines", "ipCountError",
+                        "longIpCountError", "endpointMsError");
+
+  static final RecordType contextRecord =
+          RecordType.of("context", contextFields());
+
+  static final RecordType endpointRecord =
+          RecordType.of("endpoint", "by", "endpoint", "totalMs",
+                        "requests", "avgMs", "p99Ms", "maxMs");
+
+  static final RecordType ipRecord =
+          RecordType.of("ip", "ip", "requests", "avgPerSession");
+
+  static final RecordType longIpRecord =
+          RecordType.of("longIp", "ip", "requests");
+
+  static final RecordType ipSessionsRecord =
+          RecordType.of("ipSessions", "ip", "requests", "avgPerSession");
+
+  public LogAnalysis() {
+  }
+
+  /**
+   * @param histogramBits precision of the latency histograms
+   */
+  public LogAnalysis(final int histogramBits) {
+    LatencyHistogram.checkBits(histogramBits);
+    this.histogramBits = histogramBits;
+  }
+
   @Override
-  public void processRecord(final String s) {
+  protected boolean wantsRecords() {
+    return false;
+  }
+
+  @Override
+  protected LogReader newPartReader() {
+    if (getClass() != LogAnalysis.class) {
+      // Subclasses parse in parallel only if they make their own
+      return null;
+    }
+
+    return new LogAnalysis(histogramBits);
+  }
+
+  @Override
+  protected void merge(final LogReader rdr) {
+    super.merge(rdr);
+
+    final var la = (LogAnalysis)rdr;
+    totalRequests += la.totalRequests;
+    totalForwardedRequests += la.totalForwardedRequests;
+  }
+
+  @Override
+  public void processRecord(final String s,
+                            final LogEntry le) {
   }
 
   @Override
@@ -37,6 +104,11 @@ public class LogAnalysis extends LogReader {
   }
 
   public void results() {
+    if (records != null) {
+      recordResults();
+      return;
+    }
+
     outFmt("Total requests: %d", totalRequests);
     if (totalForwardedRequests != totalRequests) {
       outFmt("Total forwarded requests: %d", totalForwardedRequests);
@@ -46,20 +118,22 @@ public class LogAnalysis extends LogReader {
 
     outFmt("Millis per request by context per 100 millis");
 
-    final Set<String> contextNames = new TreeSet<>(contexts.keySet());
+    final Map<String, ContextInfo> byName = new TreeMap<>();
+    contexts.forEach((id, ci) -> byName.put(ci.context, ci));
 
     final String labelPattern = " %6s |";
 
-    final ContextInfo[] cis = new ContextInfo[contextNames.size()];
-    final String[] cellFormats = new String[contextNames.size()];
-    final String[] hdrFormats = new String[contextNames.size()];
+    final ContextInfo[] cis = new ContextInfo[byName.size()];
+    final String[] cellFormats = new String[byName.size()];
+    final String[] hdrFormats = new String[byName.size()];
     int cx = 0;
 
     final StringBuilder header =
             new StringBuilder(format(labelPattern, ""));
 
-    for (final String context: contextNames) {
-      final ContextInfo ci = contexts.get(context);
+    for (final var ent: byName.entrySet()) {
+      final String context = ent.getKey();
+      final ContextInfo ci = ent.getValue();
       cis[cx] = ci;
 
       final int fldLen = Math.max(context.length(), 5);
@@ -115,12 +189,13 @@ public class LogAnalysis extends LogReader {
       totReq.append(format(hdrFormats[j],
                            ci.getRequests()));
       avgMs.append(format(hdrFormats[j],
-                          (int)(ci.getTotalMillis() / ci.getRequests())));
+                          avg(ci.getTotalMillis(), ci.getRequests())));
 
       subTtotReq.append(format(hdrFormats[j],
                                ci.getSubTrequests()));
       subTavgMs.append(format(hdrFormats[j],
-                              (int)(ci.getSubTtotalMillis() / ci.getSubTrequests())));
+                              avg(ci.getSubTtotalMillis(),
+                                  ci.getSubTrequests())));
     }
 
     outFmt("%s", sessReq);
@@ -131,19 +206,22 @@ public class LogAnalysis extends LogReader {
     outFmt("%s", subTavgMs);
     out();
 
+    outPercentiles(header, cis, hdrFormats);
+    outEndpoints();
+
     outFmt("Total error lines: %d", errorLines);
 
     out();
 
     final int numIps = 20;
     outFmt("List of top %d ips", numIps);
+    outIpCountsError(getIpCounts());
     outFmt("ips\trequests\tavg per session", numIps);
 
-    final var sorted = Util.sortMap(ReqInOutLogEntry.ipMap);
     int ct = 0;
-    for (final var ent: sorted) {
-      outFmt("%s\t%d\t%d", ent.getKey(), ent.getValue(),
-             sessions.getSessionCounts(ent.getKey()).avg());
+    for (final var c: getIpCounts().sorted()) {
+      outFmt("%s\t%d\t%d", c.getKey(), c.getCount(),
+             sessions.getSessionCounts(c.getKey()).avg());
       ct++;
 
       if (ct > numIps) {
@@ -155,12 +233,11 @@ public class LogAnalysis extends LogReader {
 
     outSessionInfo();
     outFmt("List of top %d long request ips", numIps);
+    outIpCountsError(getLongreqIpCounts());
 
-    final List<Map.Entry<String, Integer>> longSorted =
-            Util.sortMap(longreqIpMap);
     ct = 0;
-    for (final Map.Entry<String, Integer> ent: longSorted) {
-      outFmt("%s\t%d", ent.getKey(), ent.getValue());
+    for (final var c: getLongreqIpCounts().sorted()) {
+      outFmt("%s\t%d", c.getKey(), c.getCount());
       ct++;
 
       if (ct > numIps) {
@@ -169,6 +246,131 @@ public class LogAnalysis extends LogReader {
     }
   }
 
+  /* Once the budget is used up the counts are estimates
+   */
+  private void outIpCountsError(final SpaceSaving<String, Void> counts) {
+    if (counts.getErrorBound() == 0) {
+      return;
+    }
+
+    outFmt("More than %d ips: counts may be over by up to %d. " +
+                   "Any ip with more than %d is listed.",
+           counts.getCapacity(), counts.getErrorBound(),
+           counts.getTotal() / counts.getCapacity());
+  }
+
+  private void outPercentiles(final StringBuilder header,
+                              final ContextInfo[] cis,
+                              final String[] hdrFormats) {
+    final String labelPattern = " %6s |";
+
+    outFmt("Millis per request by context percentiles " +
+                   "(histogram within 1 part in %d)",
+           1 << (histogramBits - 1));
+    outFmt("%s", header);
+
+    for (int i = 0; i < percentiles.length; i++) {
+      final var l = new StringBuilder(
+              format(labelPattern, percentileLabels[i]));
+
+      for (int j = 0; j < cis.length; j++) {
+        l.append(format(hdrFormats[j],
+                        cis[j].getHistogram()
+                              .getValueAtPercentile(percentiles[i])));
+      }
+
+      outFmt("%s", l);
+    }
+
+    final var maxMs = new StringBuilder(format(labelPattern, "max"));
+
+    for (int j = 0; j < cis.length; j++) {
+      maxMs.append(format(hdrFormats[j],
+                          cis[j].getHistogram().getMax()));
+    }
+
+    outFmt("%s", maxMs);
+    out();
+  }
+
+  private void outEndpoints() {
+    final var eps = getEndpoints();
+
+    if (eps.size() == 0) {
+      return;
+    }
+
+    outFmt("Top %d endpoints by total time (%d tracked of at most %d)",
+           numEndpoints, eps.size(), eps.getCapacity());
+    if (eps.getErrorBound() != 0) {
+      outFmt("Total ms for an endpoint may be over by up to %d ms. " +
+                     "Requests and percentiles are for requests seen " +
+                     "since it was last added.",
+             eps.getErrorBound());
+    }
+
+    outEndpoints(eps.sorted());
+
+    outFmt("Top %d endpoints by p99 with at least %d requests",
+           numEndpoints, minP99Requests);
+
+    outEndpoints(byP99(eps));
+  }
+
+  private List<SpaceSaving.Counter<String, EndpointInfo>> byP99(
+          final SpaceSaving<String, EndpointInfo> eps) {
+    final var byP99 = new ArrayList<SpaceSaving.Counter<String,
+            EndpointInfo>>();
+    for (final var c: eps.sorted()) {
+      if (c.getValue().getRequests() >= minP99Requests) {
+        byP99.add(c);
+      }
+    }
+
+    byP99.sort(Comparator.comparingLong(
+            (SpaceSaving.Counter<String, EndpointInfo> c) ->
+                    c.getValue().getHistogram()
+                     .getValueAtPercentile(99))
+                         .reversed());
+
+    return byP99;
+  }
+
+  private void outEndpoints(
+          final List<SpaceSaving.Counter<String, EndpointInfo>> eps) {
+    outFmt("%10s %9s %7s %7s %7s  %s",
+           "total ms", "requests", "avg ms", "p99 ms", "max ms",
+           "endpoint");
+
+    int ct = 0;
+    for (final var c: eps) {
+      final var ei = c.getValue();
+      final var h = ei.getHistogram();
+
+      outFmt("%10d %9d %7d %7d %7d  %s",
+             c.getCount(), ei.getRequests(),
+             avg(ei.getTotalMillis(), ei.getRequests()),
+             h.getValueAtPercentile(99), h.getMax(),
+             c.getKey());
+      ct++;
+
+      if (ct >= numEndpoints) {
+        break;
+      }
+    }
+
+    out();
+  }
+
+  // An interval when following may have only long requests
+  private int avg(final long total, final long num) {
+    if (num == 0) {
+      return 0;
+    }
+
+    return (int)(total / num);
+  }
+
   private void outSessionInfo() {
     outFmt("List of ips by average number of requests per session");
     outFmt("ip\t\tNum requests\tAverage");
@@ -181,5 +383,138 @@ public class LogAnalysis extends LogReader {
              ent.getValue().avg());
     }
   }
-}
 
+  /* The figures in the tables above as records - one for each
+     context, endpoint and ip rather than a table.
+   */
+  private void recordResults() {
+    records.start(totalsRecord)
+           .value(totalRequests)
+           .value(totalForwardedRequests)
+           .value(sessions.size())
+           .value(errorLines)
+           .value(getIpCounts().getErrorBound())
+           .value(getLongreqIpCounts().getErrorBound())
+           .value(getEndpoints().getErrorBound());
+    outRecord();
+
+    final Map<String, ContextInfo> byName = new TreeMap<>();
+    contexts.forEach((id, ci) -> byName.put(ci.context, ci));
+
+    for (final var ci: byName.values()) {
+      final var h = ci.getHistogram();
+
+      records.start(contextRecord)
+             .value(ci.context)
+             .value(ci.getSessions())
+             .value(ci.getRequests())
+             .value(ci.getTotalMillis())
+             .value(avg(ci.getTotalMillis(), ci.getRequests()))
+             .value(ci.getSubTrequests())
+             .value(avg(ci.getSubTtotalMillis(), ci.getSubTrequests()));
+
+      for (final double p: percentiles) {
+        records.value(h.getValueAtPercentile(p));
+      }
+
+      records.value(h.getMax());
+
+      for (int i = 0; i < ContextInfo.numMilliBuckets; i++) {
+        records.value(ci.getBucket(i));
+      }
+
+      outRecord();
+    }
+
+    final var eps = getEndpoints();
+    recordEndpoints("total", eps.sorted());
+    recordEndpoints("p99", byP99(eps));
+
+    final int numIps = 20;
+
+    int ct = 0;
+    for (final var c: getIpCounts().sorted()) {
+      records.start(ipRecord)
+             .value(c.getKey())
+             .value(c.getCount())
+             .value(sessions.getSessionCounts(c.getKey()).avg());
+      outRecord();
+      ct++;
+
+      if (ct > numIps) {
+        break;
+      }
+    }
+
+    for (final var ent: sessions.getAllSessionCounts()) {
+      records.start(ipSessionsRecord)
+             .value(ent.getKey())
+             .value(ent.getValue().numRequests())
+             .value(ent.getValue().avg());
+      outRecord();
+    }
+
+    ct = 0;
+    for (final var c: getLongreqIpCounts().sorted()) {
+      records.start(longIpRecord)
+             .value(c.getKey())
+             .value(c.getCount());
+      outRecord();
+      ct++;
+
+      if (ct > numIps) {
+        break;
+      }
+    }
+  }
+
+  private void recordEndpoints(
+          final String by,
+          final List<SpaceSaving.Counter<String, EndpointInfo>> eps) {
+    int ct = 0;
+    for (final var c: eps) {
+      final var ei = c.getValue();
+      final var h = ei.getHistogram();
+
+      records.start(endpointRecord)
+             .value(by)
+             .value(c.getKey())
+             .value(c.getCount())
+             .value(ei.getRequests())
+             .value(avg(ei.getTotalMillis(), ei.getRequests()))
+             .value(h.getValueAtPercentile(99))
+             .value(h.getMax());
+      outRecord();
+      ct++;
+
+      if (ct >= numEndpoints) {
+        break;
+      }
+    }
+  }
+
+  /* Names of the fields of a context record. bucket fields are the
+     number of requests taking less than the given millis - the last
+     is the rest.
+   */
+  private static String[] contextFields() {
+    final var fields = new ArrayList<String>(List.of(
+            "context", "sessions", "requests", "totalMs", "avgMs",
+            "requestsExLast", "avgMsExLast"));
+
+    for (final var label: percentileLabels) {
+      fields.add(label + "Ms");
+    }
+
+    fields.add("maxMs");
+
+    final int last = ContextInfo.numMilliBuckets - 1;
+    for (int i = 0; i < last; i++) {
+      fields.add("lt" + ((i + 1) * ContextInfo.milliBucketSize));
+    }
+
+    fields.add("ge" + (last * ContextInfo.milliBucketSize));
+
+    return fields.toArray(new String[0]);
+  }
+}
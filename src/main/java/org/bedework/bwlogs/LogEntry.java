@@ -6,9 +6,21 @@ package org.bedework.bwlogs;
 import org.bedework.base.ToString;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-/**
+/** A parsed log line. Parsing only records where each field starts
+ * and ends in the line. The field Strings are created the first time
+ * they are asked for, so the many lines we look at and discard cost
+ * very little.
+ *
+ * <p>An entry may be reused for the next line by calling parse
+ * again. Use {@link #copy()} to keep a reused entry.
+ *
+ * <p>Class names and task ids are interned in the Symbols for the
+ * run. The same String is handed out each time and the int id may
+ * be used as a key.
+ *
  * User: mike Date: 1/14/20 Time: 22:20
  */
 public class LogEntry {
@@ -18,24 +30,91 @@ public class LogEntry {
   protected String req;
   protected int curPos; // while parsing
 
-  public Long millis; // time converted to milliseconds
+  public long millis; // milliseconds since the epoch
   public long sinceLastMillis;
   public long sinceStartMillis;
-  public String dt;
-  public String level;
-  public String className;
-  public String taskId;
-  public String logText;
+
+  /* Offsets of the fields in req. The Strings are set on first use or
+     by the setters.
+   */
+  private int levelStart;
+  private int levelEnd;
+  private int classStart;
+  private int classEnd;
+  private int taskStart;
+  private int taskEnd;
+  private int textStart;
+
+  // Only for entries which are parsed - reused for each line
+  private Timestamps timestamps;
+
+  // Ids in symbols - unknown until asked for
+  private static final int unknown = -1;
+
+  private Symbols symbols;
+  private int classSym = unknown;
+  private int taskSym = unknown;
+
+  private String dt;
+  private String level;
+  private String className;
+  private String taskId;
+  private String logText;
 
   public boolean unparsed;
 
   String logName;
 
-  // Sub records - e.g. continuation lines
-  public List<LogEntry> entries = new ArrayList<>();
+  // Sub records - e.g. continuation lines. Most entries have none
+  private List<LogEntry> entries;
   public LogEntry lastAdded;
 
+  public LogEntry() {
+  }
+
+  /**
+   * @param symbols for the run
+   */
+  public LogEntry(final Symbols symbols) {
+    this.symbols = symbols;
+  }
+
+  /**
+   * @return symbols for the run - our own if none were given
+   */
+  protected Symbols symbols() {
+    if (symbols == null) {
+      symbols = new Symbols();
+    }
+
+    return symbols;
+  }
+
+  /** Move this entry to other symbols - e.g. when it is handed to
+   * another reader. The ids change, the Strings don't.
+   *
+   * @param val the new symbols
+   * @return false if already using them
+   */
+  protected boolean rehome(final Symbols val) {
+    if (symbols == val) {
+      return false;
+    }
+
+    // Resolve the names from the old table
+    getClassName();
+    getTaskId();
+
+    symbols = val;
+    classSym = unknown;
+    taskSym = unknown;
+
+    return true;
+  }
+
   public void unparsed(final String req) {
+    reset();
+    this.req = req;
     unparsed = true;
     logText = req;
   }
@@ -47,120 +126,407 @@ public class LogEntry {
   public Integer parse(final String req,
                        final String logName,
                        final String logLevel) {
-    try {
-      this.req = req;
-      this.logName = logName;
+    if (parseHeader(req, logLevel) == null) {
+      return null;
+    }
+
+    this.logName = logName;
+    setSinceMillis();
+
+    if (logName == null) {
+      return curPos;
+    }
+
+    curPos = indexOfName(logName);
+
+    if (curPos < 0) {
+      error("No name found for %s", req);
+      return null;
+    }
+
+    curPos += logName.length() + 1; // skip ":"
+
+    return curPos;
+  }
+
+  /** Parse the date, level, class name and task id. This is done
+   * once for each line and the result handed to whatever wants the
+   * line. The log text is not examined.
+   *
+   * @param req log entry
+   * @param logLevel null or required level
+   * @return position of the log text or null for bad record
+   */
+  public Integer parseHeader(final String req,
+                             final String logLevel) {
+    reset();
+    this.req = req;
+
+    // dt is 0 - 23
+    levelStart = 24;
+    levelEnd = req.indexOf(' ', levelStart);
+    if (levelEnd < 0) {
+      error("Unable to parse %s", req);
+      throw new IllegalArgumentException("No level");
+    }
+    curPos = levelEnd;
+
+    if ((logLevel != null) &&
+            ((levelEnd - levelStart != logLevel.length()) ||
+                     !req.startsWith(logLevel, levelStart))) {
+      return null;
+    }
+
+    if (timestamps == null) {
+      timestamps = new Timestamps();
+    }
 
+    millis = timestamps.logMillis(req);
+    if (millis == Timestamps.invalid) {
+      error("Unable to get millis for %s", req);
+      return null;
+    }
+
+    parseClassName(req);
+    parseTaskId(req);
+
+    if (posValid()) {
+      textStart = curPos;
+    } else {
+      textStart = req.length();
+    }
+
+    return textStart;
+  }
+
+  /** Take the fields from a parsed header. The log text must start
+   * with logName followed by ":".
+   *
+   * @param hdr result of parseHeader
+   * @param logName name at the start of the text
+   * @return position after the name
+   */
+  protected Integer parse(final LogEntry hdr,
+                          final String logName) {
+    hdr.copyTo(this);
+    this.logName = logName;
+    setSinceMillis();
+
+    curPos = textStart + logName.length() + 1; // skip ":"
+
+    return curPos;
+  }
+
+  /** Set the times since the last and first entries.
+   */
+  public void setSinceMillis() {
+    if (startMillis != 0) {
+      sinceLastMillis = millis - lastMillis;
+      sinceStartMillis = millis - startMillis;
+    } else {
+      startMillis = millis;
+    }
+
+    lastMillis = millis;
+  }
+
+  /**
+   * @return a copy of this entry - sharing the line - which may be
+   *         kept while this one is reused
+   */
+  public LogEntry copy() {
+    final var le = new LogEntry();
+
+    copyTo(le);
+    le.unparsed = unparsed;
+    le.logName = logName;
+
+    return le;
+  }
+
+  protected void copyTo(final LogEntry le) {
+    le.req = req;
+    le.symbols = symbols;
+    le.classSym = classSym;
+    le.taskSym = taskSym;
+    le.millis = millis;
+    le.sinceLastMillis = sinceLastMillis;
+    le.sinceStartMillis = sinceStartMillis;
+    le.levelStart = levelStart;
+    le.levelEnd = levelEnd;
+    le.classStart = classStart;
+    le.classEnd = classEnd;
+    le.taskStart = taskStart;
+    le.taskEnd = taskEnd;
+    le.textStart = textStart;
+    le.dt = dt;
+    le.level = level;
+    le.className = className;
+    le.taskId = taskId;
+    le.logText = logText;
+  }
+
+  public String getDt() {
+    if ((dt == null) && (req != null) && (req.length() >= 23)) {
       dt = req.substring(0, 23);
-      curPos = req.indexOf(" ", 24);
-      level = req.substring(24, curPos);
+    }
 
-      if ((logLevel != null) && !logLevel.equals(level)) {
-        return null;
-      }
+    return dt;
+  }
 
-      millis = millis();
-      if (millis == null) {
-        error("Unable to get millis for %s", req);
-        return null;
-      }
+  public void setDt(final String val) {
+    dt = val;
+  }
+
+  public String getLevel() {
+    if ((level == null) && (levelEnd > levelStart)) {
+      level = req.substring(levelStart, levelEnd);
+    }
+
+    return level;
+  }
+
+  /**
+   * @param val level to test
+   * @return true if this entry has the given level
+   */
+  public boolean levelIs(final String val) {
+    if (level != null) {
+      return level.equals(val);
+    }
+
+    return (levelEnd - levelStart == val.length()) &&
+            req.startsWith(val, levelStart);
+  }
+
+  public String getClassName() {
+    if ((className == null) && (classEnd > classStart)) {
+      className = symbols().classNames.name(getClassSym());
+    }
+
+    return className;
+  }
 
-      if (startMillis != 0) {
-        sinceLastMillis = millis - lastMillis;
-        sinceStartMillis = millis - startMillis;
+  public void setClassName(final String val) {
+    className = val;
+    classSym = unknown;
+  }
+
+  /**
+   * @return id of the class name in the run's symbols
+   */
+  public int getClassSym() {
+    if (classSym == unknown) {
+      if (className != null) {
+        classSym = symbols().classNames.intern(className);
+      } else if (classEnd > classStart) {
+        classSym = symbols().classNames.intern(req, classStart, classEnd);
       } else {
-        startMillis = millis;
+        classSym = SymbolTable.none;
       }
+    }
+
+    return classSym;
+  }
+
+  /**
+   * @param val class name to test
+   * @return true if this entry has the given class name
+   */
+  public boolean classNameIs(final String val) {
+    if ((className != null) || (classEnd <= classStart)) {
+      return val.equals(className);
+    }
+
+    return (classEnd - classStart == val.length()) &&
+            req.startsWith(val, classStart);
+  }
+
+  /**
+   * @param prefixes to test
+   * @return true if the class name starts with one of the prefixes
+   */
+  public boolean classNameMatches(final PrefixSet prefixes) {
+    if ((className != null) || (classEnd <= classStart)) {
+      return prefixes.matches(className);
+    }
+
+    return prefixes.matches(req, classStart, classEnd);
+  }
+
+  public String getTaskId() {
+    if ((taskId == null) && (taskEnd > taskStart)) {
+      taskId = symbols().taskIds.name(getTaskSym());
+    }
 
-      lastMillis = millis;
+    return taskId;
+  }
 
-      className = className(req);
-      taskId = taskId(req);
+  public void setTaskId(final String val) {
+    taskId = val;
+    taskSym = unknown;
+  }
 
-      if (posValid()) {
-        logText = req.substring(curPos);
+  /**
+   * @return id of the task id in the run's symbols
+   */
+  public int getTaskSym() {
+    if (taskSym == unknown) {
+      if (taskId != null) {
+        taskSym = symbols().taskIds.intern(taskId);
+      } else if (taskEnd > taskStart) {
+        taskSym = symbols().taskIds.intern(req, taskStart, taskEnd);
       } else {
-        logText = "";
+        taskSym = SymbolTable.none;
       }
+    }
 
-      if (logName == null) {
-        return curPos;
-      }
+    return taskSym;
+  }
 
-      curPos = req.indexOf(logName + ":");
+  /**
+   * @param val task id to test
+   * @return true if this entry has the given task id
+   */
+  public boolean taskIdIs(final String val) {
+    if ((taskId != null) || (taskEnd <= taskStart)) {
+      return val.equals(taskId);
+    }
 
-      if (curPos < 0) {
-        error("No name found for %s", req);
-        return null;
-      }
+    return (taskEnd - taskStart == val.length()) &&
+            req.startsWith(val, taskStart);
+  }
 
-      curPos += logName.length() + 2; // skip ":"
+  public String getLogText() {
+    if ((logText == null) && (req != null) && !unparsed) {
+      logText = req.substring(textStart);
+    }
 
-      //if (!logName.equals(field())) {
-      //  error("Expected %s for %s", logName, req);
-      //  return null;
-      //}
+    return logText;
+  }
 
-      return curPos;
-    } catch (final Throwable t) {
-      error("Unable to parse %s", req);
-      throw t;
+  public void setLogText(final String val) {
+    logText = val;
+  }
+
+  /**
+   * @param prefix to test
+   * @return true if the log text starts with prefix
+   */
+  public boolean logTextStartsWith(final String prefix) {
+    if ((logText != null) || unparsed || (req == null)) {
+      return (logText != null) && logText.startsWith(prefix);
+    }
+
+    return req.startsWith(prefix, textStart);
+  }
+
+  /**
+   * @param prefixes to test
+   * @return true if the log text starts with one of the prefixes
+   */
+  public boolean logTextMatches(final PrefixSet prefixes) {
+    if ((logText != null) || unparsed || (req == null)) {
+      return prefixes.matches(logText);
     }
+
+    return prefixes.matches(req, textStart, req.length());
   }
 
   public void addLogEntry(final LogEntry val) {
+    if (entries == null) {
+      entries = new ArrayList<>();
+    }
     entries.add(val);
     lastAdded = val;
   }
 
-  public boolean sameTask(final LogEntry otherEntry) {
-    if (!taskId.equals(otherEntry.taskId)) {
-      out("taskId mismatch");
-      return false;
+  /**
+   * @return sub entries - never null
+   */
+  public List<LogEntry> getEntries() {
+    if (entries == null) {
+      return Collections.emptyList();
     }
 
-    return true;
+    return entries;
   }
 
-  public Long millis() {
-    try {
-      // 2019-01-04 00:00:11,742 ...
-      // 0123456789012345678901234
-
-      final long hrs = Integer.parseInt(req.substring(11, 13));
-      final long mins = Integer.parseInt(req.substring(14, 16));
-      final long secs = Integer.parseInt(req.substring(17, 19));
-      final long millis = Integer.parseInt(req.substring(20, 23));
+  public boolean hasEntries() {
+    return (entries != null) && !entries.isEmpty();
+  }
 
-      return ((((hrs * 60) + mins) * 60) + secs) * 1000 + millis;
-    } catch (final Throwable ignored) {
-      return null;
+  public boolean sameTask(final LogEntry otherEntry) {
+    if (!getTaskId().equals(otherEntry.getTaskId())) {
+      out("taskId mismatch");
+      return false;
     }
+
+    return true;
   }
 
   protected boolean posValid() {
     return (curPos >= 0) && (curPos < req.length());
   }
 
-  private String className(final String ln) {
-    int cnPos = ln.indexOf("[");
+  private void reset() {
+    millis = 0;
+    sinceLastMillis = 0;
+    sinceStartMillis = 0;
+    levelStart = 0;
+    levelEnd = 0;
+    classStart = 0;
+    classEnd = 0;
+    taskStart = 0;
+    taskEnd = 0;
+    textStart = 0;
+    classSym = unknown;
+    taskSym = unknown;
+    dt = null;
+    level = null;
+    className = null;
+    taskId = null;
+    logText = null;
+    unparsed = false;
+    entries = null;
+    lastAdded = null;
+  }
+
+  private void parseClassName(final String ln) {
+    int cnPos = ln.indexOf('[');
     if (cnPos < 0) {
-      return null;
+      return;
     }
 
     cnPos ++;
 
-    curPos = ln.indexOf("]", cnPos);
+    curPos = ln.indexOf(']', cnPos);
 
     if (curPos < 0) {
-      return null;
+      return;
     }
 
-    final var res = ln.substring(cnPos, curPos);
+    classStart = cnPos;
+    classEnd = curPos;
 
     curPos++;
+  }
+
+  /* Find logName followed by ":"
+   */
+  private int indexOfName(final String name) {
+    int pos = req.indexOf(name);
 
-    return res;
+    while (pos >= 0) {
+      final int colon = pos + name.length();
+      if ((colon < req.length()) && (req.charAt(colon) == ':')) {
+        return pos;
+      }
+
+      pos = req.indexOf(name, pos + 1);
+    }
+
+    return -1;
   }
 
   // Expect this next
@@ -191,50 +557,81 @@ public class LogEntry {
   // Needed because ipv6 addresses have ':'
   protected String field(final String nextFieldStart) {
     final int start = curPos;
-    final int end = req.indexOf(":" + nextFieldStart, start);
+    final int end = fieldEnd(nextFieldStart);
+
     if (end < 0) {
-      error("No end found for %s", req);
       return null;
     }
 
-    final String res = req.substring(start, end);
+    return req.substring(start, end);
+  }
+
+  /** As field but the value is interned
+   *
+   * @param table for the value
+   * @param nextFieldStart what the next field starts with
+   * @return id of the value or -1 if there's no field
+   */
+  protected int symField(final SymbolTable table,
+                         final String nextFieldStart) {
+    final int start = curPos;
+    final int end = fieldEnd(nextFieldStart);
+
+    if (end < 0) {
+      return -1;
+    }
+
+    return table.intern(req, start, end);
+  }
+
+  private int fieldEnd(final String nextFieldStart) {
+    int end = req.indexOf(':', curPos);
+
+    while ((end >= 0) && !req.startsWith(nextFieldStart, end + 1)) {
+      end = req.indexOf(':', end + 1);
+    }
+
+    if (end < 0) {
+      error("No end found for %s", req);
+      return -1;
+    }
+
     curPos = end + 1; // Skip only the ":"
 
-    return res;
+    return end;
   }
 
-  private String taskId(final String ln) {
+  private void parseTaskId(final String ln) {
     //final int taskIdPos = ln.indexOf("] (default");
     int taskIdPos = ln.indexOf("] (");
     if (taskIdPos < 0) {
-      return null;
+      return;
     }
 
     taskIdPos += 3;
 
-    curPos = ln.indexOf(")", taskIdPos);
+    curPos = ln.indexOf(')', taskIdPos);
 
     if (curPos < 0) {
-      return null;
+      return;
     }
 
-    final var res = ln.substring(taskIdPos, curPos);
+    taskStart = taskIdPos;
+    taskEnd = curPos;
 
     curPos += 2; // skip blank after taskid
-
-    return res;
   }
 
   protected void error(final String format, final Object... args) {
-    System.out.println(String.format(format, args));
+    Output.fmt(format, args);
   }
 
   protected void out(final String format, final Object... args) {
-    System.out.println(String.format(format, args));
+    Output.fmt(format, args);
   }
 
   protected void toStringSegment(final ToString ts) {
-    ts.append("taskId", taskId);
+    ts.append("taskId", getTaskId());
   }
 
   public String toString() {
@@ -0,0 +1,100 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/** Find the log files named by a path which may be a single file,
+ * a directory or a glob pattern such as /var/log/server.log*
+ */
+public class LogFiles {
+  private record TimedPath(Path path, String firstDt) {}
+
+  /** Files are returned in order of the timestamp on the first line.
+   * Files with no timestamp come first in name order.
+   *
+   * @param logPathName file, directory or glob
+   * @return list of paths - never empty
+   * @throws IOException on error or no files found
+   */
+  public static List<Path> find(final String logPathName)
+          throws IOException {
+    final List<Path> paths = new ArrayList<>();
+    final Path logPath = Paths.get(logPathName);
+
+    if (Files.isDirectory(logPath)) {
+      try (final var files = Files.list(logPath)) {
+        files.filter(LogFiles::isLogFile).forEach(paths::add);
+      }
+    } else if (isGlob(logPath.getFileName().toString())) {
+      var dir = logPath.getParent();
+      if (dir == null) {
+        dir = Paths.get(".");
+      }
+
+      final PathMatcher matcher = dir.getFileSystem().getPathMatcher(
+              "glob:" + logPath.getFileName());
+
+      try (final var files = Files.list(dir)) {
+        files.filter(p -> matcher.matches(p.getFileName()) &&
+                             isLogFile(p))
+             .forEach(paths::add);
+      }
+    } else if (Files.exists(logPath)) {
+      return List.of(logPath);
+    }
+
+    if (paths.isEmpty()) {
+      throw new IOException("No log files found for " + logPathName);
+    }
+
+    final List<TimedPath> timed = new ArrayList<>();
+    for (final var p: paths) {
+      timed.add(new TimedPath(p, firstDt(p)));
+    }
+
+    timed.sort(Comparator.comparing(TimedPath::firstDt)
+                         .thenComparing(TimedPath::path));
+
+    return timed.stream().map(TimedPath::path).toList();
+  }
+
+  private static boolean isGlob(final String name) {
+    return (name.indexOf('*') >= 0) ||
+            (name.indexOf('?') >= 0) ||
+            (name.indexOf('[') >= 0) ||
+            (name.indexOf('{') >= 0);
+  }
+
+  private static boolean isLogFile(final Path p) {
+    return Files.isRegularFile(p) &&
+            !p.getFileName().toString().startsWith(".");
+  }
+
+  /* Timestamp from the first line that starts with one.
+   */
+  private static String firstDt(final Path p) throws IOException {
+    try (final var lines = LineReader.open(p)) {
+      for (int i = 0; i < 100; i++) {
+        final var line = lines.next();
+        if (line == null) {
+          break;
+        }
+
+        if ((line.length() > 23) && line.startsWith("20")) {
+          return line.toString().substring(0, 23);
+        }
+      }
+    }
+
+    return "";
+  }
+}
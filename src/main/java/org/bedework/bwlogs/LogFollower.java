@@ -0,0 +1,316 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/** Follow a growing log - like tail -f. Every interval we display the
+ * analysis for the lines which arrived during that interval. Requests
+ * still in flight at the end of an interval are carried over to the
+ * next.
+ *
+ * <p>Rotation is detected by the file at the path changing identity
+ * (inode) or getting shorter. We finish reading the old file before
+ * starting on the new one.
+ *
+ * <p>If a state file is given the offset and the in-flight requests
+ * are saved to it at the end of every interval. A restarted follower
+ * carries on from there rather than reading the whole log.
+ */
+public class LogFollower {
+  private static final int readSize = 1024 * 1024;
+  private static final long pollMillis = 1000;
+
+  private final Path logPath;
+  private final int intervalSecs;
+  private final Path statePath;
+  private final Supplier<LogAnalysis> newAnalysis;
+  private final boolean showLong;
+  private final boolean showMissingTaskIds;
+
+  private FileChannel channel;
+  private String fileKey;
+  private long offset;  // Start of first unprocessed byte
+
+  private ByteBuffer buf = ByteBuffer.allocate(readSize);
+  private final LogLine line = new LogLine();
+
+  private LogAnalysis analysis;
+  private LocalDateTime intervalStart;
+
+  // Null for text output
+  private final RecordWriter records = Output.newRecordWriter();
+
+  // Precedes the records for each interval
+  static final RecordType intervalRecord =
+          RecordType.of("interval", "start", "end");
+
+  /**
+   * @param logPathName path to log
+   * @param intervalSecs how often to display results
+   * @param statePathName null or path of file to save state in
+   * @param newAnalysis supplies the analysis for each interval
+   * @param showLong display long requests
+   * @param showMissingTaskIds display request-outs with no request
+   */
+  public LogFollower(final String logPathName,
+                     final int intervalSecs,
+                     final String statePathName,
+                     final Supplier<LogAnalysis> newAnalysis,
+                     final boolean showLong,
+                     final boolean showMissingTaskIds) {
+    logPath = Paths.get(logPathName);
+    this.intervalSecs = intervalSecs;
+    if (statePathName == null) {
+      statePath = null;
+    } else {
+      statePath = Paths.get(statePathName);
+    }
+    this.newAnalysis = newAnalysis;
+    this.showLong = showLong;
+    this.showMissingTaskIds = showMissingTaskIds;
+  }
+
+  /** Runs until the process is killed.
+   */
+  public void follow() {
+    try {
+      newInterval(null);
+      open();
+
+      long nextResults = System.currentTimeMillis() +
+              intervalSecs * 1000L;
+
+      while (true) {
+        readAvailable();
+
+        if (rotated()) {
+          // Finish the old file then switch
+          readAvailable();
+          channel.close();
+          channel = null;
+          open();
+          continue;
+        }
+
+        if (System.currentTimeMillis() >= nextResults) {
+          results();
+          nextResults += intervalSecs * 1000L;
+        }
+
+        Thread.sleep(pollMillis);
+      }
+    } catch (final Throwable t) {
+      t.printStackTrace();
+    }
+  }
+
+  private void newInterval(final LogAnalysis prev) {
+    analysis = newAnalysis.get();
+    analysis.showLong = showLong;
+    analysis.showMissingTaskIds = showMissingTaskIds;
+
+    if (prev != null) {
+      analysis.takeInFlight(prev);
+    }
+
+    intervalStart = LocalDateTime.now();
+  }
+
+  private void results() throws IOException {
+    final var fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    final var start = intervalStart.format(fmt);
+    final var end = LocalDateTime.now().format(fmt);
+
+    if (records != null) {
+      Output.record(records.start(intervalRecord)
+                           .value(start).value(end).end());
+      analysis.results();
+    } else {
+      Output.fmt("================ %s to %s ================",
+                 start, end);
+      analysis.results();
+      Output.line("");
+    }
+
+    // Show each interval as it ends
+    Output.flush();
+
+    newInterval(analysis);
+    saveState();
+  }
+
+  /* Open the file at the path. If we have saved state for it carry on
+     from where we were. Otherwise start at the beginning.
+   */
+  private void open() throws IOException {
+    while (!Files.exists(logPath)) {
+      try {
+        Thread.sleep(pollMillis);
+      } catch (final InterruptedException ie) {
+        throw new IOException(ie);
+      }
+    }
+
+    channel = FileChannel.open(logPath, StandardOpenOption.READ);
+    final var key = fileKey(logPath);
+    buf.clear();
+
+    if ((fileKey == null) && (statePath != null) &&
+            Files.exists(statePath)) {
+      restoreState(key);
+      return;
+    }
+
+    fileKey = key;
+    offset = 0;
+  }
+
+  private boolean rotated() throws IOException {
+    if (!Files.exists(logPath)) {
+      return false; // Wait for new file
+    }
+
+    if (!fileKey.equals(fileKey(logPath))) {
+      return true;
+    }
+
+    if (Files.size(logPath) < offset + buf.position()) {
+      // Truncated - same file
+      return true;
+    }
+
+    return false;
+  }
+
+  /* Read and process all complete lines. Any partial line is kept at
+     the start of buf.
+   */
+  private void readAvailable() throws IOException {
+    while (true) {
+      if (!buf.hasRemaining()) {
+        // Line longer than buffer
+        final var bigger = ByteBuffer.allocate(buf.capacity() * 2);
+        buf.flip();
+        bigger.put(buf);
+        buf = bigger;
+      }
+
+      final int n = channel.read(buf, offset + buf.position());
+      if (n <= 0) {
+        return;
+      }
+
+      final byte[] b = buf.array();
+      final int end = buf.position();
+      int start = 0;
+
+      for (int i = 0; i < end; i++) {
+        if (b[i] != '\n') {
+          continue;
+        }
+
+        int len = i - start;
+        if ((len > 0) && (b[start + len - 1] == '\r')) {
+          len--;
+        }
+
+        line.set(buf, start, len, offset + start);
+        analysis.processLine(line);
+        start = i + 1;
+      }
+
+      // Keep the partial line
+      offset += start;
+      System.arraycopy(b, start, b, 0, end - start);
+      buf.position(end - start);
+    }
+  }
+
+  private String fileKey(final Path p) throws IOException {
+    final var attrs = Files.readAttributes(p,
+                                           BasicFileAttributes.class);
+    final var key = attrs.fileKey();
+
+    if (key != null) {
+      return key.toString();
+    }
+
+    return String.valueOf(attrs.creationTime().toMillis());
+  }
+
+  private void saveState() throws IOException {
+    if (statePath == null) {
+      return;
+    }
+
+    final var props = new Properties();
+    props.setProperty("fileKey", fileKey);
+    props.setProperty("offset", String.valueOf(offset));
+
+    int i = 0;
+    for (final var rs: analysis.tasks.values()) {
+      if (rs.req != null) {
+        props.setProperty("task." + i, rs.req);
+        i++;
+      }
+    }
+
+    final var tmp = statePath.resolveSibling(
+            statePath.getFileName() + ".tmp");
+    try (final Writer wtr = Files.newBufferedWriter(tmp)) {
+      props.store(wtr, "bw-logs follow state for " + logPath);
+    }
+
+    Files.move(tmp, statePath,
+               StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void restoreState(final String key) throws IOException {
+    final var props = new Properties();
+    try (final Reader rdr = Files.newBufferedReader(statePath)) {
+      props.load(rdr);
+    }
+
+    fileKey = key;
+
+    if (!key.equals(props.getProperty("fileKey"))) {
+      // Rotated while we were away - start on the new file
+      offset = 0;
+      Output.line("Log rotated - state discarded");
+      return;
+    }
+
+    offset = Long.parseLong(props.getProperty("offset", "0"));
+    if (offset > Files.size(logPath)) {
+      offset = 0;
+      return;
+    }
+
+    for (final var name: props.stringPropertyNames()) {
+      if (name.startsWith("task.")) {
+        analysis.restoreInFlight(props.getProperty(name));
+      }
+    }
+
+    Output.fmt("Resuming at offset %d with %d requests in flight",
+               offset, analysis.tasks.size());
+  }
+}
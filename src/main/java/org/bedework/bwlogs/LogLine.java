@@ -0,0 +1,124 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** A lightweight view of a single line held in a byte buffer.
+ *
+ * <p>The readers hand out the same object for every line so it is
+ * only valid until the next call to {@link LineReader#next()}.
+ * Checks such as {@link #regionMatches(int, String)} work directly
+ * on the bytes. A String is only built if {@link #toString()} is
+ * called.
+ *
+ * <p>All the markers we look for (timestamps, levels etc) are ASCII
+ * so comparing bytes against chars is safe for those.
+ */
+public class LogLine {
+  private ByteBuffer buf;
+  private int start;
+  private int len;
+  private long offset;
+  private String str;
+
+  private byte[] scratch = new byte[1024];
+
+  /** Point this view at a new line.
+   *
+   * @param buf holds the bytes
+   * @param start index in buf of first byte
+   * @param len number of bytes - excludes terminator
+   * @param offset position of the line in the file
+   */
+  void set(final ByteBuffer buf,
+           final int start,
+           final int len,
+           final long offset) {
+    this.buf = buf;
+    this.start = start;
+    this.len = len;
+    this.offset = offset;
+    str = null;
+  }
+
+  /**
+   * @return number of bytes in line
+   */
+  public int length() {
+    return len;
+  }
+
+  /**
+   * @return byte offset of the start of this line in the file
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @param i index
+   * @return byte at index
+   */
+  public byte byteAt(final int i) {
+    return buf.get(start + i);
+  }
+
+  /**
+   * @param ascii to test
+   * @return true if line starts with the given ASCII string
+   */
+  public boolean startsWith(final String ascii) {
+    return regionMatches(0, ascii);
+  }
+
+  /**
+   * @param pos in line
+   * @param ascii to test
+   * @return true if the bytes at pos match the given ASCII string
+   */
+  public boolean regionMatches(final int pos,
+                               final String ascii) {
+    final int alen = ascii.length();
+
+    if ((pos < 0) || (pos + alen > len)) {
+      return false;
+    }
+
+    final int bpos = start + pos;
+    for (int i = 0; i < alen; i++) {
+      if (buf.get(bpos + i) != (byte)ascii.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /** Decode the line. The result is cached until the view moves.
+   *
+   * @return line as a String
+   */
+  public String toString() {
+    if (str != null) {
+      return str;
+    }
+
+    if (buf.hasArray()) {
+      str = new String(buf.array(), buf.arrayOffset() + start, len,
+                       StandardCharsets.UTF_8);
+      return str;
+    }
+
+    if (scratch.length < len) {
+      scratch = new byte[Math.max(len, scratch.length * 2)];
+    }
+
+    buf.get(start, scratch, 0, len);
+    str = new String(scratch, 0, len, StandardCharsets.UTF_8);
+
+    return str;
+  }
+}
@@ -3,11 +3,13 @@
 */
 package org.bedework.bwlogs;
 
-import java.io.FileReader;
-import java.io.LineNumberReader;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /** Q&D log analyzer. Here so we can run it from the cli
  *
@@ -19,6 +21,10 @@ import java.util.Map;
  *
  * <pre>2019-03-15 15:20:22,912 INFO  [org.bedework.webcommon.BwCallbackImpl] (default task-4) REQUEST-OUT:MYISJK5RJkg3NkoW6XKCJpfG_R6v106z83Xg9Nnz:bwclientcb:charset=UTF-8:10.0.250.197:http://calendar.yale.edu/cal/event/eventView.do;jsessionid=yb4n2K2XFwM1yJV0RCt0k2FHUx2EQP0uEVAt7Nlk.ip-10-0-10-189?b=de&href=%2Fpublic%2Fcals%2FMainCal%2FCAL-ff808081-6831cab0-0168-33304e60-00003754.ics - Referer:NONE - X-Forwarded-For:54.70.40.11</pre>
  *
+ * <p>The log path may name a single file, a directory or a glob. The
+ * files are processed in time order as if they were one log. Where
+ * the reader allows it they are parsed in parallel then merged.
+ *
  * User: mike Date: 10/23/22 Time: 00:31
  */
 public abstract class LogReader {
@@ -28,19 +34,79 @@ public abstract class LogReader {
   boolean showLong;
   boolean showMissingTaskIds;
 
+  // Precision of the latency histograms
+  protected int histogramBits = LatencyHistogram.defaultBits;
+
+  public static final int defaultEndpointBudget = 200;
+
+  // Number of endpoint templates we track
+  protected int endpointBudget = defaultEndpointBudget;
+
+  // Request times by endpoint template - heaviest by total time
+  private SpaceSaving<String, EndpointInfo> endpoints;
+
   protected long unterminatedTask;
 
-  protected final Map<String, ReqInOutLogEntry> tasks = new HashMap<>();
+  // Strings we see over and over mapped to ids for the maps below
+  protected final Symbols symbols = new Symbols();
+
+  // key is task id symbol
+  protected final SymbolMap<ReqInOutLogEntry> tasks = new SymbolMap<>();
+
+  protected final Sessions sessions = new Sessions(symbols);
+
+  // key is context symbol
+  protected final SymbolMap<ContextInfo> contexts = new SymbolMap<>();
+
+  public static final int defaultIpBudget = 10000;
+
+  // Number of ips we count
+  protected int ipBudget = defaultIpBudget;
+
+  // Count of requests by ip - heaviest only
+  private SpaceSaving<String, Void> ipCounts;
+
+  private SpaceSaving<String, Void> longreqIpCounts;
+
+  /* When one of a number of files is being parsed on its own we save
+     the output and the things we can't resolve until the files are
+     merged in order. See FilePart.
+   */
+  private FilePart part;
 
-  protected final Sessions sessions = new Sessions();
+  final String wildflyStartClass = "org.jboss.as";
+  final String wildflyStartTask = "Controller Boot Thread";
+  final String wildflyStartText = "WFLYSRV0025";
 
-  protected final Map<String, ContextInfo> contexts = new HashMap<>();
+  // Parsed once for each line and handed to whatever wants the line
+  private final LogEntry header = new LogEntry(symbols);
 
-  protected static Map<String, Integer> longreqIpMap = new HashMap<>();
+  /* Offsets in the file of the start of the line being processed and
+     of the next line. Only known for uncompressed files.
+   */
+  protected long lineStart;
+  protected long lineEnd;
 
-  final String wildflyStart = "[org.jboss.as] (Controller Boot Thread) WFLYSRV0025";
+  // True if we're reading only some regions of the file
+  protected boolean inRegions;
 
-  public abstract void processRecord(final String s);
+  // Null for text output
+  protected final RecordWriter records = Output.newRecordWriter();
+
+  static final RecordType longRequestRecord =
+          RecordType.of("longRequest", "ip", "taskId", "millis",
+                        "start", "end", "request");
+
+  /** Called for lines other than INFO.
+   *
+   * @param s the line
+   * @param le the parsed header or null if s does not start with a
+   *           date - e.g. a continuation line. Unparsed if s could
+   *           not be parsed. Reused for the next line - copy() to
+   *           keep it.
+   */
+  public abstract void processRecord(final String s,
+                                     final LogEntry le);
 
   public abstract void processInfo(final ReqInOutLogEntry rs);
 
@@ -57,197 +123,652 @@ public abstract class LogReader {
     this.showMissingTaskIds = showMissingTaskIds;
 
     try {
-      final var logPath = Paths.get(logPathName);
+      final var paths = LogFiles.find(logPathName);
 
-      final var logFile = logPath.toFile();
+      final LogReader first;
+      if (paths.size() > 1) {
+        first = newPartReader();
+      } else {
+        first = null;
+      }
 
-      final var lnr = new LineNumberReader(new FileReader(logFile));
+      if (first != null) {
+        processParallel(paths, first);
+      } else {
+        for (final var path: paths) {
+          processFile(path);
+        }
+      }
 
-      while (true) {
-        final var s = lnr.readLine();
+      results();
+    } catch (final Throwable t) {
+      t.printStackTrace();
+    }
+  }
 
-        if (s == null) {
-          break;
-        }
+  /** Readers which return a reader here have their files parsed in
+   * parallel. Only possible if all output is produced by results() -
+   * the reader must override merge if it has its own state.
+   *
+   * @return a new reader of the same kind to parse one file of many
+   *         or null if the files must be parsed in order
+   */
+  protected LogReader newPartReader() {
+    return null;
+  }
 
-        if (dumpIndented) {
-          // dump the rest of some formatted output.
-          if (s.startsWith(" ")) {
-            out(s);
-            continue;
-          }
+  protected void processFile(final Path path) throws IOException {
+    try (final var lines = LineReader.open(path)) {
+      processLines(lines);
+    }
+  }
 
-          dumpIndented = false;
-        }
+  /** Process only the given regions of an uncompressed file - e.g.
+   * those a SessionIndex says have the requests we want. Requests in
+   * flight are forgotten at the start of each region.
+   *
+   * @param path of file
+   * @param regions start and end offset of each region in order.
+   *                Each start is the start of a line.
+   * @throws IOException on read error
+   */
+  protected void processRegions(final Path path,
+                                final long[] regions)
+          throws IOException {
+    inRegions = true;
+
+    for (int i = 0; i < regions.length; i += 2) {
+      startRegion();
+
+      try (final var lines = new MappedLineReader(
+              path, regions[i], regions[i + 1],
+              MappedLineReader.defaultWindowSize)) {
+        processLines(lines);
+      }
+    }
 
-        if (infoLine(s)) {
-          doInfo(s);
-          continue;
-        }
+    inRegions = false;
+  }
 
-        processRecord(s);
+  /** Process only the part of an uncompressed file with lines
+   * timestamped from margin before the first time starting with
+   * dtPrefix to margin after the last - found with a LogSeek. The
+   * margin before picks up the REQUEST lines of tasks in flight at the
+   * start and the margin after the REQUEST-OUT lines of those still in
+   * flight at the end.
+   *
+   * @param path of file
+   * @param dtPrefix start of the timestamps wanted
+   * @param marginMillis longest expected request
+   * @throws IOException on read error
+   */
+  protected void processTimeRegion(final Path path,
+                                   final String dtPrefix,
+                                   final long marginMillis)
+          throws IOException {
+    final long[] region = new long[2];
+
+    try (final var seek = new LogSeek(path)) {
+      final long from = seek.findFrom(dtPrefix);
+      if (from == seek.getSize()) {
+        // Nothing at or after the time
+        return;
+      }
+
+      region[0] = seek.find(seek.millisAt(from) - marginMillis);
 
-        checkErrorLine(s);
+      final long after = seek.findAfter(dtPrefix);
+      if (after == seek.getSize()) {
+        region[1] = after;
+      } else {
+        region[1] = seek.find(seek.millisAt(after) + marginMillis);
       }
+    }
 
-      results();
-    } catch (final Throwable t) {
-      t.printStackTrace();
+    processRegions(path, region);
+  }
+
+  /** Called before each region is processed
+   */
+  protected void startRegion() {
+    tasks.clear();
+  }
+
+  private void processLines(final LineReader lines) throws IOException {
+    final MappedLineReader mapped;
+    if (lines instanceof MappedLineReader) {
+      mapped = (MappedLineReader)lines;
+    } else {
+      mapped = null;
+    }
+
+    while (true) {
+      final var line = lines.next();
+
+      if (line == null) {
+        break;
+      }
+
+      if (mapped != null) {
+        lineStart = line.getOffset();
+        lineEnd = mapped.getPosition();
+      }
+
+      processLine(line);
     }
   }
 
-  private void doInfo(final String s) {
-    if (wildflyStart(s)) {
-      // Wildfly restarted
-      tasks.clear();
-      return;
+  /* Parse each file in its own task then merge the results in time
+     order. Requests are paired within a file. A REQUEST-OUT at the
+     start of a file whose REQUEST is in an earlier file is paired up
+     when the files are merged.
+   */
+  private void processParallel(final List<Path> paths,
+                               final LogReader first) {
+    final List<FileTask> fileTasks = new ArrayList<>();
+
+    for (final var path: paths) {
+      final LogReader rdr;
+      if (fileTasks.isEmpty()) {
+        rdr = first;
+      } else {
+        rdr = newPartReader();
+      }
+
+      rdr.showLong = showLong;
+      rdr.showMissingTaskIds = showMissingTaskIds;
+      rdr.histogramBits = histogramBits;
+      rdr.endpointBudget = endpointBudget;
+      rdr.ipBudget = ipBudget;
+      rdr.part = new FilePart();
+
+      final var task = new FileTask(rdr, path);
+      fileTasks.add(task);
+      ForkJoinPool.commonPool().execute(task);
     }
 
-    final var sessionInfo = sessions.trySessionStart(s);
-    if (sessionInfo != null) {
-      return;
+    for (final var task: fileTasks) {
+      merge(task.join());
+    }
+  }
+
+  private static class FileTask extends RecursiveTask<LogReader> {
+    // Tasks are never serialized
+    private static final long serialVersionUID = 1L;
+
+    private final transient LogReader rdr;
+    private final transient Path path;
+
+    FileTask(final LogReader rdr,
+             final Path path) {
+      this.rdr = rdr;
+      this.path = path;
+    }
+
+    @Override
+    protected LogReader compute() {
+      try {
+        rdr.processFile(path);
+      } catch (final IOException ioe) {
+        throw new RuntimeException(ioe);
+      }
+
+      return rdr;
     }
+  }
 
-    var rs = tryRequestLine(s);
+  /* What we need to know about the start and end of a file parsed on
+     its own to merge it with the files before it.
+   */
+  private static class FilePart {
+    // Output saved until merge
+    final List<String> deferredOut = new ArrayList<>();
 
-    if (rs != null) {
-      lastReqline = rs;
+    // Saw a wildfly restart
+    boolean restarted;
 
-      final var mapRs = tasks.get(rs.taskId);
+    // Task id symbols seen before any restart
+    final BitSet seenTasks = new BitSet();
+
+    // REQUEST-OUTs at the start with no REQUEST in this file
+    final List<HeadOut> headOuts = new ArrayList<>();
+
+    // Task id symbols where the first thing we saw was a REQUEST
+    final BitSet headIns = new BitSet();
+  }
 
-      if (mapRs != null) {
+  private record HeadOut(String ln, ReqInOutLogEntry rs) {}
+
+  /** Merge in the results from a reader which parsed the next file.
+   * Subclasses with their own state should override and call this.
+   * The reader has its own symbols so ids are mapped by name.
+   *
+   * @param rdr reader which parsed the file
+   */
+  protected void merge(final LogReader rdr) {
+    final var filePart = rdr.part;
+
+    for (final var ho: filePart.headOuts) {
+      ho.rs.rehome(symbols);
+      pairRequestOut(ho.ln, ho.rs);
+    }
+
+    for (int i = filePart.headIns.nextSetBit(0); i >= 0;
+         i = filePart.headIns.nextSetBit(i + 1)) {
+      final var taskSym =
+              symbols.taskIds.lookup(rdr.symbols.taskIds.name(i));
+
+      if (tasks.remove(taskSym) != null) {
         // No request-out message
         unterminatedTask++;
       }
+    }
 
-      tasks.put(rs.taskId, rs);
+    if (filePart.restarted) {
+      tasks.clear();
+    }
+
+    takeInFlight(rdr);
+
+    for (final var ln: filePart.deferredOut) {
+      Output.record(ln);
+    }
+
+    if (rdr.lastReqline != null) {
+      lastReqline = rdr.lastReqline;
+    }
 
-      // See if this is new session
-      sessions.requestIn(rs.sessionId, rs.ip);
+    errorLines += rdr.errorLines;
+    unterminatedTask += rdr.unterminatedTask;
+
+    sessions.add(rdr.sessions);
+
+    rdr.contexts.forEach((id, ci) ->
+            contexts.computeIfAbsent(symbols.contexts.intern(ci.context),
+                                     k -> new ContextInfo(ci.context,
+                                                          histogramBits))
+                    .add(ci));
+
+    if (rdr.endpoints != null) {
+      getEndpoints().add(rdr.endpoints);
+    }
+
+    if (rdr.ipCounts != null) {
+      getIpCounts().add(rdr.ipCounts);
+    }
 
+    if (rdr.longreqIpCounts != null) {
+      getLongreqIpCounts().add(rdr.longreqIpCounts);
+    }
+  }
+
+  /** Take over the requests still in flight in another reader - e.g.
+   * the one used for the previous interval when following a log.
+   *
+   * @param rdr the other reader
+   */
+  protected void takeInFlight(final LogReader rdr) {
+    rdr.tasks.forEach((id, rs) -> {
+      rs.rehome(symbols);
+      tasks.put(rs.getTaskSym(), rs);
+    });
+  }
+
+  /** Restore a request which was in flight when state was saved.
+   *
+   * @param ln the REQUEST line
+   */
+  protected void restoreInFlight(final String ln) {
+    if ((header.parseHeader(ln, "INFO") == null) ||
+            !header.logTextStartsWith(ReqInOutLogEntry.requestMarker)) {
       return;
     }
 
-    rs = tryRequestOut(s);
+    final var rs = new ReqInOutLogEntry();
 
-    if (rs != null) {
-      processInfo(rs);
+    if (rs.parse(header, true) != null) {
+      tasks.put(rs.getTaskSym(), rs);
+    }
+  }
 
-      final ReqInOutLogEntry mapRs = tasks.get(rs.taskId);
+  /**
+   * @param val number of endpoint templates to track
+   */
+  public void setEndpointBudget(final int val) {
+    if (val < 1) {
+      throw new IllegalArgumentException("Endpoint budget must be at least 1");
+    }
 
-      if (mapRs == null) {
-        if (showMissingTaskIds) {
-          final String dt = s.substring(0, s.indexOf(" INFO"));
+    endpointBudget = val;
+  }
 
-          outFmt("Missing taskid %s %s",
-                 rs.taskId, dt);
-        }
+  /**
+   * @return request times by endpoint template
+   */
+  protected SpaceSaving<String, EndpointInfo> getEndpoints() {
+    if (endpoints == null) {
+      endpoints = new SpaceSaving<>(endpointBudget,
+                                    EndpointInfo::new,
+                                    EndpointInfo::add);
+    }
 
-        return;
-      }
+    return endpoints;
+  }
 
-      if (mapRs.context == null) {
-        outFmt("No context for %s %s", mapRs.dt, mapRs.request);
+  /**
+   * @param val number of ips to count
+   */
+  public void setIpBudget(final int val) {
+    if (val < 1) {
+      throw new IllegalArgumentException("Ip budget must be at least 1");
+    }
 
-        return;
-      }
+    ipBudget = val;
+  }
+
+  /**
+   * @return count of requests by ip
+   */
+  protected SpaceSaving<String, Void> getIpCounts() {
+    if (ipCounts == null) {
+      ipCounts = new SpaceSaving<>(ipBudget);
+    }
+
+    return ipCounts;
+  }
+
+  /**
+   * @return count of long requests by ip
+   */
+  protected SpaceSaving<String, Void> getLongreqIpCounts() {
+    if (longreqIpCounts == null) {
+      longreqIpCounts = new SpaceSaving<>(ipBudget);
+    }
 
-      if (!mapRs.sameTask(rs)) {
-        outFmt("Not same task %s\n %s", mapRs.toString(), rs.toString());
+    return longreqIpCounts;
+  }
 
+  /** Handle a single line of the log. The line is only converted to a
+   * String if it's needed.
+   *
+   * @param line view of the line
+   */
+  protected void processLine(final LogLine line) {
+    if (dumpIndented) {
+      // dump the rest of some formatted output.
+      if (line.startsWith(" ")) {
+        out(line.toString());
         return;
       }
 
-      final long reqMillis = rs.millis - mapRs.millis;
-      final ContextInfo ci =
-              contexts.computeIfAbsent(mapRs.context,
-                                       k -> new ContextInfo(mapRs.context,
-                                                            longreqIpMap));
+      dumpIndented = false;
+    }
 
-      ci.reqOut(s, mapRs, reqMillis, showLong);
+    if (infoLine(line)) {
+      doInfo(line.toString());
+      return;
+    }
 
-      if (rs.hasJsessionid()) {
-        ci.sessions++;
+    if (wantsRecords()) {
+      final var s = line.toString();
+
+      if (!line.startsWith("202")) {
+        processRecord(s, null);
+      } else {
+        if (header.parseHeader(s, null) == null) {
+          header.unparsed(s);
+        }
+        processRecord(s, header);
       }
+    }
 
-      requestOut(mapRs, rs);
+    checkErrorLine(line);
+  }
+
+  /**
+   * @return false if processRecord does nothing. Saves building a
+   *         String for every line.
+   */
+  protected boolean wantsRecords() {
+    return true;
+  }
 
-      // Done with the entry
-      tasks.remove(rs.taskId);
+  /* The header is parsed once. What follows the task id tells us
+     what sort of line it is.
+   */
+  private void doInfo(final String s) {
+    final var hdr = header;
+
+    if (hdr.parseHeader(s, "INFO") == null) {
+      return;
+    }
+
+    if (hdr.logTextStartsWith(ReqInOutLogEntry.requestMarker)) {
+      doRequestIn(hdr);
+      return;
+    }
+
+    if (hdr.logTextStartsWith(ReqInOutLogEntry.requestOutMarker)) {
+      doRequestOut(s, hdr);
+      return;
+    }
+
+    if (hdr.logTextStartsWith(SessionInfo.sessionStartMarker)) {
+      sessions.sessionStart(hdr);
+      return;
+    }
+
+    if (wildflyStart(hdr)) {
+      // Wildfly restarted
+      tasks.clear();
+      if (part != null) {
+        part.restarted = true;
+      }
     }
   }
 
-  protected boolean wildflyStart(final String ln) {
-    return ln.contains(wildflyStart);
+  private void doRequestIn(final LogEntry hdr) {
+    final var rs = new ReqInOutLogEntry();
+
+    if (rs.parse(hdr, true) == null) {
+      return;
+    }
+
+    lastReqline = rs;
+    rs.fileOffset = lineStart;
+    getIpCounts().add(rs.ip);
+
+    final int taskSym = rs.getTaskSym();
+
+    if ((part != null) && !part.restarted &&
+            firstSeen(taskSym)) {
+      part.headIns.set(taskSym);
+    }
+
+    if (tasks.put(taskSym, rs) != null) {
+      // No request-out message
+      unterminatedTask++;
+    }
+
+    // See if this is new session
+    sessions.requestIn(rs);
   }
 
-  protected boolean infoLine(final String ln) {
-    return ln.indexOf(" INFO ") == 23;
+  private void doRequestOut(final String s,
+                            final LogEntry hdr) {
+    final var rs = new ReqInOutLogEntry();
+
+    if (rs.parse(hdr, false) == null) {
+      return;
+    }
+
+    processInfo(rs);
+
+    if ((part != null) && !part.restarted &&
+            firstSeen(rs.getTaskSym())) {
+      // Probably the REQUEST is in an earlier file
+      part.headOuts.add(new HeadOut(s, rs));
+      return;
+    }
+
+    pairRequestOut(s, rs);
   }
 
-  protected boolean debugLine(final String ln) {
-    return ln.indexOf(" DEBUG ") == 23;
+  private boolean firstSeen(final int taskSym) {
+    if (part.seenTasks.get(taskSym)) {
+      return false;
+    }
+
+    part.seenTasks.set(taskSym);
+    return true;
   }
 
-  protected void checkErrorLine(final String ln) {
-    if (ln.indexOf(" ERROR ") != 23) {
+  private void pairRequestOut(final String s,
+                              final ReqInOutLogEntry rs) {
+    final ReqInOutLogEntry mapRs = tasks.get(rs.getTaskSym());
+
+    if (mapRs == null) {
+      if (showMissingTaskIds) {
+        final String dt = s.substring(0, s.indexOf(" INFO"));
+
+        outFmt("Missing taskid %s %s",
+               rs.getTaskId(), dt);
+      }
+
       return;
     }
 
-    errorLines++;
+    if (mapRs.context == null) {
+      // Expected for requests which started before a region
+      if (!inRegions || !mapRs.placeHolder) {
+        outFmt("No context for %s %s", mapRs.getDt(), mapRs.request);
+      }
+
+      return;
+    }
+
+    if (!mapRs.sameTask(rs)) {
+      outFmt("Not same task %s\n %s", mapRs.toString(), rs.toString());
+
+      return;
+    }
+
+    final long reqMillis = rs.millis - mapRs.millis;
+    final ContextInfo ci =
+            contexts.computeIfAbsent(mapRs.contextSym,
+                                     k -> new ContextInfo(mapRs.context,
+                                                          histogramBits));
+
+    if (ci.reqOut(reqMillis)) {
+      if (showLong) {
+        final String dt = s.substring(0, s.indexOf(" INFO"));
+
+        if (records != null) {
+          records.start(longRequestRecord)
+                 .value(mapRs.ip).value(mapRs.getTaskId())
+                 .value(reqMillis).value(mapRs.getDt()).value(dt)
+                 .value(mapRs.request);
+          outRecord();
+        } else {
+          outFmt("Long request %s %s %d: %s - %s %s",
+                 mapRs.ip, mapRs.getTaskId(), reqMillis, mapRs.getDt(),
+                 dt, mapRs.request);
+        }
+      }
+
+      getLongreqIpCounts().add(mapRs.ip);
+    }
+
+    if (rs.hasJsessionid()) {
+      ci.sessions++;
+    }
+
+    getEndpoints().add(EndpointTemplate.of(mapRs.url),
+                       Math.max(reqMillis, 0))
+                  .getValue().reqOut(reqMillis);
+
+    requestOut(mapRs, rs);
+
+    // Done with the entry
+    tasks.remove(rs.getTaskSym());
   }
 
-  private ReqInOutLogEntry tryRequestLine(final String ln) {
-    return tryRequestInOutLine(ln, true);
+  protected boolean wildflyStart(final LogEntry hdr) {
+    return hdr.logTextStartsWith(wildflyStartText) &&
+            hdr.taskIdIs(wildflyStartTask) &&
+            hdr.classNameIs(wildflyStartClass);
   }
 
-  private ReqInOutLogEntry tryRequestOut(final String ln) {
-    return tryRequestInOutLine(ln, false);
+  protected boolean infoLine(final LogLine ln) {
+    return ln.regionMatches(23, " INFO ");
   }
 
-  private ReqInOutLogEntry tryRequestInOutLine(final String ln,
-                                               final boolean in) {
-    final var rs = new ReqInOutLogEntry();
-    final var res = rs.parse(ln, in);
+  protected boolean debugLine(final LogLine ln) {
+    return ln.regionMatches(23, " DEBUG ");
+  }
 
-    if ((res == null) || (res < 0)) {
-      return null;
+  protected void checkErrorLine(final LogLine ln) {
+    if (!ln.regionMatches(23, " ERROR ")) {
+      return;
     }
 
-    return rs;
+    errorLines++;
   }
 
   public void outSummary(final LogEntry le) {
     if (le == null) {
       return;
     }
-    outFmt("%s %-4s %-8s %s %s", le.dt,
+    outFmt("%s %-4s %-8s %s %s", le.getDt(),
            le.sinceLastMillis, le.sinceStartMillis,
-           taskIdSummary(le), le.logText);
+           taskIdSummary(le), le.getLogText());
   }
 
   public String taskIdSummary(final LogEntry le) {
-    if (le.taskId.startsWith("default ")) {
-      return le.taskId.substring(8);
+    if (le.getTaskId().startsWith("default ")) {
+      return le.getTaskId().substring(8);
     }
 
-    if (le.taskId.startsWith("org.bedework.bwengine:service=")) {
-      return le.taskId.substring(30);
+    if (le.getTaskId().startsWith("org.bedework.bwengine:service=")) {
+      return le.getTaskId().substring(30);
     }
 
-    return le.taskId;
+    return le.getTaskId();
   }
 
   protected void outFmt(final String format,
                       final Object... args) {
-    System.out.println(String.format(format, args));
+    if (part != null) {
+      out(String.format(format, args));
+      return;
+    }
+
+    Output.fmt(format, args);
   }
 
   protected void out(final String val) {
-    System.out.println(val);
+    if (part != null) {
+      part.deferredOut.add(Output.encode(val).toString());
+      return;
+    }
+
+    Output.line(val);
+  }
+
+  /** Output the record built in records
+   */
+  protected void outRecord() {
+    final var rec = records.end();
+
+    if (part != null) {
+      part.deferredOut.add(rec.toString());
+      return;
+    }
+
+    Output.record(rec);
   }
 
   protected void out() {
-    System.out.println();
+    out("");
   }
 }
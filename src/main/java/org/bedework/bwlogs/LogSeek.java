@@ -0,0 +1,221 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/** Finds lines by time in an uncompressed server log by binary search
+ * on the byte offset. The log is written in time order so it is
+ * enough to look at the first line with a timestamp after each probe -
+ * continuation lines, e.g. stack traces, are skipped.
+ *
+ * <p>Only a few small reads are needed for each search however big
+ * the log.
+ */
+public class LogSeek implements AutoCloseable {
+  private static final int dtLength = 23;
+  private static final int chunkSize = 8 * 1024;
+
+  private final FileChannel channel;
+  private final long size;
+
+  private final Timestamps timestamps = new Timestamps();
+
+  // The chunk of the file last read
+  private final ByteBuffer buf = ByteBuffer.allocate(chunkSize);
+  private long bufStart = -1;
+
+  private int reads;
+
+  /**
+   * @param path of uncompressed log
+   * @throws IOException on open error
+   */
+  public LogSeek(final Path path) throws IOException {
+    channel = FileChannel.open(path, READ);
+    size = channel.size();
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return number of reads of the log so far
+   */
+  public int getReads() {
+    return reads;
+  }
+
+  /**
+   * @param millis a time
+   * @return offset of the first line timestamped at or after the time
+   *         or the size of the log if none is
+   * @throws IOException on read error
+   */
+  public long find(final long millis) throws IOException {
+    return first(dt -> timestamps.logMillis(dt) >= millis);
+  }
+
+  /**
+   * @param dtPrefix start of a timestamp - e.g. 2020-01-14 10:3
+   * @return offset of the first line timestamped at or after the
+   *         earliest time starting with the prefix or the size of the
+   *         log if none is
+   * @throws IOException on read error
+   */
+  public long findFrom(final String dtPrefix) throws IOException {
+    return first(dt -> dt.compareTo(dtPrefix) >= 0);
+  }
+
+  /**
+   * @param dtPrefix start of a timestamp - e.g. 2020-01-14 10:3
+   * @return offset of the first line timestamped after every time
+   *         starting with the prefix or the size of the log if none is
+   * @throws IOException on read error
+   */
+  public long findAfter(final String dtPrefix) throws IOException {
+    return first(dt -> (dt.compareTo(dtPrefix) > 0) &&
+            !dt.startsWith(dtPrefix));
+  }
+
+  /**
+   * @param offset of a line with a timestamp
+   * @return its time or Timestamps.invalid
+   * @throws IOException on read error
+   */
+  public long millisAt(final long offset) throws IOException {
+    final var dt = dtAt(offset);
+
+    if (dt == null) {
+      return Timestamps.invalid;
+    }
+
+    return timestamps.logMillis(dt);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /* Offset of the first line with a timestamp for which after is
+     true. after must be false for all lines before that one.
+   */
+  private long first(final Predicate<String> after) throws IOException {
+    long lo = 0;
+    long hi = size;
+    long res = size;
+
+    while (lo < hi) {
+      final long mid = (lo + hi) >>> 1;
+      final long line = nextLine(mid, hi);
+
+      if (line < 0) {
+        // Nothing timestamped in mid to hi
+        hi = mid;
+        continue;
+      }
+
+      if (after.test(dtAt(line))) {
+        res = line;
+        hi = mid;
+      } else {
+        lo = lineEnd(line);
+      }
+    }
+
+    return res;
+  }
+
+  /* Offset of the first line with a timestamp starting at or after
+     pos and before limit - or -1.
+   */
+  private long nextLine(final long pos,
+                        final long limit) throws IOException {
+    long line = pos;
+
+    if ((line > 0) && (byteAt(line - 1) != '\n')) {
+      line = lineEnd(line);
+    }
+
+    while (line < limit) {
+      if (dtAt(line) != null) {
+        return line;
+      }
+
+      line = lineEnd(line);
+    }
+
+    return -1;
+  }
+
+  /* Offset after the newline ending the line containing pos
+   */
+  private long lineEnd(final long pos) throws IOException {
+    long p = pos;
+
+    while (p < size) {
+      if (byteAt(p) == '\n') {
+        return p + 1;
+      }
+      p++;
+    }
+
+    return size;
+  }
+
+  /* The timestamp at the start of the line or null if there isn't one
+   */
+  private String dtAt(final long line) throws IOException {
+    if (line + dtLength > size) {
+      return null;
+    }
+
+    final byte[] b = new byte[dtLength];
+    for (int i = 0; i < dtLength; i++) {
+      b[i] = byteAt(line + i);
+
+      // Timestamps are digits and - : , and space
+      if ((b[i] < ' ') || (b[i] > ':')) {
+        return null;
+      }
+    }
+
+    final var dt = new String(b, StandardCharsets.US_ASCII);
+
+    if (timestamps.logMillis(dt) == Timestamps.invalid) {
+      return null;
+    }
+
+    return dt;
+  }
+
+  private byte byteAt(final long pos) throws IOException {
+    if ((bufStart < 0) || (pos < bufStart) ||
+            (pos >= bufStart + buf.limit())) {
+      buf.clear();
+
+      while (buf.hasRemaining()) {
+        final int n = channel.read(buf, pos + buf.position());
+        if (n < 0) {
+          break;
+        }
+      }
+
+      buf.flip();
+      bufStart = pos;
+      reads++;
+    }
+
+    return buf.get((int)(pos - bufStart));
+  }
+}
@@ -0,0 +1,231 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/** Reads a file by mapping it into memory a window at a time and
+ * finding line boundaries in the raw bytes. No chars are decoded and
+ * no Strings built unless the caller asks the {@link LogLine}.
+ *
+ * <p>Lines longer than a window are returned in window sized
+ * pieces.
+ */
+public class MappedLineReader implements LineReader {
+  /** Default size of the mapped window */
+  public static final int defaultWindowSize = 256 * 1024 * 1024;
+
+  private static final long newlines = 0x0a0a0a0a0a0a0a0aL;
+  private static final long lowBits = 0x0101010101010101L;
+  private static final long highBits = 0x8080808080808080L;
+
+  private final FileChannel channel;
+  private final long end;
+  private final int windowSize;
+
+  private MappedByteBuffer buf;
+  private long windowStart;
+  private int pos;
+  private int limit;
+
+  private long lineNumber;
+
+  private final LogLine line = new LogLine();
+
+  /**
+   * @param path to file
+   * @throws IOException on open error
+   */
+  public MappedLineReader(final Path path) throws IOException {
+    this(path, 0, -1, defaultWindowSize);
+  }
+
+  /** Read the region start to end of the file. start is assumed to be
+   * at the start of a line.
+   *
+   * @param path to file
+   * @param start offset of first byte
+   * @param end offset past last byte or -1 for end of file
+   * @param windowSize bytes to map at a time
+   * @throws IOException on open error
+   */
+  public MappedLineReader(final Path path,
+                          final long start,
+                          final long end,
+                          final int windowSize) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+
+    final long size = channel.size();
+    if ((end < 0) || (end > size)) {
+      this.end = size;
+    } else {
+      this.end = end;
+    }
+    this.windowSize = windowSize;
+
+    map(start);
+  }
+
+  /** Split a file into (at most) parts regions each of which starts
+   * at the start of a line. Region i is from res[i] up to res[i + 1].
+   *
+   * @param path to file
+   * @param parts number of regions wanted
+   * @return offsets of region boundaries - includes 0 and the size
+   * @throws IOException on read error
+   */
+  public static long[] split(final Path path,
+                             final int parts) throws IOException {
+    try (final var chan = FileChannel.open(path,
+                                           StandardOpenOption.READ)) {
+      final long size = chan.size();
+      final var bounds = new ArrayList<Long>();
+      final var bb = ByteBuffer.allocate(64 * 1024);
+
+      bounds.add(0L);
+
+      splitting:
+      for (int i = 1; i < parts; i++) {
+        // Look for the end of the line containing target - 1
+        long pos = Math.max(size * i / parts - 1,
+                            bounds.get(bounds.size() - 1));
+
+        while (true) {
+          bb.clear();
+          final int n = chan.read(bb, pos);
+          if (n <= 0) {
+            break splitting;
+          }
+
+          for (int j = 0; j < n; j++) {
+            if (bb.get(j) == '\n') {
+              final long bound = pos + j + 1;
+              if ((bound < size) &&
+                      (bound > bounds.get(bounds.size() - 1))) {
+                bounds.add(bound);
+              }
+              continue splitting;
+            }
+          }
+
+          pos += n;
+        }
+      }
+
+      bounds.add(size);
+
+      final long[] res = new long[bounds.size()];
+      for (int i = 0; i < res.length; i++) {
+        res[i] = bounds.get(i);
+      }
+
+      return res;
+    }
+  }
+
+  @Override
+  public LogLine next() throws IOException {
+    while (true) {
+      if (pos >= limit) {
+        if (windowStart + limit >= end) {
+          return null;
+        }
+
+        map(windowStart + pos);
+        continue;
+      }
+
+      final int nl = findNewline(pos);
+
+      if (nl >= 0) {
+        return setLine(nl, nl + 1);
+      }
+
+      if ((windowStart + limit >= end) || (pos == 0)) {
+        // Last line has no terminator or line fills the window
+        return setLine(limit, limit);
+      }
+
+      // Line crosses the window boundary - move window to its start
+      map(windowStart + pos);
+    }
+  }
+
+  @Override
+  public long getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * @return offset in file of next unread byte
+   */
+  public long getPosition() {
+    return windowStart + pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    buf = null;
+    channel.close();
+  }
+
+  private LogLine setLine(final int lineEnd,
+                          final int nextPos) {
+    int len = lineEnd - pos;
+
+    if ((len > 0) && (buf.get(pos + len - 1) == '\r')) {
+      len--;
+    }
+
+    line.set(buf, pos, len, windowStart + pos);
+    pos = nextPos;
+    lineNumber++;
+
+    return line;
+  }
+
+  /* Look for '\n' 8 bytes at a time then byte at a time for the
+     tail.
+   */
+  private int findNewline(final int from) {
+    int i = from;
+
+    while (i + 8 <= limit) {
+      final long word = buf.getLong(i) ^ newlines;
+      final long found = (word - lowBits) & ~word & highBits;
+
+      if (found != 0) {
+        return i + (Long.numberOfTrailingZeros(found) >>> 3);
+      }
+
+      i += 8;
+    }
+
+    while (i < limit) {
+      if (buf.get(i) == '\n') {
+        return i;
+      }
+      i++;
+    }
+
+    return -1;
+  }
+
+  private void map(final long from) throws IOException {
+    final long len = Math.min(windowSize, end - from);
+
+    buf = channel.map(FileChannel.MapMode.READ_ONLY, from, len);
+    buf.order(ByteOrder.LITTLE_ENDIAN);
+    windowStart = from;
+    pos = 0;
+    limit = (int)len;
+  }
+}
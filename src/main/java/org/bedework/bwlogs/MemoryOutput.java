@@ -0,0 +1,34 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Keeps the output lines in memory - e.g. to examine them once an
+ * analysis is done.
+ */
+public class MemoryOutput implements OutputSink {
+  private final List<String> lines = new ArrayList<>();
+
+  @Override
+  public synchronized void println(final CharSequence line) {
+    lines.add(line.toString());
+  }
+
+  @Override
+  public void flush() {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  /**
+   * @return copy of the lines output so far
+   */
+  public synchronized List<String> getLines() {
+    return new ArrayList<>(lines);
+  }
+}
@@ -0,0 +1,164 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.bedework.bwlogs.RecordWriter.Format;
+
+import java.util.Formatter;
+import java.util.HashSet;
+import java.util.Set;
+
+/** All the output of the cli goes through here to the current sink -
+ * by default an AsyncOutput to stdout.
+ *
+ * <p>Formatting is done into a builder reused by each thread so a
+ * formatted line is never made into a String.
+ *
+ * <p>With json or csv format the analyses write records - see
+ * RecordWriter - and any other line is written as a message record so
+ * the output can always be parsed.
+ */
+public final class Output {
+  private static volatile OutputSink sink;
+
+  private static final ThreadLocal<Formatter> formatters =
+          ThreadLocal.withInitial(() -> new Formatter(new StringBuilder()));
+
+  private static volatile Format format = Format.text;
+
+  // Encode lines as message records
+  private static final ThreadLocal<RecordWriter> messageWriters =
+          ThreadLocal.withInitial(() -> RecordWriter.forFormat(format));
+
+  // Record types we've written a csv header for
+  private static final Set<RecordType> csvHeaders = new HashSet<>();
+
+  private Output() {
+  }
+
+  /**
+   * @return the current sink
+   */
+  public static OutputSink get() {
+    final var s = sink;
+    if (s != null) {
+      return s;
+    }
+
+    return init();
+  }
+
+  /** The previous sink is flushed but not closed.
+   *
+   * @param val the new sink
+   * @return the previous sink
+   */
+  public static synchronized OutputSink set(final OutputSink val) {
+    final var prev = get();
+
+    prev.flush();
+    sink = val;
+
+    return prev;
+  }
+
+  /** Set before any output.
+   *
+   * @param val format of the output
+   */
+  public static void setFormat(final Format val) {
+    format = val;
+  }
+
+  public static Format getFormat() {
+    return format;
+  }
+
+  /**
+   * @return a writer for records in the current format or null for
+   *         text
+   */
+  public static RecordWriter newRecordWriter() {
+    return RecordWriter.forFormat(format);
+  }
+
+  /**
+   * @param line to output
+   */
+  public static void line(final CharSequence line) {
+    if (format == Format.text) {
+      get().println(line);
+      return;
+    }
+
+    record(encode(line));
+  }
+
+  /**
+   * @param line of text
+   * @return the line as it will be output - valid until the next
+   *         call on this thread
+   */
+  public static CharSequence encode(final CharSequence line) {
+    if (format == Format.text) {
+      return line;
+    }
+
+    return messageWriters.get().message(line);
+  }
+
+  /**
+   * @param val an encoded record - or a line from encode - output as
+   *            it is
+   */
+  public static void record(final CharSequence val) {
+    if (format != Format.csv) {
+      get().println(val);
+      return;
+    }
+
+    final var rt = RecordType.forCsvRow(val);
+
+    synchronized (csvHeaders) {
+      if ((rt != null) && csvHeaders.add(rt)) {
+        get().println(rt.csvHeader);
+      }
+
+      get().println(val);
+    }
+  }
+
+  /**
+   * @param format as for String.format
+   * @param args for format
+   */
+  public static void fmt(final String format,
+                         final Object... args) {
+    final var formatter = formatters.get();
+    final var sb = (StringBuilder)formatter.out();
+
+    sb.setLength(0);
+    formatter.format(format, args);
+
+    line(sb);
+  }
+
+  /** Wait until everything output so far has been written
+   */
+  public static void flush() {
+    get().flush();
+  }
+
+  private static synchronized OutputSink init() {
+    if (sink == null) {
+      final var stdout = AsyncOutput.stdout();
+
+      // Don't lose what is buffered if we exit without a flush
+      Runtime.getRuntime().addShutdownHook(new Thread(stdout::flush));
+      sink = stdout;
+    }
+
+    return sink;
+  }
+}
@@ -0,0 +1,23 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Where the output of the cli goes - see Output.
+ */
+public interface OutputSink extends AutoCloseable {
+  /**
+   * @param line to output - a line separator is added. Not retained
+   *             so may be a builder which is reused.
+   */
+  void println(CharSequence line);
+
+  /** Wait until everything so far has been written
+   */
+  void flush();
+
+  /** Flush and release any resources
+   */
+  @Override
+  void close();
+}
@@ -0,0 +1,255 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** Reads lines from a stream - usually a decompressing stream. The
+ * stream is read on a separate thread which fills a bounded ring of
+ * buffers ahead of the parser so that decompression overlaps with
+ * processing of the lines.
+ */
+public class PipedLineReader implements LineReader {
+  /** Default size of each buffer in the ring */
+  public static final int defaultBufferSize = 1024 * 1024;
+
+  /** Default number of buffers in the ring */
+  public static final int defaultBuffers = 8;
+
+  // Marks end of input on the filled queue
+  private static final ByteBuffer eof = ByteBuffer.allocate(0);
+
+  private final InputStream in;
+  private final BlockingQueue<ByteBuffer> free;
+  private final BlockingQueue<ByteBuffer> filled;
+  private final Thread filler;
+
+  private volatile IOException fillException;
+  private volatile boolean closed;
+
+  private ByteBuffer buf;
+  private int pos;
+  private long bufOffset;
+
+  // Holds a line which is split across buffers
+  private ByteBuffer carry = ByteBuffer.allocate(4096);
+
+  private long lineNumber;
+  private boolean atEof;
+
+  private final LogLine line = new LogLine();
+
+  /**
+   * @param in the stream to read
+   * @param name for the reading thread
+   */
+  public PipedLineReader(final InputStream in,
+                         final String name) {
+    this(in, name, defaultBufferSize, defaultBuffers);
+  }
+
+  /**
+   * @param in the stream to read
+   * @param name for the reading thread
+   * @param bufferSize size of each buffer
+   * @param numBuffers number of buffers in the ring
+   */
+  public PipedLineReader(final InputStream in,
+                         final String name,
+                         final int bufferSize,
+                         final int numBuffers) {
+    this.in = in;
+    free = new ArrayBlockingQueue<>(numBuffers);
+    filled = new ArrayBlockingQueue<>(numBuffers + 1);
+
+    for (int i = 0; i < numBuffers; i++) {
+      free.add(ByteBuffer.allocate(bufferSize));
+    }
+
+    filler = new Thread(this::fill, name);
+    filler.setDaemon(true);
+    filler.start();
+  }
+
+  @Override
+  public LogLine next() throws IOException {
+    if (atEof) {
+      return null;
+    }
+
+    carry.clear();
+    long lineOffset = -1;
+
+    while (true) {
+      if ((buf == null) || (pos >= buf.limit())) {
+        if (!nextBuffer()) {
+          atEof = true;
+
+          if (carry.position() == 0) {
+            return null;
+          }
+
+          // Last line has no terminator
+          return setLine(carry, 0, carry.position(), lineOffset);
+        }
+      }
+
+      if (lineOffset < 0) {
+        lineOffset = bufOffset + pos;
+      }
+
+      final int nl = findNewline();
+      if (nl >= 0) {
+        if (carry.position() == 0) {
+          final int start = pos;
+          pos = nl + 1;
+          return setLine(buf, start, nl - start, lineOffset);
+        }
+
+        append(pos, nl);
+        pos = nl + 1;
+        return setLine(carry, 0, carry.position(), lineOffset);
+      }
+
+      // Line continues in the next buffer
+      append(pos, buf.limit());
+      pos = buf.limit();
+    }
+  }
+
+  @Override
+  public long getLineNumber() {
+    return lineNumber;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    filler.interrupt();
+    in.close();
+  }
+
+  private LogLine setLine(final ByteBuffer b,
+                          final int start,
+                          final int len,
+                          final long offset) {
+    int l = len;
+
+    if ((l > 0) && (b.get(start + l - 1) == '\r')) {
+      l--;
+    }
+
+    line.set(b, start, l, offset);
+    lineNumber++;
+
+    return line;
+  }
+
+  private int findNewline() {
+    final byte[] b = buf.array();
+    final int limit = buf.limit();
+
+    for (int i = pos; i < limit; i++) {
+      if (b[i] == '\n') {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private void append(final int from,
+                      final int to) {
+    final int len = to - from;
+
+    if (carry.remaining() < len) {
+      final var bigger = ByteBuffer.allocate(
+              Math.max(carry.capacity() * 2, carry.position() + len));
+      carry.flip();
+      bigger.put(carry);
+      carry = bigger;
+    }
+
+    carry.put(buf.array(), from, len);
+  }
+
+  /* Give the current buffer back to the filler and wait for the next.
+   */
+  private boolean nextBuffer() throws IOException {
+    if (buf != null) {
+      bufOffset += buf.limit();
+      buf.clear();
+      free.add(buf);
+      buf = null;
+    }
+
+    final ByteBuffer b;
+    try {
+      b = filled.take();
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+
+    if (b == eof) {
+      if (fillException != null) {
+        throw fillException;
+      }
+
+      return false;
+    }
+
+    buf = b;
+    pos = 0;
+    return true;
+  }
+
+  /* Runs on the filler thread.
+   */
+  private void fill() {
+    try {
+      while (!closed) {
+        final ByteBuffer b = free.take();
+        final byte[] arr = b.array();
+        int len = 0;
+
+        // Fill the buffer - small reads are common from inflaters
+        while (len < arr.length) {
+          final int n = in.read(arr, len, arr.length - len);
+          if (n < 0) {
+            break;
+          }
+
+          len += n;
+        }
+
+        if (len > 0) {
+          b.limit(len);
+          filled.put(b);
+        }
+
+        if (len < arr.length) {
+          break;
+        }
+      }
+    } catch (final InterruptedException ignored) {
+      // closed
+    } catch (final IOException | RuntimeException e) {
+      // A stream closed while we read it fails in various ways
+      if (!closed) {
+        if (e instanceof final IOException ioe) {
+          fillException = ioe;
+        } else {
+          fillException = new IOException(e);
+        }
+      }
+    } finally {
+      filled.offer(eof);
+    }
+  }
+}
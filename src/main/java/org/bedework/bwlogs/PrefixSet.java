@@ -0,0 +1,134 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A set of prefixes compiled into a trie so testing if a string
+ * starts with any of them looks at each char of the string at most
+ * once however many prefixes there are.
+ *
+ * <p>Each node has the chars leading from it in order with the node
+ * each leads to - a binary search finds the next node.
+ */
+public class PrefixSet {
+  private final char[][] keys;
+  private final int[][] next;
+
+  // A prefix ends at the node
+  private final boolean[] terminal;
+
+  private final int size;
+
+  /**
+   * @param prefixes to match - duplicates are ignored
+   */
+  public PrefixSet(final Collection<String> prefixes) {
+    final List<Map<Character, Integer>> nodes = new ArrayList<>();
+    final List<Boolean> ends = new ArrayList<>();
+
+    nodes.add(new TreeMap<>());
+    ends.add(false);
+
+    for (final var prefix: prefixes) {
+      int node = 0;
+
+      for (int i = 0; i < prefix.length(); i++) {
+        final var child = nodes.get(node).get(prefix.charAt(i));
+
+        if (child != null) {
+          node = child;
+          continue;
+        }
+
+        nodes.get(node).put(prefix.charAt(i), nodes.size());
+        node = nodes.size();
+        nodes.add(new TreeMap<>());
+        ends.add(false);
+      }
+
+      ends.set(node, true);
+    }
+
+    keys = new char[nodes.size()][];
+    next = new int[nodes.size()][];
+    terminal = new boolean[nodes.size()];
+
+    int num = 0;
+
+    for (int n = 0; n < nodes.size(); n++) {
+      final var children = nodes.get(n);
+
+      keys[n] = new char[children.size()];
+      next[n] = new int[children.size()];
+
+      int i = 0;
+      for (final var ent: children.entrySet()) {
+        keys[n][i] = ent.getKey();
+        next[n][i] = ent.getValue();
+        i++;
+      }
+
+      terminal[n] = ends.get(n);
+      if (terminal[n]) {
+        num++;
+      }
+    }
+
+    size = num;
+  }
+
+  /**
+   * @return number of distinct prefixes
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param s to test - may be null
+   * @return true if s starts with one of the prefixes
+   */
+  public boolean matches(final String s) {
+    if (s == null) {
+      return false;
+    }
+
+    return matches(s, 0, s.length());
+  }
+
+  /**
+   * @param s containing the value to test
+   * @param start of value
+   * @param end of value - exclusive
+   * @return true if the value starts with one of the prefixes
+   */
+  public boolean matches(final String s,
+                         final int start,
+                         final int end) {
+    int node = 0;
+
+    for (int i = start; ; i++) {
+      if (terminal[node]) {
+        return true;
+      }
+
+      if (i == end) {
+        return false;
+      }
+
+      final int j = Arrays.binarySearch(keys[node], s.charAt(i));
+      if (j < 0) {
+        return false;
+      }
+
+      node = next[node][j];
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** The output of a process - e.g. a decompressor. At end of input we
+ * wait for the process and a non-zero exit status is an error - the
+ * output is probably incomplete. Closing before the end kills the
+ * process.
+ */
+class ProcessInputStream extends FilterInputStream {
+  private final Process proc;
+
+  // What is running - for messages
+  private final String desc;
+
+  private volatile boolean atEof;
+
+  /**
+   * @param in stream to read - usually buffers the process output
+   * @param proc the process
+   * @param desc what the process is doing
+   */
+  ProcessInputStream(final InputStream in,
+                     final Process proc,
+                     final String desc) {
+    super(in);
+    this.proc = proc;
+    this.desc = desc;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int b = super.read();
+    if (b < 0) {
+      end();
+    }
+
+    return b;
+  }
+
+  @Override
+  public int read(final byte[] b,
+                  final int off,
+                  final int len) throws IOException {
+    final int n = super.read(b, off, len);
+    if (n < 0) {
+      end();
+    }
+
+    return n;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!atEof) {
+      // Nobody wants the rest
+      proc.destroy();
+    }
+
+    super.close();
+  }
+
+  private void end() throws IOException {
+    if (atEof) {
+      return;
+    }
+
+    atEof = true;
+
+    try {
+      proc.waitFor();
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+
+    if (proc.exitValue() != 0) {
+      throw new IOException("Exit status " + proc.exitValue() +
+                                    " from " + desc);
+    }
+  }
+}
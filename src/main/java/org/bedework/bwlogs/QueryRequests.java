@@ -0,0 +1,287 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Request times by context for the requests in a column file - see
+ * ExportRequests - optionally only those in a time range and with
+ * given values, e.g. a user or endpoint.
+ *
+ * <p>Only the columns needed are read and blocks whose minimum and
+ * maximum rule out a match are skipped.
+ */
+public class QueryRequests {
+  private static final double[] percentiles = {50, 90, 99, 99.9};
+
+  // Pads a partial time
+  private static final String timeTemplate = "0000-01-01 00:00:00,000";
+
+  static final RecordType resultRecord =
+          RecordType.of("queryResult", "context", "requests", "errors",
+                        "avgMs", "p50Ms", "p90Ms", "p99Ms", "p999Ms",
+                        "maxMs");
+
+  static final RecordType scanRecord =
+          RecordType.of("queryScan", "rows", "blocks", "blocksRead",
+                        "matched", "millis");
+
+  private final int histogramBits;
+
+  private long from = Long.MIN_VALUE;
+  private long to = Long.MAX_VALUE;
+  private final Map<RequestColumn, String> where =
+          new EnumMap<>(RequestColumn.class);
+
+  // Null for text output
+  private final RecordWriter records = Output.newRecordWriter();
+
+  private static class Stats {
+    final LatencyHistogram histogram;
+    long requests;
+    long errors;
+    long totalMillis;
+
+    Stats(final int histogramBits) {
+      histogram = new LatencyHistogram(histogramBits);
+    }
+
+    void add(final Stats s) {
+      histogram.add(s.histogram);
+      requests += s.requests;
+      errors += s.errors;
+      totalMillis += s.totalMillis;
+    }
+  }
+
+  /**
+   * @param histogramBits precision of the percentiles
+   */
+  public QueryRequests(final int histogramBits) {
+    LatencyHistogram.checkBits(histogramBits);
+    this.histogramBits = histogramBits;
+  }
+
+  /**
+   * @param val only requests starting at or after this time
+   */
+  public void setFrom(final long val) {
+    from = val;
+  }
+
+  /**
+   * @param val only requests starting before this time
+   */
+  public void setTo(final long val) {
+    to = val;
+  }
+
+  /**
+   * @param col a string column
+   * @param val only requests with this value
+   */
+  public void where(final RequestColumn col,
+                    final String val) {
+    if (!col.isDictionary()) {
+      throw new IllegalArgumentException(col + " is not a string");
+    }
+
+    where.put(col, val);
+  }
+
+  /**
+   * @param val log time - 2019-01-04 00:00:11,742 - or the start of
+   *            one, e.g. 2019-01-04 09:00
+   * @return millis since the epoch
+   */
+  public static long parseTime(final String val) {
+    String s = val;
+    if (s.length() < timeTemplate.length()) {
+      s = s + timeTemplate.substring(s.length());
+    }
+
+    final long millis = new Timestamps().logMillis(s);
+
+    if (millis == Timestamps.invalid) {
+      throw new IllegalArgumentException("Bad time: " + val);
+    }
+
+    return millis;
+  }
+
+  /**
+   * @param path of column file
+   * @return false if the file can't be read
+   */
+  public boolean query(final Path path) {
+    final long started = System.currentTimeMillis();
+
+    try (final var rdr = new ColumnFileReader(path)) {
+      final int numWhere = where.size();
+      final RequestColumn[] whereCols = new RequestColumn[numWhere];
+      final long[] whereIds = new long[numWhere];
+      boolean none = false;
+
+      int w = 0;
+      for (final var ent: where.entrySet()) {
+        whereCols[w] = ent.getKey();
+        whereIds[w] = rdr.lookup(ent.getKey(), ent.getValue());
+        none |= whereIds[w] == SymbolTable.none;
+        w++;
+      }
+
+      final Stats[] byContext =
+              new Stats[rdr.getDictionarySize(RequestColumn.context) + 1];
+
+      final long[][] whereVals = new long[numWhere][];
+      long[] starts = null;
+      long[] millis = null;
+      long[] contexts = null;
+      long[] errors = null;
+      int blocksRead = 0;
+      long matched = 0;
+
+      blocks:
+      for (int b = 0; !none && (b < rdr.getNumBlocks()); b++) {
+        final long minStart = rdr.getMin(b, RequestColumn.start);
+        final long maxStart = rdr.getMax(b, RequestColumn.start);
+
+        if ((maxStart < from) || (minStart >= to)) {
+          continue;
+        }
+
+        // Where values we need to check row by row
+        final boolean[] check = new boolean[numWhere];
+
+        for (int i = 0; i < numWhere; i++) {
+          final long min = rdr.getMin(b, whereCols[i]);
+          final long max = rdr.getMax(b, whereCols[i]);
+
+          if ((whereIds[i] < min) || (whereIds[i] > max)) {
+            continue blocks;
+          }
+
+          if (min != max) {
+            check[i] = true;
+            whereVals[i] = rdr.read(b, whereCols[i], whereVals[i]);
+          }
+        }
+
+        blocksRead++;
+
+        final boolean checkTime = (minStart < from) || (maxStart >= to);
+        if (checkTime) {
+          starts = rdr.read(b, RequestColumn.start, starts);
+        }
+
+        millis = rdr.read(b, RequestColumn.millis, millis);
+        contexts = rdr.read(b, RequestColumn.context, contexts);
+        errors = rdr.read(b, RequestColumn.error, errors);
+
+        rows:
+        for (int r = 0; r < rdr.getRows(b); r++) {
+          if (checkTime && ((starts[r] < from) || (starts[r] >= to))) {
+            continue;
+          }
+
+          for (int i = 0; i < numWhere; i++) {
+            if (check[i] && (whereVals[i][r] != whereIds[i])) {
+              continue rows;
+            }
+          }
+
+          final int ctx = (int)contexts[r];
+          var s = byContext[ctx];
+          if (s == null) {
+            s = new Stats(histogramBits);
+            byContext[ctx] = s;
+          }
+
+          s.histogram.record(millis[r]);
+          s.requests++;
+          s.errors += errors[r];
+          s.totalMillis += millis[r];
+          matched++;
+        }
+      }
+
+      final Map<String, Stats> byName = new TreeMap<>();
+      final var all = new Stats(histogramBits);
+
+      for (int ctx = 1; ctx < byContext.length; ctx++) {
+        if (byContext[ctx] != null) {
+          byName.put(rdr.name(RequestColumn.context, ctx),
+                     byContext[ctx]);
+          all.add(byContext[ctx]);
+        }
+      }
+
+      if (records == null) {
+        Output.fmt("%-12s %9s %7s %7s %7s %7s %7s %7s %7s",
+                   "context", "requests", "errors", "avg ms",
+                   "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms");
+      }
+
+      for (final var ent: byName.entrySet()) {
+        outStats(ent.getKey(), ent.getValue());
+      }
+      outStats("all", all);
+
+      final long elapsed = System.currentTimeMillis() - started;
+
+      if (records != null) {
+        Output.record(records.start(scanRecord)
+                             .value(rdr.getNumRows())
+                             .value(rdr.getNumBlocks())
+                             .value(blocksRead)
+                             .value(matched)
+                             .value(elapsed).end());
+      } else {
+        Output.line("");
+        Output.fmt("Read %d of %d blocks (%d requests) and matched %d " +
+                           "requests in %d ms",
+                   blocksRead, rdr.getNumBlocks(), rdr.getNumRows(),
+                   matched, elapsed);
+      }
+
+      return true;
+    } catch (final IOException ioe) {
+      Output.line(ioe.getMessage());
+      return false;
+    }
+  }
+
+  private void outStats(final String context,
+                        final Stats s) {
+    final var h = s.histogram;
+    final long avg = (s.requests == 0) ? 0 : s.totalMillis / s.requests;
+
+    if (records == null) {
+      Output.fmt("%-12s %9d %7d %7d %7d %7d %7d %7d %7d",
+                 context, s.requests, s.errors, avg,
+                 h.getValueAtPercentile(percentiles[0]),
+                 h.getValueAtPercentile(percentiles[1]),
+                 h.getValueAtPercentile(percentiles[2]),
+                 h.getValueAtPercentile(percentiles[3]),
+                 h.getMax());
+      return;
+    }
+
+    records.start(resultRecord)
+           .value(context)
+           .value(s.requests)
+           .value(s.errors)
+           .value(avg);
+
+    for (final double p: percentiles) {
+      records.value(h.getValueAtPercentile(p));
+    }
+
+    Output.record(records.value(h.getMax()).end());
+  }
+}
@@ -0,0 +1,180 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/** Compare the speed of the ways we have of reading a log file.
+ * Each reader is run twice and the second run reported so the
+ * figures are for a warmed up jvm and a file in the page cache.
+ *
+ * <p>For a compressed file the LineNumberReader figures are for
+ * decompression in the reading thread and the LineReader figures
+ * for decompression pipelined on its own thread.
+ *
+ * <p>Finally the bytes allocated per line are reported for a
+ * loganalyse and a full sessions run.
+ */
+public class ReadTiming {
+  private record Result(long lines, long infoLines, long millis) {}
+
+  public void process(final String logPathName) {
+    try {
+      final Path logPath = Paths.get(logPathName);
+      final String readerName;
+      try (final var lines = LineReader.open(logPath)) {
+        readerName = lines.getClass().getSimpleName();
+      }
+
+      outFmt("Compression: %s", LineReader.compression(logPath));
+
+      lineNumberReader(logPath);
+      report("LineNumberReader",
+             lineNumberReader(logPath));
+
+      lineReader(logPath, false);
+      report(readerName,
+             lineReader(logPath, false));
+
+      lineReader(logPath, true);
+      report(readerName + " + toString",
+             lineReader(logPath, true));
+
+      final long lines = lineReader(logPath, false).lines;
+
+      allocation(logPathName, lines, "loganalyse",
+                 LogAnalysis::new);
+      allocation(logPathName, lines, "sessions full",
+                 () -> new DisplaySessions(null, null, null, null,
+                                           false, false,
+                                           DisplaySessions.DisplayMode.full));
+    } catch (final Throwable t) {
+      t.printStackTrace();
+    }
+  }
+
+  private Result lineNumberReader(final Path logPath)
+          throws Throwable {
+    final long start = System.currentTimeMillis();
+    long infoLines = 0;
+
+    final Reader rdr;
+    switch (LineReader.compression(logPath)) {
+      case gzip:
+        rdr = new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(logPath),
+                                    64 * 1024),
+                StandardCharsets.UTF_8);
+        break;
+      case zstd:
+        throw new RuntimeException(
+                "Only gzip supported for LineNumberReader");
+      default:
+        rdr = new FileReader(logPath.toFile());
+    }
+
+    try (final var lnr = new LineNumberReader(rdr)) {
+      while (true) {
+        final var s = lnr.readLine();
+
+        if (s == null) {
+          return new Result(lnr.getLineNumber(), infoLines,
+                            System.currentTimeMillis() - start);
+        }
+
+        if (s.indexOf(" INFO ") == 23) {
+          infoLines++;
+        }
+      }
+    }
+  }
+
+  private Result lineReader(final Path logPath,
+                            final boolean toString) throws Throwable {
+    final long start = System.currentTimeMillis();
+    long infoLines = 0;
+
+    try (final var lines = LineReader.open(logPath)) {
+      while (true) {
+        final var line = lines.next();
+
+        if (line == null) {
+          return new Result(lines.getLineNumber(), infoLines,
+                            System.currentTimeMillis() - start);
+        }
+
+        if (toString) {
+          if (line.toString().indexOf(" INFO ") == 23) {
+            infoLines++;
+          }
+        } else if (line.regionMatches(23, " INFO ")) {
+          infoLines++;
+        }
+      }
+    }
+  }
+
+  /* Run the reader over the file and report bytes allocated per line.
+     Output is discarded while it runs.
+   */
+  private void allocation(final String logPathName,
+                          final long lines,
+                          final String name,
+                          final Supplier<LogReader> rdrs) {
+    final var bean = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    long allocated = 0;
+    long millis = 0;
+
+    // Twice to warm up - second run is reported
+    for (int i = 0; i < 2; i++) {
+      final var rdr = rdrs.get();
+      final long start = System.currentTimeMillis();
+      final long before = bean.getCurrentThreadAllocatedBytes();
+
+      final var prev = Output.set(
+              new AsyncOutput(Writer.nullWriter(), false, "bwlogs-discard",
+                              AsyncOutput.defaultBufferSize,
+                              AsyncOutput.defaultBuffers));
+      try {
+        rdr.process(logPathName, false, false);
+      } finally {
+        Output.set(prev).close();
+      }
+
+      allocated = bean.getCurrentThreadAllocatedBytes() - before;
+      millis = System.currentTimeMillis() - start;
+    }
+
+    outFmt("%-30s %10d bytes/line %8d ms",
+           name, allocated / Math.max(lines, 1), millis);
+  }
+
+  private void report(final String name,
+                      final Result res) {
+    final long millis = Math.max(res.millis, 1);
+
+    outFmt("%-30s %10d lines %10d info %8d ms %12d lines/sec",
+           name, res.lines, res.infoLines, res.millis,
+           res.lines * 1000 / millis);
+  }
+
+  private void outFmt(final String format,
+                      final Object... args) {
+    Output.fmt(format, args);
+  }
+}
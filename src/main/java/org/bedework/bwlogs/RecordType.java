@@ -0,0 +1,112 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** The name and fields of one kind of record written in json or csv
+ * format - see RecordWriter. The field names and the csv header are
+ * encoded once here rather than for every record.
+ *
+ * <p>Every record has the name of its type as its first field -
+ * "record" - so they can be told apart in a mixed stream.
+ */
+public class RecordType {
+  // All the types - to find the type of an encoded csv row
+  private static final List<RecordType> types =
+          new CopyOnWriteArrayList<>();
+
+  /** Text written outside a record while json or csv is being
+   * written - e.g. error messages */
+  public static final RecordType message =
+          RecordType.of("message", "text");
+
+  private final String name;
+  private final String[] fields;
+
+  // ,"field": for each field
+  final String[] jsonNames;
+
+  // {"record":"name"
+  final String jsonStart;
+
+  final String csvHeader;
+
+  /** Types are registered so csv rows can be recognized - see
+   * forCsvRow.
+   *
+   * @param name of the type - letters and digits only
+   * @param fields names of the fields - letters and digits only
+   * @return the new type
+   */
+  public static RecordType of(final String name,
+                              final String... fields) {
+    final var rt = new RecordType(name, fields);
+    types.add(rt);
+
+    return rt;
+  }
+
+  private RecordType(final String name,
+                     final String... fields) {
+    this.name = name;
+    this.fields = fields;
+
+    jsonNames = new String[fields.length];
+    final var hdr = new StringBuilder("record");
+
+    for (int i = 0; i < fields.length; i++) {
+      jsonNames[i] = ",\"" + fields[i] + "\":";
+      hdr.append(',').append(fields[i]);
+    }
+
+    jsonStart = "{\"record\":\"" + name + "\"";
+    csvHeader = hdr.toString();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getNumFields() {
+    return fields.length;
+  }
+
+  /**
+   * @param i index
+   * @return name of field
+   */
+  public String getField(final int i) {
+    return fields[i];
+  }
+
+  /**
+   * @param row a csv encoded record
+   * @return its type or null if it's not one we know
+   */
+  static RecordType forCsvRow(final CharSequence row) {
+    for (final var rt: types) {
+      final int len = rt.name.length();
+
+      if ((row.length() > len) && (row.charAt(len) == ',') &&
+              regionMatches(row, rt.name)) {
+        return rt;
+      }
+    }
+
+    return null;
+  }
+
+  private static boolean regionMatches(final CharSequence row,
+                                       final String val) {
+    for (int i = 0; i < val.length(); i++) {
+      if (row.charAt(i) != val.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,185 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** Encodes records for the json and csv output formats. A record is
+ * built up in a builder reused for every record with<pre>
+ *   rw.start(type).value(...)...value(...).end()
+ * </pre>
+ * with a value for each field of the type, in order. Numbers are
+ * appended directly so nothing is allocated for a record.
+ *
+ * <p>Not thread safe - each reader has its own.
+ */
+public abstract class RecordWriter {
+  public enum Format {
+    text,  // Tables for people to read
+    json,  // One json object per line
+    csv    // Comma separated with a header for each record type
+  }
+
+  protected final StringBuilder sb = new StringBuilder(256);
+
+  protected RecordType type;
+
+  // Index of the next field
+  private int field;
+
+  /**
+   * @param format wanted
+   * @return a writer or null for text
+   */
+  public static RecordWriter forFormat(final Format format) {
+    switch (format) {
+      case json:
+        return new JsonRecordWriter();
+      case csv:
+        return new CsvRecordWriter();
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @param val type of the record
+   * @return this
+   */
+  public RecordWriter start(final RecordType val) {
+    sb.setLength(0);
+    type = val;
+    field = 0;
+    begin();
+
+    return this;
+  }
+
+  /**
+   * @param val string value - may be null
+   * @return this
+   */
+  public RecordWriter value(final CharSequence val) {
+    nextField();
+
+    if (val == null) {
+      nullValue();
+    } else {
+      string(val);
+    }
+
+    return this;
+  }
+
+  /**
+   * @param val integer value
+   * @return this
+   */
+  public RecordWriter value(final long val) {
+    nextField();
+    sb.append(val);
+
+    return this;
+  }
+
+  /** Written with at most 3 decimal places.
+   *
+   * @param val numeric value
+   * @return this
+   */
+  public RecordWriter value(final double val) {
+    nextField();
+
+    if (Double.isNaN(val) || Double.isInfinite(val)) {
+      nullValue();
+    } else if (Math.abs(val) >= 1e15) {
+      sb.append(val);
+    } else {
+      decimal(val);
+    }
+
+    return this;
+  }
+
+  /**
+   * @param val boolean value
+   * @return this
+   */
+  public RecordWriter value(final boolean val) {
+    nextField();
+    sb.append(val);
+
+    return this;
+  }
+
+  /**
+   * @return the encoded record - valid until the next start
+   */
+  public CharSequence end() {
+    if (field != type.getNumFields()) {
+      throw new IllegalStateException(
+              "Record " + type.getName() + " has " + field +
+                      " of " + type.getNumFields() + " fields");
+    }
+
+    finish();
+
+    return sb;
+  }
+
+  /**
+   * @param text to output
+   * @return the text as a message record - valid until the next start
+   */
+  public CharSequence message(final CharSequence text) {
+    return start(RecordType.message).value(text).end();
+  }
+
+  /** Called after the builder is reset for a record */
+  protected abstract void begin();
+
+  /** Called before each value
+   *
+   * @param i index of the field
+   */
+  protected abstract void separator(int i);
+
+  protected abstract void string(CharSequence val);
+
+  protected abstract void nullValue();
+
+  /** Called once all the values are added */
+  protected abstract void finish();
+
+  private void nextField() {
+    if (field >= type.getNumFields()) {
+      throw new IllegalStateException(
+              "Too many values for record " + type.getName());
+    }
+
+    separator(field);
+    field++;
+  }
+
+  private void decimal(final double val) {
+    long scaled = Math.round(val * 1000);
+
+    if (scaled < 0) {
+      sb.append('-');
+      scaled = -scaled;
+    }
+
+    sb.append(scaled / 1000);
+
+    int frac = (int)(scaled % 1000);
+    if (frac == 0) {
+      return;
+    }
+
+    sb.append('.');
+
+    for (int div = 100; frac != 0; div /= 10) {
+      sb.append((char)('0' + frac / div));
+      frac %= div;
+    }
+  }
+}
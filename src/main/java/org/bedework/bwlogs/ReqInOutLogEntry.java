@@ -5,28 +5,36 @@ package org.bedework.bwlogs;
 
 import org.bedework.base.ToString;
 
-import org.apache.http.NameValuePair;
-import org.apache.http.client.utils.URLEncodedUtils;
-
-import java.net.URI;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 /**
  * User: mike Date: 1/14/20 Time: 22:27
  */
 public class ReqInOutLogEntry extends LogEntry {
-  public static final Map<String, Integer> ipMap = new HashMap<>();
+  static final String requestName = "REQUEST";
+  static final String requestOutName = "REQUEST-OUT";
+
+  // Start of the log text
+  static final String requestMarker = requestName + ":";
+  static final String requestOutMarker = requestOutName + ":";
 
   public String ip;
 
+  // Ids in the run's symbols
+  int sessionSym;
+  int ipSym;
+  int contextSym;
+
   String url;
 
-  boolean unparseable;
+  // Of the REQUEST line - when known. See SessionIndex
+  long fileOffset;
+
+  // Split on first use
+  private UrlParts urlParts;
+
   public boolean placeHolder;
 
-  List<NameValuePair> params;
+  // Log entries kept for display - see DisplaySessions
+  EntryBuffer buffer;
 
   public String context;
   public String request;
@@ -53,33 +61,36 @@ public class ReqInOutLogEntry extends LogEntry {
   public static ReqInOutLogEntry forMissingEntry(final LogEntry le) {
     final var ri = new ReqInOutLogEntry();
 
+    ri.rehome(le.symbols());
     ri.placeHolder = true;
-    ri.dt = le.dt;
-    ri.logText = le.logText;
-    ri.className = le.className;
-    ri.taskId = le.taskId;
+    ri.setDt(le.getDt());
+    ri.millis = le.millis;
+    ri.setLogText(le.getLogText());
+    ri.setClassName(le.getClassName());
+    ri.setTaskId(le.getTaskId());
     return ri;
   }
 
-  public Integer parse(final String req,
+  /**
+   * @param hdr parsed header for a line whose text starts with
+   *            requestMarker or requestOutMarker
+   * @param in true for REQUEST
+   * @return position we reached or null for bad record
+   */
+  public Integer parse(final LogEntry hdr,
                        final boolean in) {
-    final String logName;
-    if (in) {
-      logName = "REQUEST";
-    } else {
-      logName = "REQUEST-OUT";
-    }
-
-    if (!req.contains(" " + logName + ":") ||
-            (super.parse(req, logName, "INFO") == null)) {
+    if (parse(hdr, in ? requestName : requestOutName) == null) {
       return null;
     }
 
-    sessionId = field();
-    if (sessionId == null) {
+    final var syms = symbols();
+
+    sessionSym = symField(syms.sessionIds, "");
+    if (sessionSym < 0) {
       error("No session end found for %s", req);
       return null;
     }
+    sessionId = syms.sessionIds.name(sessionSym);
 
     logPrefix = field();
 
@@ -89,13 +100,15 @@ public class ReqInOutLogEntry extends LogEntry {
       return null;
     }
 
-    ip = field("http");
-    if (ip == null) {
+    ipSym = symField(syms.ips, "http");
+    if (ipSym < 0) {
       error("No ip for %s", req);
       return null;
     }
+    ip = syms.ips.name(ipSym);
 
     url = dashField();
+    urlParts = null;
     if (url == null) {
       error("No url for %s", req);
       return null;
@@ -116,17 +129,12 @@ public class ReqInOutLogEntry extends LogEntry {
     }
 
     // I think it's always the last field
-    xForwardedFor = req.substring(curPos);
-
-    if (!xForwardedFor.equals("NONE")) {
-      ip = xForwardedFor;
-    }
-
-    if (in) {
-      int ct = ipMap.computeIfAbsent(ip, k -> 0);
-
-      ct = ct + 1;
-      ipMap.put(ip, ct);
+    if ((req.length() - curPos == 4) && req.startsWith("NONE", curPos)) {
+      xForwardedFor = "NONE";
+    } else {
+      ipSym = syms.ips.intern(req, curPos, req.length());
+      ip = syms.ips.name(ipSym);
+      xForwardedFor = ip;
     }
 
     // Parse out the url
@@ -148,11 +156,13 @@ public class ReqInOutLogEntry extends LogEntry {
     }
 
     try {
-      context = url.substring(urlPos, endContextPos);
+      contextSym = syms.contexts.intern(url, urlPos, endContextPos);
+      context = syms.contexts.name(contextSym);
       request = url.substring(reqPos);
 
       if (context.trim().isEmpty()) {
         context = null;
+        contextSym = SymbolTable.none;
       }
     } catch (final Throwable t) {
       out("%s", req);
@@ -162,14 +172,20 @@ public class ReqInOutLogEntry extends LogEntry {
       return null;
     }
 
-    try {
-      params = URLEncodedUtils.parse(new URI(url), "UTF-8");
-      unparseable = false;
-    } catch (final Throwable ignored) {
-      unparseable = true;
+    return curPos;
+  }
+
+  @Override
+  protected boolean rehome(final Symbols val) {
+    if (!super.rehome(val)) {
+      return false;
     }
 
-    return curPos;
+    sessionSym = val.sessionIds.intern(sessionId);
+    ipSym = val.ips.intern(ip);
+    contextSym = val.contexts.intern(context);
+
+    return true;
   }
 
   public boolean sameTask(final ReqInOutLogEntry otherEntry) {
@@ -214,6 +230,17 @@ public class ReqInOutLogEntry extends LogEntry {
     return (url != null) && url.contains(";jsessionid=");
   }
 
+  /**
+   * @return the url split into path and parameters - null if none
+   */
+  public UrlParts getUrlParts() {
+    if ((urlParts == null) && (url != null)) {
+      urlParts = new UrlParts().parse(url);
+    }
+
+    return urlParts;
+  }
+
   String dashField() {
     final int start = curPos;
     final int end = req.indexOf(" - ", start);
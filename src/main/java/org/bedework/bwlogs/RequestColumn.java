@@ -0,0 +1,33 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** The columns of an exported request file - see ColumnFileWriter.
+ * Strings are stored as ids in a dictionary for the column - 0 for
+ * no value.
+ */
+public enum RequestColumn {
+  start(false),     // Millis since the epoch of the REQUEST
+  millis(false),    // Time to the REQUEST-OUT
+  context(true),
+  endpoint(true),   // See EndpointTemplate
+  ip(true),
+  session(true),
+  user(true),       // From getRemoteUser if logged
+  task(true),
+  error(false);     // 1 if an ERROR line was logged for the request
+
+  private final boolean dictionary;
+
+  RequestColumn(final boolean dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * @return true if values are ids in a dictionary
+   */
+  public boolean isDictionary() {
+    return dictionary;
+  }
+}
@@ -0,0 +1,344 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/** An index of the requests in a log, kept in a file next to it -
+ * see SessionIndexer - so sessions can read only the parts of the log
+ * with the requests it wants.
+ *
+ * <p>For each request the index has the offsets of its REQUEST line
+ * and of the end of its REQUEST-OUT line, its task id, session id and
+ * user - as found by DisplaySessions - and the timestamp of the
+ * REQUEST. The file is<pre>
+ *   magic, version, size of log, hash of the start of the log
+ *   the entries - start, end, task, session, user ids, timestamp
+ *   the task, session and user dictionaries - count then strings
+ *   offset of dictionaries, number of entries,
+ *   offset of the first request still in flight at the end, magic
+ * </pre>
+ *
+ * <p>If the log has grown since it was indexed the rest of it, from
+ * the first request in flight, is read as well. If it has been
+ * replaced the index is ignored.
+ */
+public class SessionIndex {
+  static final int magic = 0x42575349; // BWSI
+  static final int version = 1;
+
+  static final int headerSize = 24;
+  static final int trailerSize = 28;
+
+  static final int dtLength = 23;
+  static final int entrySize = 8 + 8 + 4 + 4 + 4 + dtLength;
+
+  // Bytes at the start of the log hashed to spot a new log
+  static final int headBytes = 4096;
+
+  // Regions closer than this are read as one
+  private static final long mergeGap = 64 * 1024;
+
+  private final Path indexPath;
+  private final long logSize;
+  private final long dictOffset;
+  private final long numEntries;
+  private final long tailStart;
+
+  /**
+   * @param log path of the log
+   * @return path of the index - hidden so it isn't taken for a log
+   */
+  public static Path sidecar(final Path log) {
+    return log.resolveSibling("." + log.getFileName() + ".bwidx");
+  }
+
+  /**
+   * @param log path of log
+   * @return its index or null if it has none or the index is for
+   *         a different log
+   * @throws IOException on read error
+   */
+  public static SessionIndex open(final Path log) throws IOException {
+    final Path indexPath = sidecar(log);
+
+    if (!Files.exists(indexPath)) {
+      return null;
+    }
+
+    try (final var chan = FileChannel.open(indexPath, READ)) {
+      final long size = chan.size();
+      if (size < headerSize + trailerSize) {
+        return null;
+      }
+
+      final var hdr = read(chan, 0, headerSize);
+      if ((hdr.getInt() != magic) || (hdr.getInt() != version)) {
+        return null;
+      }
+
+      final long logSize = hdr.getLong();
+      final long hash = hdr.getLong();
+
+      if ((Files.size(log) < logSize) ||
+              (headHash(log, logSize) != hash)) {
+        return null;
+      }
+
+      final var trl = read(chan, size - trailerSize, trailerSize);
+      final long dictOffset = trl.getLong();
+      final long numEntries = trl.getLong();
+      final long tailStart = trl.getLong();
+
+      if (trl.getInt() != magic) {
+        return null;
+      }
+
+      return new SessionIndex(indexPath, logSize, dictOffset,
+                              numEntries, tailStart);
+    }
+  }
+
+  private SessionIndex(final Path indexPath,
+                       final long logSize,
+                       final long dictOffset,
+                       final long numEntries,
+                       final long tailStart) {
+    this.indexPath = indexPath;
+    this.logSize = logSize;
+    this.dictOffset = dictOffset;
+    this.numEntries = numEntries;
+    this.tailStart = tailStart;
+  }
+
+  public long getNumEntries() {
+    return numEntries;
+  }
+
+  /** The arguments are the sessions filters - null for none. As for
+   * DisplaySessions a request with no session id matches any.
+   *
+   * @param log path of the log - may have grown since indexing
+   * @param taskId exact task id
+   * @param sessionId exact session id
+   * @param user exact user
+   * @param requestDt start of the REQUEST timestamp
+   * @return start and end of each region of the log to read
+   * @throws IOException on read error
+   */
+  public long[] select(final Path log,
+                       final String taskId,
+                       final String sessionId,
+                       final String user,
+                       final String requestDt) throws IOException {
+    final byte[] dtPrefix;
+    if (requestDt == null) {
+      dtPrefix = null;
+    } else {
+      dtPrefix = requestDt.getBytes(StandardCharsets.UTF_8);
+    }
+
+    long[] starts = new long[64];
+    long[] ends = new long[64];
+    int num = 0;
+
+    try (final var chan = FileChannel.open(indexPath, READ)) {
+      // Ids of the wanted values - -1 for no filter
+      final int[] wanted = lookup(chan, taskId, sessionId, user);
+
+      final var in = new DataInputStream(new BufferedInputStream(
+              Channels.newInputStream(chan.position(headerSize)),
+              64 * 1024));
+      final byte[] dt = new byte[dtLength];
+
+      for (long i = 0; i < numEntries; i++) {
+        final long start = in.readLong();
+        final long end = in.readLong();
+        final int task = in.readInt();
+        final int sess = in.readInt();
+        final int usr = in.readInt();
+        in.readFully(dt);
+
+        if (((wanted[0] >= 0) && (task != wanted[0])) ||
+                ((wanted[1] >= 0) && (sess != SymbolTable.none) &&
+                         (sess != wanted[1])) ||
+                ((wanted[2] >= 0) && (usr != wanted[2])) ||
+                ((dtPrefix != null) && !startsWith(dt, dtPrefix))) {
+          continue;
+        }
+
+        if (num == starts.length) {
+          starts = Arrays.copyOf(starts, num * 2);
+          ends = Arrays.copyOf(ends, num * 2);
+        }
+
+        starts[num] = start;
+        ends[num] = end;
+        num++;
+      }
+    }
+
+    final long size = Files.size(log);
+    if (size > logSize) {
+      // Appended since indexed
+      if (num == starts.length) {
+        starts = Arrays.copyOf(starts, num + 1);
+        ends = Arrays.copyOf(ends, num + 1);
+      }
+
+      starts[num] = tailStart;
+      ends[num] = size;
+      num++;
+    }
+
+    return union(starts, ends, num);
+  }
+
+  /**
+   * @param log path
+   * @param size bytes of the log indexed
+   * @return hash of the first bytes of the log
+   * @throws IOException on read error
+   */
+  static long headHash(final Path log,
+                       final long size) throws IOException {
+    try (final var chan = FileChannel.open(log, READ)) {
+      final var bb = read(chan, 0, (int)Math.min(size, headBytes));
+      final var crc = new CRC32();
+      crc.update(bb);
+
+      return crc.getValue();
+    }
+  }
+
+  /* Find the ids of the values in the dictionaries.
+   */
+  private int[] lookup(final FileChannel chan,
+                       final String... vals) throws IOException {
+    final int[] ids = new int[vals.length];
+    final byte[][] valBytes = new byte[vals.length][];
+
+    for (int i = 0; i < vals.length; i++) {
+      if (vals[i] == null) {
+        ids[i] = -1;
+      } else {
+        // Stays MAX_VALUE if not in the dictionary - no entry has that
+        // id so nothing matches. Not none - that is the id of entries
+        // with no value, which the session filter lets through.
+        ids[i] = Integer.MAX_VALUE;
+        valBytes[i] = vals[i].getBytes(StandardCharsets.UTF_8);
+      }
+    }
+
+    final var in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(chan.position(dictOffset)),
+            64 * 1024));
+    byte[] b = new byte[256];
+
+    for (int i = 0; i < vals.length; i++) {
+      final int count = in.readInt();
+
+      for (int id = 1; id <= count; id++) {
+        final int len = in.readInt();
+        if (b.length < len) {
+          b = new byte[len];
+        }
+        in.readFully(b, 0, len);
+
+        if ((valBytes[i] != null) &&
+                Arrays.equals(b, 0, len,
+                              valBytes[i], 0, valBytes[i].length)) {
+          ids[i] = id;
+        }
+      }
+    }
+
+    return ids;
+  }
+
+  private static boolean startsWith(final byte[] val,
+                                    final byte[] prefix) {
+    if (prefix.length > val.length) {
+      return false;
+    }
+
+    return Arrays.equals(val, 0, prefix.length,
+                         prefix, 0, prefix.length);
+  }
+
+  /* Starts and ends sorted separately give the union of the regions -
+     a region ends when as many have ended as have started. Regions
+     close together are joined.
+   */
+  private static long[] union(final long[] starts,
+                              final long[] ends,
+                              final int num) {
+    Arrays.sort(starts, 0, num);
+    Arrays.sort(ends, 0, num);
+
+    final long[] res = new long[num * 2];
+    int len = 0;
+    int open = 0;
+    int e = 0;
+
+    for (int s = 0; s < num; s++) {
+      // Close regions ending before this one starts
+      while ((e < num) && (ends[e] < starts[s])) {
+        e++;
+        open--;
+
+        if (open == 0) {
+          res[len - 1] = ends[e - 1];
+        }
+      }
+
+      if (open == 0) {
+        if ((len > 0) && (starts[s] - res[len - 1] <= mergeGap)) {
+          // Extend the last region
+        } else {
+          res[len] = starts[s];
+          res[len + 1] = starts[s];
+          len += 2;
+        }
+      }
+
+      open++;
+    }
+
+    if (num > 0) {
+      res[len - 1] = ends[num - 1];
+    }
+
+    return Arrays.copyOf(res, len);
+  }
+
+  private static ByteBuffer read(final FileChannel chan,
+                                 final long offset,
+                                 final int len) throws IOException {
+    final var bb = ByteBuffer.allocate(len);
+
+    long pos = offset;
+    while (bb.hasRemaining()) {
+      final int n = chan.read(bb, pos);
+      if (n < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      pos += n;
+    }
+
+    return bb.flip();
+  }
+}
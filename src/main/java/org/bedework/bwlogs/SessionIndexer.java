@@ -0,0 +1,183 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.bedework.bwlogs.SessionIndex.dtLength;
+import static org.bedework.bwlogs.SessionIndex.entrySize;
+import static org.bedework.bwlogs.SessionIndex.headerSize;
+import static org.bedework.bwlogs.SessionIndex.magic;
+import static org.bedework.bwlogs.SessionIndex.version;
+
+/** Writes a SessionIndex for each log. The index is written to a
+ * temporary file and moved into place so a sessions run never sees
+ * half an index.
+ *
+ * <p>Compressed logs are not indexed - they can't be read from the
+ * middle.
+ */
+public class SessionIndexer extends LogReader {
+  private static final String remoteUser = "getRemoteUser = ";
+  private static final String sessionIdText = "getRequestedSessionId = ";
+
+  private static final byte[] blankDt = " ".repeat(dtLength)
+                                           .getBytes(StandardCharsets.UTF_8);
+
+  // For the log being indexed
+  private DataOutputStream out;
+  private SymbolTable taskIds;
+  private SymbolTable sessionIds;
+  private SymbolTable users;
+  private long numEntries;
+
+  private int numLogs;
+  private long totalEntries;
+  private long totalIndexBytes;
+
+  @Override
+  protected boolean wantsRecords() {
+    return true;
+  }
+
+  @Override
+  protected void processFile(final Path path) throws IOException {
+    if (LineReader.compression(path) != LineReader.Compression.none) {
+      outFmt("Not indexing compressed log %s", path);
+      return;
+    }
+
+    final long size = Files.size(path);
+    final Path indexPath = SessionIndex.sidecar(path);
+    final Path tmpPath = indexPath.resolveSibling(
+            indexPath.getFileName() + ".tmp");
+
+    taskIds = new SymbolTable();
+    sessionIds = new SymbolTable();
+    users = new SymbolTable();
+    numEntries = 0;
+
+    try {
+      try (final var os = new DataOutputStream(new BufferedOutputStream(
+              Files.newOutputStream(tmpPath), 64 * 1024))) {
+        out = os;
+
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeLong(size);
+        out.writeLong(SessionIndex.headHash(path, size));
+
+        processRegions(path, new long[]{0, size});
+
+        // Read from here if the log grows - the last line may have
+        // been partly written
+        long tailStart = lineStart;
+        for (final var rs: tasks.values()) {
+          if (!rs.placeHolder) {
+            tailStart = Math.min(tailStart, rs.fileOffset);
+          }
+        }
+
+        // Not out.size() - it stops at Integer.MAX_VALUE
+        final long dictOffset = headerSize + numEntries * entrySize;
+
+        writeDictionary(taskIds);
+        writeDictionary(sessionIds);
+        writeDictionary(users);
+
+        out.writeLong(dictOffset);
+        out.writeLong(numEntries);
+        out.writeLong(tailStart);
+        out.writeInt(magic);
+      } finally {
+        out = null;
+      }
+
+      Files.move(tmpPath, indexPath, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (final IOException | RuntimeException e) {
+      Files.deleteIfExists(tmpPath);
+      throw e;
+    }
+
+    numLogs++;
+    totalEntries += numEntries;
+    totalIndexBytes += Files.size(indexPath);
+  }
+
+  @Override
+  public void processRecord(final String s,
+                            final LogEntry le) {
+    if ((le == null) || le.unparsed) {
+      return;
+    }
+
+    final var rs = tasks.get(le.getTaskSym());
+
+    if ((rs == null) || rs.placeHolder) {
+      return;
+    }
+
+    if (le.logTextStartsWith(remoteUser)) {
+      rs.user = le.getLogText().substring(remoteUser.length());
+    } else if (le.logTextStartsWith(sessionIdText)) {
+      rs.sessid = le.getLogText().substring(sessionIdText.length());
+    }
+  }
+
+  @Override
+  public void processInfo(final ReqInOutLogEntry rs) {
+  }
+
+  @Override
+  public void requestOut(final ReqInOutLogEntry rsin,
+                         final ReqInOutLogEntry rsout) {
+    try {
+      out.writeLong(rsin.fileOffset);
+      out.writeLong(lineEnd);
+      out.writeInt(taskIds.intern(rsin.getTaskId()));
+      out.writeInt(sessionIds.intern(rsin.sessid));
+      out.writeInt(users.intern(rsin.user));
+
+      final var dt = rsin.getDt();
+      final byte[] dtBytes;
+      if (dt == null) {
+        dtBytes = blankDt;
+      } else {
+        dtBytes = dt.getBytes(StandardCharsets.UTF_8);
+      }
+
+      final int len = Math.min(dtBytes.length, dtLength);
+      out.write(dtBytes, 0, len);
+      out.write(blankDt, 0, dtLength - len);
+    } catch (final IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+
+    numEntries++;
+  }
+
+  @Override
+  public void results() {
+    outFmt("Indexed %d requests in %d logs (%d bytes of index)",
+           totalEntries, numLogs, totalIndexBytes);
+  }
+
+  private void writeDictionary(final SymbolTable dict)
+          throws IOException {
+    out.writeInt(dict.size());
+
+    for (int id = 1; id <= dict.size(); id++) {
+      final byte[] bytes = dict.name(id).getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+}
@@ -2,26 +2,37 @@ package org.bedework.bwlogs;
 
 public class SessionInfo extends LogEntry {
   String sessionId;
+  int sessionSym; // id in the run's symbols
   int numActive;
   long sessionCt;
   int numRequests;
 
+  // Created by a request - no SESSION-START seen
+  boolean placeHolder;
+
   public String ip;
 
+  static final String sessionStartName = "SESSION-START";
+
+  // Start of the log text
+  static final String sessionStartMarker = sessionStartName + ":";
+
   /*
   SESSION-START:YBc2oVwhs2GxocLDlqKx9Ui4EnMgSrLt-Uj-BPYU:?:347:14051:1052M:2000M
    */
-  public Integer parse(final String req) {
-    if (!req.contains(" SESSION-START:") ||
-        (super.parse(req, "SESSION-START", "INFO") == null)) {
+  public Integer parse(final LogEntry hdr) {
+    if (parse(hdr, sessionStartName) == null) {
       return null;
     }
 
-    sessionId = field();
-    if (sessionId == null) {
+    final var sessionIds = symbols().sessionIds;
+
+    sessionSym = symField(sessionIds, "");
+    if (sessionSym < 0) {
       error("No session end found for %s", req);
       return null;
     }
+    sessionId = sessionIds.name(sessionSym);
 
     final var skip = field();
 
@@ -41,4 +52,15 @@ public class SessionInfo extends LogEntry {
 
     return curPos;
   }
+
+  @Override
+  protected boolean rehome(final Symbols val) {
+    if (!super.rehome(val)) {
+      return false;
+    }
+
+    sessionSym = val.sessionIds.intern(sessionId);
+
+    return true;
+  }
 }
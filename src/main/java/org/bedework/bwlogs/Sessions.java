@@ -3,35 +3,43 @@ package org.bedework.bwlogs;
 import org.bedework.util.misc.Util;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 public class Sessions {
-  // key is sessionid
-  protected final Map<String, SessionInfo> sessionInfos =
-      new HashMap<>();
+  private final Symbols symbols;
 
-  // key is ip
-  final Map<String, Collection<SessionInfo>> ipSessionMap =
-      new HashMap<>();
+  // key is sessionid symbol
+  protected final SymbolMap<SessionInfo> sessionInfos =
+      new SymbolMap<>();
 
-  public SessionInfo trySessionStart(final String ln) {
+  // key is ip symbol - none for sessions we have no ip for
+  final SymbolMap<List<SessionInfo>> ipSessionMap =
+      new SymbolMap<>();
+
+  /**
+   * @param symbols for the run
+   */
+  public Sessions(final Symbols symbols) {
+    this.symbols = symbols;
+  }
+
+  /**
+   * @param hdr parsed header of a SESSION-START line
+   * @return the session or null for a bad line
+   */
+  public SessionInfo sessionStart(final LogEntry hdr) {
     final var si = new SessionInfo();
-    final var res = si.parse(ln);
+    final var res = si.parse(hdr);
 
     if ((res == null) || (res < 0)) {
       return null;
     }
 
-    final var sid = si.sessionId;
-    sessionInfos.put(sid, si);
-
-    final var sis = ipSessionMap
-        .computeIfAbsent(si.ip,
-                         k -> new ArrayList<>());
-    sis.add(si);
+    sessionInfos.put(si.sessionSym, si);
+    addToIpSessionMap(symbols.ips.intern(si.ip), si);
 
     return si;
   }
@@ -40,29 +48,94 @@ public class Sessions {
     return sessionInfos.size();
   }
 
-  public void requestIn(final String sessionId,
-                        final String ip) {
-    final var si = sessionInfos.get(sessionId);
+  /**
+   * @param rs parsed REQUEST using our symbols
+   */
+  public void requestIn(final ReqInOutLogEntry rs) {
+    final var si = sessionInfos.get(rs.sessionSym);
     if (si != null) {
       si.numRequests++;
 
       if (si.ip == null) {
-        addToIpSessionMap(ip, si);
+        addToIpSessionMap(rs.ipSym, si);
       }
-      si.ip = ip;
+      si.ip = rs.ip;
     } else {
       // No session start seen
       final var newSi = new SessionInfo();
-      newSi.ip = ip;
-      sessionInfos.put(sessionId, newSi);
-      addToIpSessionMap(ip, newSi);
+      newSi.rehome(symbols);
+      newSi.sessionId = rs.sessionId;
+      newSi.sessionSym = rs.sessionSym;
+      newSi.placeHolder = true;
+      newSi.ip = rs.ip;
+      sessionInfos.put(rs.sessionSym, newSi);
+      addToIpSessionMap(rs.ipSym, newSi);
     }
   }
 
-  private void addToIpSessionMap(final String ip,
+  /** Add the sessions from another part of the log. If the other
+   * part only saw requests for a session we already have (no
+   * SESSION-START) those requests are added to our count. Otherwise
+   * the other part's entry replaces ours.
+   *
+   * <p>The other part has its own symbols so its entries are moved
+   * to ours.
+   *
+   * @param other sessions to add
+   */
+  public void add(final Sessions other) {
+    // Placeholders for sessions we have
+    final var merged = new HashSet<SessionInfo>();
+
+    other.ipSessionMap.forEach((otherIpSym, sis) -> {
+      final int ipSym =
+              symbols.ips.intern(other.symbols.ips.name(otherIpSym));
+
+      for (final var si: sis) {
+        if (!si.placeHolder) {
+          continue;
+        }
+
+        final var ourSi = sessionInfos.get(
+                symbols.sessionIds.lookup(si.sessionId));
+        if (ourSi == null) {
+          continue;
+        }
+
+        // The first request would have been counted against ours
+        ourSi.numRequests += si.numRequests + 1;
+
+        if (ourSi.ip == null) {
+          addToIpSessionMap(ipSym, ourSi);
+        }
+        ourSi.ip = si.ip;
+        merged.add(si);
+      }
+    });
+
+    other.sessionInfos.forEach((otherSym, si) -> {
+      if (!merged.contains(si)) {
+        si.rehome(symbols);
+        sessionInfos.put(si.sessionSym, si);
+      }
+    });
+
+    other.ipSessionMap.forEach((otherIpSym, sis) -> {
+      final int ipSym =
+              symbols.ips.intern(other.symbols.ips.name(otherIpSym));
+
+      for (final var si: sis) {
+        if (!merged.contains(si)) {
+          addToIpSessionMap(ipSym, si);
+        }
+      }
+    });
+  }
+
+  private void addToIpSessionMap(final int ipSym,
                                  final SessionInfo si) {
     final var sis = ipSessionMap
-        .computeIfAbsent(ip,
+        .computeIfAbsent(ipSym,
                          k -> new ArrayList<>());
     sis.add(si);
   }
@@ -76,8 +149,17 @@ public class Sessions {
   }
 
   public SessionCounts getSessionCounts(final String ip) {
+    final var ipSym = symbols.ips.lookup(ip);
+    if ((ip != null) && (ipSym == SymbolTable.none)) {
+      return new SessionCounts(-999, -999);
+    }
+
+    return getSessionCounts(ipSym);
+  }
+
+  private SessionCounts getSessionCounts(final int ipSym) {
     var total = 0L;
-    final var sis = ipSessionMap.get(ip);
+    final var sis = ipSessionMap.get(ipSym);
     if (sis == null) {
       return new SessionCounts(-999, -999);
     }
@@ -92,9 +174,8 @@ public class Sessions {
   public List<Map.Entry<String, SessionCounts>> getAllSessionCounts() {
     final var ipCounts = new HashMap<String, SessionCounts>();
 
-    for (final var ip: ipSessionMap.keySet()) {
-      ipCounts.put(ip, getSessionCounts(ip));
-    }
+    ipSessionMap.forEach((ipSym, sis) ->
+            ipCounts.put(symbols.ips.name(ipSym), getSessionCounts(ipSym)));
 
     return Util.sortMap(ipCounts).reversed();
   }
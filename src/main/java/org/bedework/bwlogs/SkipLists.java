@@ -0,0 +1,237 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Prefixes of the lines the sessions action leaves out. They are
+ * described in a simple text format - see defaultLists - and each
+ * list is compiled into a PrefixSet so testing a line takes the same
+ * time however long the lists get.
+ */
+public class SkipLists {
+  public static final String defaultLists = """
+      # Prefixes of lines left out by the sessions action. Each line is
+      #
+      #   <list> "<prefix>"
+      #
+      # where <list> is one of
+      #   class    skip lines logged by a class starting with prefix
+      #   content  skip lines whose text starts with prefix
+      #   summary  also skip these when displaying a summary
+      #
+      # Everything between the quotes is part of the prefix.
+
+      # Lines logged by these classes
+      class "org.apache.struts2"
+      class "org.bedework.timezones.server."
+      class "org.bedework.util.servlet.HttpServletUtils"
+
+      # Lines with this text
+      content "A soft-locked cache entry was expired"
+      content "About to claim module default"
+      content "About to clone: "
+      content "About to embed "
+      content "About to flush"
+      content "About to get state"
+      content "About to prepare render"
+      content "actionType:"
+      content "After embed "
+      content "Client interface -- Found in session"
+      content "Cloned: "
+      content "Close for "
+      content "contentlen="
+      content "conversation: "
+      content "current change token: "
+      content "entry"
+      content " For col /"
+      content "Found form in session"
+      content "Get Calendar home for "
+      content "getCb(): from session-- set req in cb"
+      content "getState-- obtainedfrom session"
+      content "getState-- timeout interval"
+      content "getUserEntry for "
+      content "getUserPrincipal.name"
+      content "getWriter called"
+      content "host="
+      content "HttpUtils.getRequestURL(req) = "
+      content "java.sql.Connection#beginRequest has been invoked"
+      content "java.sql.Connection#endRequest has been invoked"
+      content "No active synch connection"
+      content "No form in session"
+      content "Normalized uri="
+      content "Obtained state"
+      content "out Obtained BwCallback object"
+      content "parameters:"
+      content "request=org.apache.struts2"
+      content "Request out for module "
+      content "Request parameters - global info and uris"
+      content "query=b=de"
+      content "query=null"
+      content "Set presentation state"
+      content "setAutoCommit"
+      content "Setting locale to "
+      content "The size was"
+      content "vpath collection"
+      content "XSLTFilter: Converting"
+      content "=============="
+
+      # Also skipped for a summary
+      summary "checkSvci"
+      summary "About to claim"
+      summary "Begin transaction for "
+      summary "ChangeTable"
+      summary "Check access for "
+      summary "Client interface --"
+      summary "close Obtained BwCallback object"
+      summary "current change token"
+      summary "Date="
+      summary "Emitted:"
+      summary "end ChangeTable"
+      summary "End transaction for"
+      summary "Event duration="
+      summary "Fetch collection with"
+      summary "fetchChildren for"
+      summary "fetchEntities: "
+      summary "flush for "
+      summary "Get Calendar home for"
+      summary "Get event "
+      summary "getState--"
+      summary "getUserEntry for"
+      summary "handleException called"
+      summary "Indexing to index"
+      summary "IndexResponse:"
+      summary "New hibernate session"
+      summary "No access"
+      summary "No messages emitted"
+      summary "Not found"
+      summary "offset:"
+      summary "Open session for"
+      summary "Return ok - access ok"
+      summary "Search:"
+      summary "Set event with location"
+      summary "The size was"
+      """;
+
+  private static SkipLists defaults;
+
+  private final PrefixSet classes;
+  private final PrefixSet content;
+  private final PrefixSet summary;
+
+  private SkipLists(final List<String> classes,
+                    final List<String> content,
+                    final List<String> summary) {
+    this.classes = new PrefixSet(classes);
+    this.content = new PrefixSet(content);
+    this.summary = new PrefixSet(summary);
+  }
+
+  /**
+   * @return the compiled default lists
+   */
+  public static synchronized SkipLists defaults() {
+    if (defaults == null) {
+      defaults = parse(null, null);
+    }
+
+    return defaults;
+  }
+
+  /**
+   * @param path of a file in the format of defaultLists
+   * @return the default lists with the prefixes from the file added
+   * @throws IOException on read error
+   */
+  public static SkipLists load(final Path path) throws IOException {
+    return parse(path.toString(), Files.readAllLines(path));
+  }
+
+  /**
+   * @param source for error messages - null for only the defaults
+   * @param lines of prefixes to add to the defaults
+   * @return compiled lists
+   * @throws IllegalArgumentException for a bad line
+   */
+  public static SkipLists parse(final String source,
+                                final List<String> lines) {
+    final Map<String, List<String>> lists = new HashMap<>();
+    lists.put("class", new ArrayList<>());
+    lists.put("content", new ArrayList<>());
+    lists.put("summary", new ArrayList<>());
+
+    add(lists, "default lists",
+        Arrays.asList(defaultLists.split("\n")));
+
+    if (lines != null) {
+      add(lists, source, lines);
+    }
+
+    return new SkipLists(lists.get("class"),
+                         lists.get("content"),
+                         lists.get("summary"));
+  }
+
+  /**
+   * @return prefixes of class names to skip
+   */
+  public PrefixSet getClasses() {
+    return classes;
+  }
+
+  /**
+   * @return prefixes of log text to skip
+   */
+  public PrefixSet getContent() {
+    return content;
+  }
+
+  /**
+   * @return prefixes of log text to skip for a summary
+   */
+  public PrefixSet getSummary() {
+    return summary;
+  }
+
+  private static void add(final Map<String, List<String>> lists,
+                          final String source,
+                          final List<String> lines) {
+    int lineNum = 0;
+
+    for (final var rawLine: lines) {
+      lineNum++;
+
+      final var line = rawLine.strip();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+
+      final var where = source + " line " + lineNum;
+      final int qpos = line.indexOf('"');
+
+      if ((qpos < 0) || (qpos == line.length() - 1) ||
+              !line.endsWith("\"")) {
+        throw new IllegalArgumentException(
+                where + ": expected <list> \"<prefix>\"");
+      }
+
+      final var name = line.substring(0, qpos).strip();
+      final var list = lists.get(name);
+
+      if (list == null) {
+        throw new IllegalArgumentException(
+                where + ": unknown list " + name);
+      }
+
+      list.add(line.substring(qpos + 1, line.length() - 1));
+    }
+  }
+}
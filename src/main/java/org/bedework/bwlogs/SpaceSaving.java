@@ -0,0 +1,347 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/** The Space-Saving algorithm of Metwally, Agrawal and El Abbadi for
+ * finding the heaviest keys in a stream using a fixed number of
+ * counters.
+ *
+ * <p>While there are free counters every key is counted exactly. Once
+ * they are all in use a new key takes over the counter with the
+ * lowest count and starts from that count. The count for a key is
+ * then never too low and is too high by no more than its error,
+ * which is never more than the lowest count. Any key heavier than
+ * total / capacity is certain to have a counter.
+ *
+ * <p>Each counter may carry a value - e.g. more figures for the key.
+ * A key that takes over a counter gets a new value.
+ *
+ * <p>Summaries of parts of a stream can be added to give a summary of
+ * the whole with the same guarantees.
+ */
+public class SpaceSaving<K, V> {
+  public static class Counter<K, V> {
+    K key;
+    long count;
+    long error;
+    V value;
+
+    int heapIndex;
+
+    public K getKey() {
+      return key;
+    }
+
+    /**
+     * @return count - too high by at most error
+     */
+    public long getCount() {
+      return count;
+    }
+
+    public long getError() {
+      return error;
+    }
+
+    /**
+     * @return count for this key only - never too high
+     */
+    public long getGuaranteedCount() {
+      return count - error;
+    }
+
+    public V getValue() {
+      return value;
+    }
+  }
+
+  private final int capacity;
+  private final Supplier<V> newValue;
+  private final BiConsumer<V, V> addValue;
+
+  private final Map<K, Counter<K, V>> counters = new HashMap<>();
+
+  // Min heap on count
+  private final Counter<K, V>[] heap;
+  private int size;
+
+  private long total;
+
+  /** Counters with no values
+   *
+   * @param capacity number of counters
+   */
+  public SpaceSaving(final int capacity) {
+    this(capacity, null, null);
+  }
+
+  /**
+   * @param capacity number of counters
+   * @param newValue null or supplies a value for each new counter
+   * @param addValue null or adds the second value to the first when
+   *                 summaries are added
+   */
+  @SuppressWarnings("unchecked")
+  public SpaceSaving(final int capacity,
+                     final Supplier<V> newValue,
+                     final BiConsumer<V, V> addValue) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1");
+    }
+
+    this.capacity = capacity;
+    this.newValue = newValue;
+    this.addValue = addValue;
+    heap = (Counter<K, V>[])new Counter<?, ?>[capacity];
+  }
+
+  /** Count one occurrence of key
+   *
+   * @param key to count
+   * @return the counter for key
+   */
+  public Counter<K, V> add(final K key) {
+    return add(key, 1);
+  }
+
+  /**
+   * @param key to count
+   * @param weight to add - not negative
+   * @return the counter for key
+   */
+  public Counter<K, V> add(final K key,
+                           final long weight) {
+    total += weight;
+
+    var c = counters.get(key);
+
+    if (c != null) {
+      c.count += weight;
+      siftDown(c.heapIndex);
+      return c;
+    }
+
+    if (size < capacity) {
+      c = new Counter<>();
+      c.heapIndex = size;
+      heap[size] = c;
+      size++;
+    } else {
+      // Take over the smallest
+      c = heap[0];
+      counters.remove(c.key);
+      c.error = c.count;
+    }
+
+    c.key = key;
+    c.count += weight;
+    if (newValue != null) {
+      c.value = newValue.get();
+    }
+
+    counters.put(key, c);
+    siftUp(c.heapIndex);
+    siftDown(c.heapIndex);
+
+    return c;
+  }
+
+  /** Add the counts from another summary - e.g. for another part of
+   * the log. This is the merge of Agarwal et al, Mergeable Summaries.
+   * A key missing from one summary may have had up to its lowest
+   * count there so that is added to the count and the error. The
+   * heaviest keys are kept. The bounds then hold for the combined
+   * stream.
+   *
+   * @param other summary to add
+   */
+  public void add(final SpaceSaving<K, V> other) {
+    final long min = getErrorBound();
+    final long otherMin = other.getErrorBound();
+
+    final List<Counter<K, V>> merged =
+            new ArrayList<>(size + other.size);
+
+    for (int i = 0; i < size; i++) {
+      final var c = heap[i];
+      final var oc = other.counters.get(c.key);
+
+      if (oc == null) {
+        c.count += otherMin;
+        c.error += otherMin;
+      } else {
+        c.count += oc.count;
+        c.error += oc.error;
+        addValue(c, oc);
+      }
+
+      merged.add(c);
+    }
+
+    for (int i = 0; i < other.size; i++) {
+      final var oc = other.heap[i];
+
+      if (counters.containsKey(oc.key)) {
+        continue;
+      }
+
+      final var c = new Counter<K, V>();
+      c.key = oc.key;
+      c.count = oc.count + min;
+      c.error = oc.error + min;
+      if (newValue != null) {
+        c.value = newValue.get();
+      }
+      addValue(c, oc);
+
+      merged.add(c);
+    }
+
+    total += other.total;
+
+    // Keep the heaviest
+    merged.sort(Comparator.comparingLong(
+            (Counter<K, V> c) -> c.count).reversed());
+
+    counters.clear();
+    size = Math.min(merged.size(), capacity);
+
+    for (int i = 0; i < size; i++) {
+      final var c = merged.get(i);
+      c.heapIndex = i;
+      heap[i] = c;
+      counters.put(c.key, c);
+    }
+
+    for (int i = size; i < capacity; i++) {
+      heap[i] = null;
+    }
+
+    for (int i = size / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+  }
+
+  /**
+   * @return the greatest amount by which any count may be too high
+   */
+  public long getErrorBound() {
+    if (size < capacity) {
+      return 0;
+    }
+
+    return heap[0].count;
+  }
+
+  /**
+   * @return total weight of all keys seen
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param key to look for
+   * @return counter or null if key has none
+   */
+  public Counter<K, V> get(final K key) {
+    return counters.get(key);
+  }
+
+  /**
+   * @return counters highest count first
+   */
+  public List<Counter<K, V>> sorted() {
+    return sorted(Comparator.comparingLong(Counter::getCount));
+  }
+
+  /**
+   * @param cmp order
+   * @return counters highest first according to cmp
+   */
+  public List<Counter<K, V>> sorted(final Comparator<Counter<K, V>> cmp) {
+    final List<Counter<K, V>> res = new ArrayList<>(size);
+
+    for (int i = 0; i < size; i++) {
+      res.add(heap[i]);
+    }
+
+    res.sort(cmp.reversed()
+                .thenComparing(c -> String.valueOf(c.key)));
+
+    return res;
+  }
+
+  private void addValue(final Counter<K, V> c,
+                        final Counter<K, V> oc) {
+    if ((addValue != null) && (c.value != null) && (oc.value != null)) {
+      addValue.accept(c.value, oc.value);
+    }
+  }
+
+  private void siftUp(final int index) {
+    int i = index;
+
+    while (i > 0) {
+      final int parent = (i - 1) / 2;
+
+      if (heap[parent].count <= heap[i].count) {
+        return;
+      }
+
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  private void siftDown(final int index) {
+    int i = index;
+
+    while (true) {
+      final int l = 2 * i + 1;
+      if (l >= size) {
+        return;
+      }
+
+      int smallest = l;
+      final int r = l + 1;
+      if ((r < size) && (heap[r].count < heap[l].count)) {
+        smallest = r;
+      }
+
+      if (heap[i].count <= heap[smallest].count) {
+        return;
+      }
+
+      swap(i, smallest);
+      i = smallest;
+    }
+  }
+
+  private void swap(final int i,
+                    final int j) {
+    final var c = heap[i];
+    heap[i] = heap[j];
+    heap[j] = c;
+
+    heap[i].heapIndex = i;
+    heap[j].heapIndex = j;
+  }
+}
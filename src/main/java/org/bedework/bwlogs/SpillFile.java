@@ -0,0 +1,164 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** An append only temporary file of records, each a list of strings,
+ * which are read back by the offset append returned. The file is
+ * created by the first append and deleted by close.
+ *
+ * <p>A record is its length, the number of strings then each string
+ * as its length and UTF-8 bytes. A null string has length -1.
+ */
+public class SpillFile implements AutoCloseable {
+  private Path path;
+  private FileChannel channel;
+  private long size;
+  private long numRecords;
+
+  private ByteBuffer buf = ByteBuffer.allocate(8192);
+
+  /**
+   * @param texts to write
+   * @return offset of the record
+   * @throws IOException on write error
+   */
+  public long append(final List<String> texts) throws IOException {
+    if (channel == null) {
+      path = Files.createTempFile("bwlogs-", ".spill");
+      channel = FileChannel.open(path, READ, WRITE, DELETE_ON_CLOSE);
+    }
+
+    buf.clear();
+    putInt(0); // Length - set below
+    putInt(texts.size());
+
+    for (final var text: texts) {
+      if (text == null) {
+        putInt(-1);
+        continue;
+      }
+
+      final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      putInt(bytes.length);
+      ensure(bytes.length);
+      buf.put(bytes);
+    }
+
+    buf.putInt(0, buf.position() - 4);
+    buf.flip();
+
+    final long offset = size;
+    while (buf.hasRemaining()) {
+      size += channel.write(buf, size);
+    }
+
+    numRecords++;
+
+    return offset;
+  }
+
+  /**
+   * @param offset of record from append
+   * @return the strings
+   * @throws IOException on read error
+   */
+  public List<String> read(final long offset) throws IOException {
+    buf.clear().limit(4);
+    readFully(offset);
+
+    final int len = buf.getInt(0);
+    if (buf.capacity() < len) {
+      buf = ByteBuffer.allocate(len);
+    }
+
+    buf.clear().limit(len);
+    readFully(offset + 4);
+    buf.flip();
+
+    final int num = buf.getInt();
+    final List<String> res = new ArrayList<>(num);
+
+    for (int i = 0; i < num; i++) {
+      final int tlen = buf.getInt();
+
+      if (tlen < 0) {
+        res.add(null);
+        continue;
+      }
+
+      res.add(new String(buf.array(), buf.position(), tlen,
+                         StandardCharsets.UTF_8));
+      buf.position(buf.position() + tlen);
+    }
+
+    return res;
+  }
+
+  /**
+   * @return records written so far
+   */
+  public long getNumRecords() {
+    return numRecords;
+  }
+
+  /**
+   * @return bytes written so far
+   */
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+      Files.deleteIfExists(path);
+    }
+  }
+
+  private void readFully(final long offset) throws IOException {
+    long pos = offset;
+
+    while (buf.hasRemaining()) {
+      final int n = channel.read(buf, pos);
+      if (n < 0) {
+        throw new IOException("Spill file truncated at " + pos);
+      }
+      pos += n;
+    }
+  }
+
+  private void putInt(final int val) {
+    ensure(4);
+    buf.putInt(val);
+  }
+
+  /* Make room for len more bytes - keeping what is in the buffer
+   */
+  private void ensure(final int len) {
+    if (buf.remaining() >= len) {
+      return;
+    }
+
+    final var nbuf = ByteBuffer.allocate(
+            Math.max(buf.capacity() * 2, buf.position() + len));
+    buf.flip();
+    nbuf.put(buf);
+    buf = nbuf;
+  }
+}
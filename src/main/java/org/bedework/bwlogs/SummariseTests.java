@@ -11,18 +11,26 @@ public class SummariseTests extends LogAnalysis {
 
   LogEntry lastEntry;
 
-  public void processRecord(final String s) {
+  @Override
+  protected boolean wantsRecords() {
+    return true;
+  }
+
+  public void processRecord(final String s,
+                            final LogEntry hdr) {
     // Display various lines from the log
     // 2020-01-14 15:46:04,709 DEBUG [org.bedework.caldav.server.CaldavBWServlet] (default task-1) entry: PROPFIND
-    final LogEntry le = new LogEntry();
+    final LogEntry le = hdr;
 
-    if (le.parse(s, null, "DEBUG") == null) {
+    if ((le == null) || le.unparsed || !le.levelIs("DEBUG")) {
       out(s + " ******************** Unparseable");
       return;
     }
 
+    le.setSinceMillis();
+
     if (s.contains(" entry: ")) {
-      lastEntry = le;
+      lastEntry = le.copy();
       return;
     }
 
@@ -61,13 +69,14 @@ public class SummariseTests extends LogAnalysis {
     if (s.contains(" User-Agent = \"")) {
       outSummary(lastReqline);
       outSummary(lastEntry);
-      final var pos = le.logText.indexOf(testUserAgentLabel);
+      final var lt = le.getLogText();
+      final var pos = lt.indexOf(testUserAgentLabel);
       if (pos >= 0) {
-        le.logText = "------------- Test ---> " +
-                le.logText.substring(0, pos) +
-                le.logText.substring(pos + testUserAgentLabel.length(),
-                                     le.logText.length() - 1) +
-                "<------------------";
+        le.setLogText("------------- Test ---> " +
+                lt.substring(0, pos) +
+                lt.substring(pos + testUserAgentLabel.length(),
+                             lt.length() - 1) +
+                "<------------------");
         outSummary(le);
       }
 
@@ -103,7 +112,7 @@ public class SummariseTests extends LogAnalysis {
   }
 
   private void outSchedSummary(final LogEntry le) {
-    final var s = le.logText;
+    final var s = le.getLogText();
 
     if (s.contains("set event to")) {
       outSummary(le);
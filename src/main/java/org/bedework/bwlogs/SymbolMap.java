@@ -0,0 +1,120 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/** A map keyed on the ids from a SymbolTable. The ids are dense so
+ * this is just an array indexed by id.
+ */
+public class SymbolMap<V> {
+  public interface Visitor<V> {
+    void visit(int id, V val);
+  }
+
+  private Object[] vals = new Object[16];
+  private int size;
+
+  /**
+   * @param id symbol id
+   * @return value or null
+   */
+  @SuppressWarnings("unchecked")
+  public V get(final int id) {
+    if (id >= vals.length) {
+      return null;
+    }
+
+    return (V)vals[id];
+  }
+
+  /**
+   * @param id symbol id
+   * @param val not null
+   * @return previous value or null
+   */
+  public V put(final int id,
+               final V val) {
+    if (id >= vals.length) {
+      vals = Arrays.copyOf(vals, Math.max(id + 1, vals.length << 1));
+    }
+
+    final V old = get(id);
+    if (old == null) {
+      size++;
+    }
+
+    vals[id] = val;
+
+    return old;
+  }
+
+  /**
+   * @param id symbol id
+   * @param newVal called to create a value if there is none
+   * @return value - never null
+   */
+  public V computeIfAbsent(final int id,
+                           final IntFunction<V> newVal) {
+    var val = get(id);
+
+    if (val == null) {
+      val = newVal.apply(id);
+      put(id, val);
+    }
+
+    return val;
+  }
+
+  /**
+   * @param id symbol id
+   * @return value removed or null
+   */
+  public V remove(final int id) {
+    final V old = get(id);
+
+    if (old != null) {
+      vals[id] = null;
+      size--;
+    }
+
+    return old;
+  }
+
+  public void clear() {
+    Arrays.fill(vals, null);
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param v called for each entry in id order
+   */
+  public void forEach(final Visitor<V> v) {
+    for (int id = 0; id < vals.length; id++) {
+      final V val = get(id);
+
+      if (val != null) {
+        v.visit(id, val);
+      }
+    }
+  }
+
+  /**
+   * @return values in id order
+   */
+  public List<V> values() {
+    final List<V> res = new ArrayList<>(size);
+
+    forEach((id, val) -> res.add(val));
+
+    return res;
+  }
+}
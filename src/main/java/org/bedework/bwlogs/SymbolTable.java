@@ -0,0 +1,171 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.util.Arrays;
+
+/** Maps strings to dense int ids - 1, 2, 3... in the order they are
+ * first seen. Id 0 is reserved for no value and its name is null.
+ *
+ * <p>A value may be looked up from part of a line so the String is
+ * only created the first time the value is seen. After that the same
+ * String is handed out every time.
+ */
+public class SymbolTable {
+  public static final int none = 0;
+
+  private static final int initialBits = 6;
+
+  private String[] names = new String[1 << (initialBits - 1)];
+  private int[] hashes = new int[1 << (initialBits - 1)];
+  private int next = 1;
+
+  // Open addressing - each slot is an id or 0 for empty
+  private int[] slots = new int[1 << initialBits];
+  private int bits = initialBits;
+
+  /**
+   * @param s containing the value
+   * @param start of value
+   * @param end of value - exclusive
+   * @return id for the value - added if not already present
+   */
+  public int intern(final String s,
+                    final int start,
+                    final int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + s.charAt(i);
+    }
+
+    final int len = end - start;
+    final int mask = slots.length - 1;
+    int i = index(h);
+
+    while (true) {
+      final int id = slots[i];
+
+      if (id == none) {
+        return add(s.substring(start, end), h, i);
+      }
+
+      final String name = names[id];
+      if ((hashes[id] == h) && (name.length() == len) &&
+              s.startsWith(name, start)) {
+        return id;
+      }
+
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * @param s value - may be null
+   * @return id for the value - added if not already present. none
+   *         for null.
+   */
+  public int intern(final String s) {
+    if (s == null) {
+      return none;
+    }
+
+    final int h = s.hashCode();
+    final int i = slot(s, h);
+
+    if (slots[i] != none) {
+      return slots[i];
+    }
+
+    return add(s, h, i);
+  }
+
+  /**
+   * @param s value - may be null
+   * @return id for the value or none if not present
+   */
+  public int lookup(final String s) {
+    if (s == null) {
+      return none;
+    }
+
+    return slots[slot(s, s.hashCode())];
+  }
+
+  /**
+   * @param id of value
+   * @return the value - null for none
+   */
+  public String name(final int id) {
+    return names[id];
+  }
+
+  /**
+   * @return number of values - ids are 1 to size()
+   */
+  public int size() {
+    return next - 1;
+  }
+
+  private int slot(final String s,
+                   final int h) {
+    final int mask = slots.length - 1;
+    int i = index(h);
+
+    while (true) {
+      final int id = slots[i];
+
+      if ((id == none) ||
+              ((hashes[id] == h) && names[id].equals(s))) {
+        return i;
+      }
+
+      i = (i + 1) & mask;
+    }
+  }
+
+  private int add(final String s,
+                  final int h,
+                  final int slot) {
+    final int id = next;
+    next++;
+
+    if (id == names.length) {
+      final int len = names.length << 1;
+      names = Arrays.copyOf(names, len);
+      hashes = Arrays.copyOf(hashes, len);
+    }
+
+    names[id] = s;
+    hashes[id] = h;
+    slots[slot] = id;
+
+    if (next > (slots.length >> 1)) {
+      // Keep the load below 1/2
+      rehash();
+    }
+
+    return id;
+  }
+
+  private void rehash() {
+    bits++;
+    slots = new int[1 << bits];
+
+    final int mask = slots.length - 1;
+
+    for (int id = 1; id < next; id++) {
+      int i = index(hashes[id]);
+
+      while (slots[i] != none) {
+        i = (i + 1) & mask;
+      }
+
+      slots[i] = id;
+    }
+  }
+
+  private int index(final int h) {
+    return (h * 0x9E3779B9) >>> (32 - bits);
+  }
+}
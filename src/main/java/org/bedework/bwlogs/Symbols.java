@@ -0,0 +1,18 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+/** The symbol tables for a run - one for each kind of value so the
+ * ids of each kind are dense and can index a SymbolMap.
+ *
+ * <p>Each reader has its own. Entries parsed by one reader and handed
+ * to another are moved to its tables - see LogEntry.rehome.
+ */
+public class Symbols {
+  public final SymbolTable classNames = new SymbolTable();
+  public final SymbolTable taskIds = new SymbolTable();
+  public final SymbolTable sessionIds = new SymbolTable();
+  public final SymbolTable ips = new SymbolTable();
+  public final SymbolTable contexts = new SymbolTable();
+}
@@ -0,0 +1,273 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import java.time.LocalDate;
+
+/** Convert the timestamps at the start of log lines to milliseconds
+ * since the epoch. The date and time are taken as UTC unless the line
+ * carries an offset.
+ *
+ * <p>Almost every line is in the same second as the one before it so
+ * we keep the last second we converted and only look at the
+ * milliseconds when the line matches it. Nothing is allocated unless
+ * the day changes.
+ *
+ * <p>Not thread safe - each reader has its own.
+ */
+public class Timestamps {
+  /** Returned for a timestamp we can't parse */
+  public static final long invalid = Long.MIN_VALUE;
+
+  private static final long millisPerDay = 24L * 60 * 60 * 1000;
+
+  private static final String[] monthNames = {
+          "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+          "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+  };
+
+  // Last line converted and where its timestamp started
+  private String lastLine;
+  private int lastStart;
+  private long lastSecondMillis;
+  private int lastHourOfDay;
+
+  // Last day converted
+  private String lastDayLine;
+  private int lastDayStart;
+  private long lastDayMillis;
+  private String normDate;
+
+  private int hourOfDay;
+
+  /** Server log timestamp - 2019-01-04 00:00:11,742
+   *
+   * @param s the line
+   * @return millis or invalid
+   */
+  public long logMillis(final String s) {
+    // 2019-01-04 00:00:11,742
+    // 01234567890123456789012
+
+    if (s.length() < 23) {
+      return invalid;
+    }
+
+    final int ms = digits(s, 20, 3);
+    if (ms < 0) {
+      return invalid;
+    }
+
+    if (sameSecond(s, 0, 19)) {
+      hourOfDay = lastHourOfDay;
+      return lastSecondMillis + ms;
+    }
+
+    if (!sameDay(s, 0, 10)) {
+      final int year = digits(s, 0, 4);
+      final int month = digits(s, 5, 2);
+      final int day = digits(s, 8, 2);
+
+      if (!setDay(s, 0, year, month, day)) {
+        return invalid;
+      }
+    }
+
+    final long secondMillis = secondMillis(s, 11, 14, 17);
+    if (secondMillis == invalid) {
+      return invalid;
+    }
+
+    setSecond(s, 0, secondMillis);
+
+    return secondMillis + ms;
+  }
+
+  /** Access log timestamp - 20/Feb/2020:00:23:19 +0000. The offset
+   * is optional.
+   *
+   * @param s the line
+   * @param start of the timestamp
+   * @return millis or invalid
+   */
+  public long accessMillis(final String s,
+                           final int start) {
+    // 20/Feb/2020:00:23:19 +0000
+    // 01234567890123456789012345
+
+    if (s.length() < start + 20) {
+      return invalid;
+    }
+
+    final long offset = offsetMillis(s, start + 20);
+
+    if (sameSecond(s, start, 20)) {
+      hourOfDay = lastHourOfDay;
+      return lastSecondMillis - offset;
+    }
+
+    if (!sameDay(s, start, 11)) {
+      final int day = digits(s, start, 2);
+      final int month = month(s, start + 3);
+      final int year = digits(s, start + 7, 4);
+
+      if (!setDay(s, start, year, month, day)) {
+        return invalid;
+      }
+    }
+
+    final long secondMillis = secondMillis(s, start + 12,
+                                           start + 15, start + 18);
+    if (secondMillis == invalid) {
+      return invalid;
+    }
+
+    setSecond(s, start, secondMillis);
+
+    return secondMillis - offset;
+  }
+
+  /**
+   * @return hour of day from the last timestamp - before any offset
+   *         is applied
+   */
+  public int getHourOfDay() {
+    return hourOfDay;
+  }
+
+  /**
+   * @return yyyy/mm/dd for the last timestamp - before any offset is
+   *         applied. The same String is returned for every line in a
+   *         day.
+   */
+  public String getNormDate() {
+    return normDate;
+  }
+
+  private boolean sameSecond(final String s,
+                             final int start,
+                             final int len) {
+    return (lastLine != null) &&
+            s.regionMatches(start, lastLine, lastStart, len);
+  }
+
+  private boolean sameDay(final String s,
+                          final int start,
+                          final int len) {
+    return (lastDayLine != null) &&
+            s.regionMatches(start, lastDayLine, lastDayStart, len);
+  }
+
+  private boolean setDay(final String s,
+                         final int start,
+                         final int year,
+                         final int month,
+                         final int day) {
+    if ((year < 0) || (month < 1) || (month > 12) ||
+            (day < 1) || (day > 31)) {
+      return false;
+    }
+
+    try {
+      lastDayMillis = LocalDate.of(year, month, day).toEpochDay() *
+              millisPerDay;
+    } catch (final Throwable ignored) {
+      return false;
+    }
+
+    lastDayLine = s;
+    lastDayStart = start;
+    normDate = String.format("%04d/%02d/%02d", year, month, day);
+
+    // Second cache is for the old day
+    lastLine = null;
+
+    return true;
+  }
+
+  private long secondMillis(final String s,
+                            final int hrsPos,
+                            final int minsPos,
+                            final int secsPos) {
+    final int hrs = digits(s, hrsPos, 2);
+    final int mins = digits(s, minsPos, 2);
+    final int secs = digits(s, secsPos, 2);
+
+    if ((hrs < 0) || (mins < 0) || (secs < 0)) {
+      return invalid;
+    }
+
+    hourOfDay = hrs;
+
+    return lastDayMillis +
+            ((((hrs * 60L) + mins) * 60) + secs) * 1000;
+  }
+
+  private void setSecond(final String s,
+                         final int start,
+                         final long secondMillis) {
+    lastLine = s;
+    lastStart = start;
+    lastSecondMillis = secondMillis;
+    lastHourOfDay = hourOfDay;
+  }
+
+  /* +hhmm or -hhmm at pos - 0 if absent
+   */
+  private static long offsetMillis(final String s,
+                                   final int pos) {
+    if ((s.length() < pos + 6) || (s.charAt(pos) != ' ')) {
+      return 0;
+    }
+
+    final char sign = s.charAt(pos + 1);
+    if ((sign != '+') && (sign != '-')) {
+      return 0;
+    }
+
+    final int hrs = digits(s, pos + 2, 2);
+    final int mins = digits(s, pos + 4, 2);
+    if ((hrs < 0) || (mins < 0)) {
+      return 0;
+    }
+
+    final long millis = ((hrs * 60L) + mins) * 60 * 1000;
+
+    if (sign == '-') {
+      return -millis;
+    }
+
+    return millis;
+  }
+
+  private static int month(final String s,
+                           final int pos) {
+    for (int i = 0; i < monthNames.length; i++) {
+      if (s.startsWith(monthNames[i], pos)) {
+        return i + 1;
+      }
+    }
+
+    return -1;
+  }
+
+  /* Value of n decimal digits at pos or -1
+   */
+  private static int digits(final String s,
+                            final int pos,
+                            final int n) {
+    int res = 0;
+
+    for (int i = pos; i < pos + n; i++) {
+      final int d = s.charAt(i) - '0';
+      if ((d < 0) || (d > 9)) {
+        return -1;
+      }
+
+      res = res * 10 + d;
+    }
+
+    return res;
+  }
+}
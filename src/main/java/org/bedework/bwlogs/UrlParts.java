@@ -0,0 +1,465 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Splits a url - or just a path with an optional query - into path
+ * segments and query parameters in a single pass over the raw
+ * string. Only the positions are recorded. Values are created, and
+ * percent-escapes decoded, when asked for so a caller that only
+ * looks at a name or two creates almost nothing.
+ *
+ * <p>An instance is reused: parse resets it for the next url.
+ *
+ * <p>Parameters are split and decoded as URLEncodedUtils.parse does
+ * for the raw query - on '&amp;' and ';', '+' is a space, a bad
+ * escape is left as is and names may not be empty. The one thing we
+ * don't do is the whitespace handling of its tokenizer so a query
+ * containing whitespace is handed to URLEncodedUtils.
+ */
+public class UrlParts {
+  private String url;
+
+  private int pathStart;
+  private int pathEnd;
+
+  // Start and end of each non-empty segment
+  private int[] segs = new int[32];
+  private int numSegs;
+
+  // False if the path needs decoding or normalising
+  private boolean plainPath;
+
+  // Name start and end, value start (-1 for none) and end
+  private int[] params = new int[64];
+  private int numParams;
+
+  // Set if the query was too hard for us
+  private List<NameValuePair> fallbackParams;
+
+  private byte[] decodeBuf = new byte[128];
+
+  private final List<String> segments = new AbstractList<>() {
+    @Override
+    public String get(final int index) {
+      return getSegment(index);
+    }
+
+    @Override
+    public int size() {
+      return numSegs;
+    }
+  };
+
+  /**
+   * @param val url or path - not null
+   * @return this
+   */
+  public UrlParts parse(final String val) {
+    url = val;
+    numSegs = 0;
+    numParams = 0;
+    fallbackParams = null;
+
+    final int len = url.length();
+
+    pathStart = authorityEnd();
+    plainPath = !url.startsWith("//", pathStart);
+
+    int pos = pathStart;
+    int segStart = pos;
+
+    while (true) {
+      final char c = (pos < len) ? url.charAt(pos) : '?';
+
+      if ((c == '/') || (c == '?') || (c == '#')) {
+        if (pos > segStart) {
+          addSegment(segStart, pos);
+        }
+
+        if (c != '/') {
+          break;
+        }
+
+        segStart = pos + 1;
+      } else if ((c == '%') || (c == '+') || (c == '\\')) {
+        plainPath = false;
+      }
+
+      pos++;
+    }
+
+    pathEnd = Math.min(pos, len);
+
+    if ((pathEnd == len) || (url.charAt(pathEnd) != '?')) {
+      return this;
+    }
+
+    // The query - up to any fragment
+    int nameStart = pathEnd + 1;
+    int valStart = -1;
+    boolean whitespace = false;
+
+    for (pos = nameStart; ; pos++) {
+      final char c = (pos < len) ? url.charAt(pos) : '#';
+
+      if (c == '#') {
+        addParam(nameStart, valStart, pos);
+        break;
+      }
+
+      if ((c == '&') || (c == ';')) {
+        addParam(nameStart, valStart, pos);
+        nameStart = pos + 1;
+        valStart = -1;
+      } else if ((c == '=') && (valStart < 0)) {
+        valStart = pos + 1;
+      } else if (Character.isWhitespace(c)) {
+        whitespace = true;
+      }
+    }
+
+    if (whitespace) {
+      fallbackParams = URLEncodedUtils.parse(
+              url.substring(pathEnd + 1, pos), StandardCharsets.UTF_8);
+    }
+
+    return this;
+  }
+
+  /**
+   * @param stopAtSemicolon true to drop any ";jsessionid=..."
+   * @return the raw path
+   */
+  public String getPath(final boolean stopAtSemicolon) {
+    return url.substring(pathStart, rawPathEnd(stopAtSemicolon));
+  }
+
+  /**
+   * @return true if the segments are those of the decoded and
+   *         normalised path - no escapes, backslashes, "." or ".."
+   */
+  public boolean isPlainPath() {
+    return plainPath;
+  }
+
+  /**
+   * @return the non-empty segments of the raw path as a view - only
+   *         valid until the next parse.
+   */
+  public List<String> getSegments() {
+    return segments;
+  }
+
+  public int getSegmentCount() {
+    return numSegs;
+  }
+
+  /**
+   * @param i index of segment
+   * @return raw segment
+   */
+  public String getSegment(final int i) {
+    return url.substring(segs[i * 2], segs[i * 2 + 1]);
+  }
+
+  public int getParamCount() {
+    if (fallbackParams != null) {
+      return fallbackParams.size();
+    }
+
+    return numParams;
+  }
+
+  /**
+   * @param i index of parameter
+   * @return decoded name
+   */
+  public String getName(final int i) {
+    if (fallbackParams != null) {
+      return fallbackParams.get(i).getName();
+    }
+
+    final int p = i * 4;
+    return decode(params[p], params[p + 1]);
+  }
+
+  /**
+   * @param i index of parameter
+   * @return decoded value - null if there was no '='
+   */
+  public String getValue(final int i) {
+    if (fallbackParams != null) {
+      return fallbackParams.get(i).getValue();
+    }
+
+    final int p = i * 4;
+    if (params[p + 2] < 0) {
+      return null;
+    }
+
+    return decode(params[p + 2], params[p + 3]);
+  }
+
+  /**
+   * @param i index of parameter
+   * @param val to compare
+   * @return true if the decoded name is val
+   */
+  public boolean nameEquals(final int i,
+                            final String val) {
+    if (fallbackParams != null) {
+      return val.equals(fallbackParams.get(i).getName());
+    }
+
+    final int p = i * 4;
+    final int start = params[p];
+    final int end = params[p + 1];
+
+    if (!plain(start, end)) {
+      return val.equals(decode(start, end));
+    }
+
+    return (val.length() == end - start) && url.startsWith(val, start);
+  }
+
+  /**
+   * @param i index of parameter
+   * @return hash of the decoded name - see hash
+   */
+  public long nameHash(final int i) {
+    if (fallbackParams != null) {
+      return hash(fallbackParams.get(i).getName());
+    }
+
+    final int p = i * 4;
+    final int start = params[p];
+    final int end = params[p + 1];
+
+    if (!plain(start, end)) {
+      return hash(decode(start, end));
+    }
+
+    return hash(url, start, end);
+  }
+
+  /**
+   * @return the decoded parameters
+   */
+  public List<NameValuePair> getParams() {
+    if (fallbackParams != null) {
+      return fallbackParams;
+    }
+
+    final List<NameValuePair> res = new ArrayList<>(numParams);
+
+    for (int i = 0; i < numParams; i++) {
+      final var name = getName(i);
+      final var value = getValue(i);
+
+      res.add(new NameValuePair() {
+        @Override
+        public String getName() {
+          return name;
+        }
+
+        @Override
+        public String getValue() {
+          return value;
+        }
+
+        @Override
+        public String toString() {
+          if (value == null) {
+            return name;
+          }
+
+          return name + "=" + value;
+        }
+      });
+    }
+
+    return res;
+  }
+
+  /**
+   * @param s value
+   * @return 64 bit hash of s
+   */
+  public static long hash(final String s) {
+    return hash(s, 0, s.length());
+  }
+
+  private static long hash(final String s,
+                           final int start,
+                           final int end) {
+    long h = 0xcbf29ce484222325L;
+
+    for (int i = start; i < end; i++) {
+      h = (h ^ s.charAt(i)) * 0x100000001b3L;
+    }
+
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+
+    return h;
+  }
+
+  /* If the url has a scheme and authority skip them.
+   */
+  private int authorityEnd() {
+    final int len = url.length();
+    int pos = 0;
+
+    while ((pos < len) && isSchemeChar(url.charAt(pos))) {
+      pos++;
+    }
+
+    if ((pos == 0) || !url.startsWith("://", pos)) {
+      return 0;
+    }
+
+    pos += 3;
+
+    while (pos < len) {
+      final char c = url.charAt(pos);
+      if ((c == '/') || (c == '?') || (c == '#')) {
+        break;
+      }
+      pos++;
+    }
+
+    return pos;
+  }
+
+  private static boolean isSchemeChar(final char c) {
+    return ((c >= 'a') && (c <= 'z')) ||
+            ((c >= 'A') && (c <= 'Z')) ||
+            ((c >= '0') && (c <= '9')) ||
+            (c == '+') || (c == '-') || (c == '.');
+  }
+
+  private int rawPathEnd(final boolean stopAtSemicolon) {
+    if (!stopAtSemicolon) {
+      return pathEnd;
+    }
+
+    final int spos = url.indexOf(';', pathStart);
+    if ((spos >= 0) && (spos < pathEnd)) {
+      return spos;
+    }
+
+    return pathEnd;
+  }
+
+  private void addSegment(final int start,
+                          final int end) {
+    if (numSegs * 2 == segs.length) {
+      segs = Arrays.copyOf(segs, segs.length * 2);
+    }
+
+    final int p = numSegs * 2;
+    segs[p] = start;
+    segs[p + 1] = end;
+    numSegs++;
+
+    if ((url.charAt(start) == '.') &&
+            ((end - start == 1) ||
+                     ((end - start == 2) && (url.charAt(start + 1) == '.')))) {
+      plainPath = false;
+    }
+  }
+
+  private void addParam(final int nameStart,
+                        final int valStart,
+                        final int end) {
+    final int nameEnd = (valStart < 0) ? end : valStart - 1;
+
+    if (nameEnd == nameStart) {
+      // No name - ignored
+      return;
+    }
+
+    if (numParams * 4 == params.length) {
+      params = Arrays.copyOf(params, params.length * 2);
+    }
+
+    final int p = numParams * 4;
+    params[p] = nameStart;
+    params[p + 1] = nameEnd;
+    params[p + 2] = valStart;
+    params[p + 3] = end;
+    numParams++;
+  }
+
+  /* True if decoding would change nothing
+   */
+  private boolean plain(final int start,
+                        final int end) {
+    for (int i = start; i < end; i++) {
+      final char c = url.charAt(i);
+      if ((c == '%') || (c == '+') || (c > 0x7f)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /* Form decoding as done by URLEncodedUtils - "+" is a space and
+     "%xx" a byte, an escape without 2 hex digits is left as is. The
+     bytes are taken as UTF-8. As there, any other char is taken to be
+     a single byte - the url should have no others.
+   */
+  private String decode(final int start,
+                        final int end) {
+    if (plain(start, end)) {
+      return url.substring(start, end);
+    }
+
+    if (decodeBuf.length < end - start) {
+      decodeBuf = new byte[end - start];
+    }
+
+    int n = 0;
+
+    for (int i = start; i < end; i++) {
+      final char c = url.charAt(i);
+
+      if ((c == '%') && (end - i > 2)) {
+        final char uc = url.charAt(i + 1);
+        final char lc = url.charAt(i + 2);
+        final int u = Character.digit(uc, 16);
+        final int l = Character.digit(lc, 16);
+
+        if ((u >= 0) && (l >= 0)) {
+          decodeBuf[n++] = (byte)((u << 4) + l);
+        } else {
+          decodeBuf[n++] = '%';
+          decodeBuf[n++] = (byte)uc;
+          decodeBuf[n++] = (byte)lc;
+        }
+
+        i += 2;
+      } else if (c == '+') {
+        decodeBuf[n++] = ' ';
+      } else {
+        decodeBuf[n++] = (byte)c;
+      }
+    }
+
+    return new String(decodeBuf, 0, n, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,196 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** The default patterns classify requests as the FeedPattern1-10 and
+ * WebcachePattern1-4 classes they replaced did. The expected indices
+ * were found by running those classes on the same urls.
+ */
+public class AccessPatternsTest {
+  private static final String listEvents = "/feeder/main/listEvents.do";
+
+  private static final String catUid =
+          "%28catuid%3D%272962aca4-289343b8-0128-98411c36-0000001e%27%29";
+
+  private static final String catUids =
+          "%28catuid%3D%272962ac9d-4b307640-014b-32408a42-000054fa%27%29" +
+                  "%26%28catuid%21%3D%272962ac9d-2a425309-012a-" +
+                  "43b52f6f-00000304%27%29";
+
+  private static final String notCatUids =
+          "%28catuid%3D%272962aca4-289343b8-0128-98411c36-0000001e%27%29" +
+                  "%26%28summary%3D%27x%27%29";
+
+  private static final Object[][] feederCases = {
+          {0, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=list-json&setappvar=objName(bwObject)" +
+                  "&setappvar=summaryMode(details)&fexpr=" + catUid +
+                  "&days=30"},
+          {1, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=list-rss&setappvar=summaryMode(details)" +
+                  "&days=1"},
+          {1, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=default&setappvar=summaryMode(details)" +
+                  "&days=1"},
+          {2, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=list-rss&setappvar=summaryMode(details)" +
+                  "&fexpr=" + catUids + "&days=20"},
+          {3, listEvents + "?calPath=%2Fpublic%2Fcals%2FMainCal" +
+                  "&skinName=list-rss"},
+          {4, listEvents + "?calPath=%2Fpublic%2Fcals%2FMainCal" +
+                  "&skinName=list-json&setappvar=summaryMode(details)" +
+                  "&setappvar=objName(bwObject)&days=1"},
+          {5, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&format=text/calendar" +
+                  "&setappvar=summaryMode(details)&fexpr=" + catUid +
+                  "&days=7"},
+          {6, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&format=text/calendar" +
+                  "&setappvar=summaryMode(details)&days=7"},
+          {7, "/feeder/widget/categories.do?skinName=widget-json-cats" +
+                  "&setappvar=objName(catsObj)" +
+                  "&calPath=/public/cals/MainCal"},
+          {8, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=list-rss&setappvar=summaryMode(details)" +
+                  "&fexpr=" + catUid + "&start=2019-03-04&end=2020-03-04"},
+          {9, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=list-rss&setappvar=summaryMode(details)" +
+                  "&start=2019-03-04&end=2020-03-04"},
+
+          // Parameters in another order
+          {0, listEvents + "?days=30&fexpr=" + catUid +
+                  "&setappvar=summaryMode(details)&skinName=list-json" +
+                  "&setappvar=objName(bwObject)" +
+                  "&calPath=/public/cals/MainCal"},
+          {3, listEvents + ";jsessionid=abc123" +
+                  "?calPath=%2Fpublic%2Fcals%2FMainCal&skinName=list-rss"},
+          {6, listEvents + "?calPath=/public/cals/Main+Cal" +
+                  "&format=text/calendar" +
+                  "&setappvar=summaryMode(details)&days=7"},
+          {3, listEvents + "?calPath=&skinName=list-rss"},
+          {3, listEvents + "?calPath&skinName=list-rss"},
+
+          // Not matched
+          {-1, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=list-xml&setappvar=summaryMode(details)" +
+                  "&days=1"},
+          {-1, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=list-json&setappvar=objName(bwObject)" +
+                  "&setappvar=summaryMode(details)&fexpr=" + notCatUids +
+                  "&days=30"},
+          {-1, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&skinName=list-rss&setappvar=summaryMode(details)" +
+                  "&days=1&x=1"},
+          {-1, listEvents + "?calPath=/public/cals/MainCal" +
+                  "&calPath=/public/cals/Other&skinName=list-rss"},
+          {-1, listEvents + "?calPath=/public/cals/MainCal"},
+          {-1, listEvents},
+          {-1, "/feeder/main/eventView.do?calPath=/public/cals/MainCal" +
+                  "&skinName=list-rss"},
+  };
+
+  /* The old classes checked the url started with the path so these
+     were pattern4 and pattern8. Now the path must be exactly that of
+     the pattern.
+   */
+  private static final Object[][] exactPathCases = {
+          {-1, listEvents + "x?calPath=/public/cals/MainCal" +
+                  "&skinName=list-rss"},
+          {-1, "/feeder/widget/categories.doc" +
+                  "?skinName=widget-json-cats" +
+                  "&setappvar=objName(catsObj)" +
+                  "&calPath=/public/cals/MainCal"},
+  };
+
+  private static final Object[][] webcacheCases = {
+          {0, "/webcache/v1.0/jsonDays/7/list-json/no--filter/" +
+                  "bwObject.json"},
+          {0, "/webcache/v1.0/rssDays/30/list-rss/" + catUid +
+                  "/no--object.json"},
+          {0, "/webcache//v1.0/jsonDays/7/list-json/no--filter/" +
+                  "bwObject.json"},
+          {1, "/webcache/v1.0/rssDays/7/list-rss/no--filter.rss"},
+          {1, "/webcache/v1.0/xmlDays/7/list-xml/no--filter.xml"},
+          {1, "/webcache/v1.0/jsonDays/7/list-json/" + catUids},
+          {2, "/webcache/v1.0/icsDays/7/no--filter.ics"},
+          {2, "/webcache/v1.0/icsDays/14/" + catUid},
+          {3, "/webcache/v1.0/categories/widget-json-cats/catsObj.json"},
+
+          // Not matched - the first is the pattern which isn't enabled
+          {-1, "/webcache/v1.0/jsonDays/7/list-json/no--filter/1/2/3"},
+          {-1, "/webcache/v1.0/jsonDays/x/list-json/no--filter/" +
+                  "bwObject.json"},
+          {-1, "/webcache/v1.0/xmlDays/7/list-xml/no--filter/" +
+                  "bwObject.json"},
+          {-1, "/webcache/v1.0/icsDays/7/list-ics/no--filter.ics"},
+          {-1, "/webcache/v1.0/jsonDays/7/list-json/" + notCatUids +
+                  "/bwObject.json"},
+          {-1, "/webcache/v1.0/categories/widget-json-cats/other.json"},
+          {-1, "/webcache/v2.0/jsonDays/7/list-json/no--filter/" +
+                  "bwObject.json"},
+          {-1, "/webcache/v1.0/jsonDays/7/list-json/no--filter"},
+  };
+
+  private final AccessPatterns patterns = AccessPatterns.defaults();
+  private final UrlParts urlParts = new UrlParts();
+
+  @Test
+  public void feeder() {
+    checkFeeder(feederCases);
+  }
+
+  @Test
+  public void feederExactPath() {
+    checkFeeder(exactPathCases);
+  }
+
+  @Test
+  public void webcache() throws URISyntaxException {
+    for (final var c: webcacheCases) {
+      final var url = (String)c[1];
+
+      assertEquals((int)c[0], patterns.matchWebcache(segments(url)),
+                   url);
+    }
+  }
+
+  private void checkFeeder(final Object[][] cases) {
+    for (final var c: cases) {
+      final var url = (String)c[1];
+
+      assertEquals((int)c[0], patterns.matchFeeder(urlParts.parse(url)),
+                   url);
+    }
+  }
+
+  /* The decoded segments - as AccessLogs gives them to the matcher
+   */
+  private List<String> segments(final String url)
+          throws URISyntaxException {
+    final var req = urlParts.parse(url);
+
+    if (req.isPlainPath()) {
+      return new ArrayList<>(req.getSegments());
+    }
+
+    final List<String> res = new ArrayList<>();
+
+    for (final var seg: new URI(url).getPath().split("/")) {
+      if (!seg.isEmpty()) {
+        res.add(seg);
+      }
+    }
+
+    return res;
+  }
+}
@@ -0,0 +1,136 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/** Reading zstd compressed logs through the zstd command - skipped
+ * if it isn't installed.
+ */
+public class LineReaderTest {
+  private static final String text =
+          "2020-01-14 10:00:00,015 DEBUG [x] (default task-1) one\n" +
+                  "2020-01-14 10:00:00,016 DEBUG [x] (default task-2) two\n" +
+                  "2020-01-14 10:00:00,017 DEBUG [x] (default task-3) three\n";
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void readsZstd() throws IOException {
+    assumeTrue(zstdInstalled(), "zstd is not installed");
+
+    final Path path = write("log.zst", zstdFrame(text));
+
+    assertEquals(LineReader.Compression.zstd,
+                 LineReader.compression(path));
+
+    final List<String> lines = new ArrayList<>();
+    try (final var rdr = LineReader.open(path)) {
+      LogLine line;
+      while ((line = rdr.next()) != null) {
+        lines.add(line.toString());
+      }
+    }
+
+    assertEquals(Arrays.asList(text.split("\n")), lines);
+  }
+
+  @Test
+  public void truncatedZstdFails() throws IOException {
+    assumeTrue(zstdInstalled(), "zstd is not installed");
+
+    final byte[] frame = zstdFrame(text);
+    final Path path = write("truncated.zst",
+                            Arrays.copyOf(frame, frame.length - 10));
+
+    try (final var rdr = LineReader.open(path)) {
+      assertThrows(IOException.class, () -> {
+        LogLine line;
+        do {
+          line = rdr.next();
+        } while (line != null);
+      });
+    }
+  }
+
+  @Test
+  public void earlyClose() throws IOException {
+    assumeTrue(zstdInstalled(), "zstd is not installed");
+
+    final Path path = write("log.zst", zstdFrame(text));
+
+    final var rdr = LineReader.open(path);
+    assertNotNull(rdr.next());
+    rdr.close();
+  }
+
+  private Path write(final String name,
+                     final byte[] bytes) throws IOException {
+    final Path path = dir.resolve(name);
+    Files.write(path, bytes);
+
+    return path;
+  }
+
+  /* A zstd frame holding the text as one uncompressed block - the
+     test needs no compressor.
+   */
+  private static byte[] zstdFrame(final String val) {
+    final byte[] content = val.getBytes(StandardCharsets.UTF_8);
+    final int len = content.length;
+    final var out = new ByteArrayOutputStream();
+
+    // Magic
+    out.write(0x28);
+    out.write(0xb5);
+    out.write(0x2f);
+    out.write(0xfd);
+
+    // Single segment with a 1 byte content size - text is short
+    out.write(0x20);
+    out.write(len);
+
+    // Last block, raw, its size
+    final int blockHeader = 1 | (len << 3);
+    out.write(blockHeader & 0xff);
+    out.write((blockHeader >> 8) & 0xff);
+    out.write((blockHeader >> 16) & 0xff);
+
+    out.write(content, 0, len);
+
+    return out.toByteArray();
+  }
+
+  private static boolean zstdInstalled() {
+    try {
+      final var proc = new ProcessBuilder("zstd", "--version")
+              .redirectErrorStream(true)
+              .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+              .start();
+
+      return proc.waitFor() == 0;
+    } catch (final IOException ioe) {
+      return false;
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Checks the bounds of merged summaries against exact counts.
+ */
+public class SpaceSavingTest {
+  private static final int capacity = 50;
+  private static final int keys = 2000;
+  private static final int length = 100_000;
+
+  @Test
+  public void mergeSkewed() {
+    final var random = new Random(20200114);
+    final Map<String, Long> exact = new HashMap<>();
+
+    // Skewed the same way but the heavy keys differ
+    final var first = summarise(random, 0, exact);
+    final var second = summarise(random, keys / 2, exact);
+
+    first.add(second);
+
+    checkBounds(first, exact, 2L * length);
+  }
+
+  @Test
+  public void mergeIntoPartFull() {
+    final var random = new Random(1);
+    final Map<String, Long> exact = new HashMap<>();
+
+    // Exact - fewer keys than counters
+    final var few = new SpaceSaving<String, Void>(capacity);
+    for (int i = 0; i < 1000; i++) {
+      final var key = "k" + (keys + random.nextInt(capacity / 2));
+      few.add(key);
+      exact.merge(key, 1L, Long::sum);
+    }
+
+    assertEquals(0, few.getErrorBound());
+
+    final var many = summarise(random, 0, exact);
+
+    few.add(many);
+
+    checkBounds(few, exact, 1000L + length);
+  }
+
+  /* Zipf-like - key i has weight 1 / (i + 1) - with the keys shifted
+     so different parts have different heavy keys.
+   */
+  private static SpaceSaving<String, Void> summarise(
+          final Random random,
+          final int shift,
+          final Map<String, Long> exact) {
+    final double[] cumulative = new double[keys];
+    double sum = 0;
+    for (int i = 0; i < keys; i++) {
+      sum += 1.0 / (i + 1);
+      cumulative[i] = sum;
+    }
+
+    final var ss = new SpaceSaving<String, Void>(capacity);
+
+    for (int n = 0; n < length; n++) {
+      final double r = random.nextDouble() * sum;
+      int i = 0;
+      while (cumulative[i] < r) {
+        i++;
+      }
+
+      final var key = "k" + ((i + shift) % keys);
+      ss.add(key);
+      exact.merge(key, 1L, Long::sum);
+    }
+
+    return ss;
+  }
+
+  private static void checkBounds(final SpaceSaving<String, Void> ss,
+                                  final Map<String, Long> exact,
+                                  final long total) {
+    assertEquals(total, ss.getTotal());
+    assertTrue(ss.size() <= capacity);
+
+    final long maxError = total / capacity;
+    assertTrue(ss.getErrorBound() <= maxError,
+               "Error bound " + ss.getErrorBound() + " over " + maxError);
+
+    for (final var c: ss.sorted()) {
+      final long count = exact.getOrDefault(c.getKey(), 0L);
+
+      assertTrue(c.getGuaranteedCount() <= count,
+                 c.getKey() + " guaranteed " + c.getGuaranteedCount() +
+                         " over " + count);
+      assertTrue(c.getCount() >= count,
+                 c.getKey() + " count " + c.getCount() +
+                         " under " + count);
+      assertTrue(c.getError() <= maxError,
+                 c.getKey() + " error " + c.getError() +
+                         " over " + maxError);
+    }
+
+    for (final var ent: exact.entrySet()) {
+      final var c = ss.get(ent.getKey());
+
+      if (ent.getValue() > maxError) {
+        assertNotNull(c, ent.getKey() + " is heavy but not counted");
+      }
+
+      if (c == null) {
+        assertTrue(ent.getValue() <= ss.getErrorBound(),
+                   ent.getKey() + " with " + ent.getValue() +
+                           " not counted");
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/* ********************************************************************
+    Appropriate copyright notice
+*/
+package org.bedework.bwlogs;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** UrlParts splits and decodes a query as URLEncodedUtils.parse does.
+ */
+public class UrlPartsTest {
+  private static final String[] queries = {
+          "calPath=/public/cals/MainCal&skinName=list-rss",
+          "calPath=%2Fpublic%2Fcals%2FMainCal&skinName=list-json",
+          "fexpr=%28catuid%3D%272962aca4-289343b8-0128-98411c36%27%29",
+          "a=b&a=c&a=d",
+          "a=b;c=d",
+
+          // + is a space in names and values
+          "q=two+words&name+with+plus=1",
+          "q=%2B&r=+%2b+",
+
+          // Empty values, no value and no name
+          "a=&b",
+          "a=&&b=",
+          "=x&a=1",
+          "=",
+          "&&&",
+          "a==b",
+
+          // Invalid and truncated escapes are left as they are
+          "a=%zz&b=%",
+          "a=%4&b=%%41",
+          "a=100%&b=%g1",
+          "%41%42=%43",
+
+          // Escaped utf-8 - and not utf-8
+          "city=Z%C3%BCrich",
+          "bad=%C3%28",
+          "raw=café",
+
+          // Our separators escaped
+          "a=%26b%3Dc&d=%3B",
+
+          // Another ? is just a character
+          "a=b?c=d",
+
+          // Whitespace is handed to URLEncodedUtils
+          "a= b&c =d",
+  };
+
+  private static final String alphabet = "ab=&;%+2F3Cz?é";
+
+  private final UrlParts urlParts = new UrlParts();
+
+  @Test
+  public void fixed() {
+    for (final var q: queries) {
+      check(q);
+    }
+  }
+
+  @Test
+  public void generated() {
+    final var random = new Random(20200114);
+
+    for (int n = 0; n < 20000; n++) {
+      final var sb = new StringBuilder();
+      final int len = random.nextInt(20);
+
+      for (int i = 0; i < len; i++) {
+        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+
+      check(sb.toString());
+    }
+  }
+
+  @Test
+  public void pathAndFragment() {
+    urlParts.parse("http://example.com/feeder/main/listEvents.do" +
+                           ";jsessionid=x?a=1&b=2#a=3");
+
+    assertEquals("/feeder/main/listEvents.do",
+                 urlParts.getPath(true));
+    assertEquals("/feeder/main/listEvents.do;jsessionid=x",
+                 urlParts.getPath(false));
+    assertEquals(List.of("feeder", "main", "listEvents.do;jsessionid=x"),
+                 urlParts.getSegments());
+    assertEquals(2, urlParts.getParamCount());
+    assertEquals("2", urlParts.getValue(1));
+  }
+
+  /* Compare with URLEncodedUtils for the query on its own and on a
+     path and with a fragment.
+   */
+  private void check(final String query) {
+    final List<NameValuePair> expected =
+            URLEncodedUtils.parse(query, StandardCharsets.UTF_8);
+
+    check(query, expected, "/x?" + query);
+    check(query, expected, "http://example.com/x/y?" + query + "#f=g");
+  }
+
+  private void check(final String query,
+                     final List<NameValuePair> expected,
+                     final String url) {
+    final var req = urlParts.parse(url);
+    final var msg = "Query: " + query;
+
+    assertEquals(expected.size(), req.getParamCount(), msg);
+
+    final var params = req.getParams();
+    assertEquals(expected.size(), params.size(), msg);
+
+    for (int i = 0; i < expected.size(); i++) {
+      final var name = expected.get(i).getName();
+      final var value = expected.get(i).getValue();
+
+      assertEquals(name, req.getName(i), msg);
+      assertEquals(value, req.getValue(i), msg);
+      assertEquals(name, params.get(i).getName(), msg);
+      assertEquals(value, params.get(i).getValue(), msg);
+
+      assertTrue(req.nameEquals(i, name), msg);
+      assertEquals(UrlParts.hash(name), req.nameHash(i), msg);
+    }
+  }
+}